@@ -2,10 +2,12 @@ package ampcontrol.admin;
 
 import ampcontrol.admin.service.classifiction.AudioClassificationService;
 import ampcontrol.admin.service.control.mqtt.MqttAppControlService;
+import ampcontrol.admin.service.latency.LatencyService;
 import ampcontrol.amp.AmpInterface;
 import ampcontrol.amp.ClassificationListener;
 import ampcontrol.amp.PublishingClassificationListener;
-import ampcontrol.audio.asio.AsioClassifierInputFactory;
+import ampcontrol.audio.AudioInputFromParameters;
+import ampcontrol.audio.ClassifierInputProviderFactory;
 import ampcontrol.model.inference.Classifier;
 import ampcontrol.model.inference.ClassifierFromParameters;
 import ampcontrol.model.training.model.vertex.ChannelMultVertex;
@@ -35,14 +37,16 @@ public class AmpControlMain {
                 new PublishingClassificationListener.Factory(mqttAppControlService);
         final AudioClassificationService audioClassificationService = new AudioClassificationService();
         final ClassifierFromParameters classifierFromParameters = new ClassifierFromParameters();
-        final AsioClassifierInputFactory inputProviderFactory = new AsioClassifierInputFactory();
+        final AudioInputFromParameters audioInputFromParameters = new AudioInputFromParameters();
+        final LatencyService latencyService = new LatencyService(mqttAppControlService);
 
         JCommander.Builder jcBuilder = JCommander.newBuilder()
                 .addObject(new Object[] {
                         engine,
                         mqttAppControlService,
                         audioClassificationService,
-                        inputProviderFactory,
+                        latencyService,
+                        audioInputFromParameters,
                         classifierFromParameters,
                         mqttClassificationListenerFactory});
 
@@ -52,27 +56,33 @@ public class AmpControlMain {
         JCommander jc = jcBuilder.build();
         jc.parse(args);
 
-        final AmpInterface ampInterface = ampFactoryCommands.get(jc.getParsedCommand()).create();
+        final AmpInterface.Factory ampFactory = ampFactoryCommands.get(jc.getParsedCommand());
+        final AmpInterface ampInterface = ampFactory.create();
         final ClassificationListener mqttInterface = mqttClassificationListenerFactory.create();
         final ClassificationListener classificationListenerAgg = arr -> {
         	ampInterface.indicateAudioClassification(arr);
             mqttInterface.indicateAudioClassification(arr);
         };
-        inputProviderFactory.initialize();
+        final ClassifierInputProviderFactory inputProviderFactory = audioInputFromParameters.createFactory();
 
         try {
             // Might need to move into concrete Classifiers if something else is used in training
             DataTypeUtil.setDTypeForContext(DataBuffer.Type.HALF);
             Nd4j.getMemoryManager().setAutoGcWindow(5000);
             NeuralNetConfiguration.registerLegacyCustomClassesForJSON(ChannelMultVertex.class, ElementWiseVertexLatest.class);
-            final Classifier classifier = classifierFromParameters.getClassifier(inputProviderFactory);
+            final Classifier classifier = classifierFromParameters.getClassifier(
+                    inputProviderFactory,
+                    ampFactory.getProbabilityThresholds());
+            audioClassificationService.registerTo(inputProviderFactory);
             audioClassificationService.initialize(
                     classificationListenerAgg,
                     classifier,
-                    inputProviderFactory.finalizeAndReturnUpdateHandle());
+                    inputProviderFactory.finalizeAndReturnUpdateHandle(),
+                    mqttAppControlService);
 
             engine.initialize(mqttAppControlService, Arrays.asList(
                     audioClassificationService,
+                    latencyService,
                     ampInterface));
             engine.run();
         } catch (Exception e) {
@@ -2,35 +2,107 @@ package ampcontrol.admin.service.classifiction;
 
 import ampcontrol.admin.service.Service;
 import ampcontrol.admin.service.control.SubscriptionRegistry;
+import ampcontrol.admin.service.control.TopicPublisher;
+import ampcontrol.admin.service.latency.Latencies;
+import ampcontrol.admin.service.latency.LatencyHistogram;
 import ampcontrol.amp.ClassificationListener;
 import ampcontrol.audio.ClassifierInputProvider;
+import ampcontrol.audio.ClassifierInputProviderFactory;
+import ampcontrol.audio.SilenceGate;
 import ampcontrol.model.inference.Classifier;
 import com.beust.jcommander.Parameter;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.time.LocalTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service for doing online audio classification. Periodically asks all connected {@link Classifier Classifiers}
  * to classify their input and forwards the classification to connected
  * {@link ClassificationListener ClassificationListeners}
+ * <br><br>
+ * If a hop size is given, classification is instead triggered each time hop size new samples have arrived to the
+ * input. If classification is still busy when new samples arrive, the next classification will start directly after
+ * with the newest samples. This gives lower latency from sound to classification than fixed rate polling.
+ * <br><br>
+ * In pipelined mode, input update, classification and listener notification run in separate threads connected by
+ * single element queues which drop the oldest element so that the newest audio always wins. Note that classification
+ * might then use input from two consecutive updates if it has more than one input.
+ * <br><br>
+ * Classifications which can not start in time are skipped rather than queued up. The number of missed deadlines and
+ * skipped frames are published periodically. Time between classifications can optionally be adapted to the measured
+ * classification time.
+ * <br><br>
+ * An optional {@link SilenceGate} skips input update and classification when the audio input is silent and a
+ * classification which says silence with full certainty is given to listeners instead. The fraction of gated frames
+ * is published periodically.
  *
  * @author Christian Skärby
  */
 public class AudioClassificationService implements Service {
 
     private static final Logger log = LoggerFactory.getLogger(AudioClassificationService.class);
+
+    private static final long stagePollTimeoutMs = 100;
+    private static final int nrofBusyTimesForInterval = 100;
+    // One classification queued for the listener, one held by the listener and one being copied
+    private static final int nrofPooledClassifications = 3;
     
     @Parameter(names = {"-minTimeBetweenUpdates", "-mtbu"}, description = "Shortest time between classifications")
 	private int minTimeBetweenUpdatesMs = 100;
 
+    @Parameter(names = {"-maxTimeBetweenUpdates", "-maxtbu"}, description = "Longest time between classifications. " +
+            "If larger than minTimeBetweenUpdates, time between classifications is adapted to measured classification " +
+            "time within these bounds")
+    private int maxTimeBetweenUpdatesMs = 0;
+
+    @Parameter(names = "-overrunTopic", description = "MQTT topic to publish number of missed deadlines and " +
+            "skipped frames to")
+    private String overrunTopic = "podxtcontrol/classification/overruns";
+
+    @Parameter(names = "-overrunReportInterval", description = "Shortest time in milli seconds between reports of " +
+            "missed deadlines and skipped frames")
+    private int overrunReportIntervalMs = 1000;
+
+    @Parameter(names = "-hopSize", description = "Number of new samples between classifications. If > 0, " +
+            "classification is triggered by new audio instead of every minTimeBetweenUpdates")
+    private int hopSize = 0;
+
+    @Parameter(names = "-pipelined", description = "Run input update, classification and listener notification in " +
+            "separate threads so that update of next input overlaps classification of the current one")
+    private boolean pipelined = false;
+
+    @Parameter(names = "-silenceRmsDb", description = "RMS level in dB relative to full scale below which audio " +
+            "input is silent so that input update and classification is skipped. Silence gate is disabled if not set")
+    private double silenceRmsDb = Double.NEGATIVE_INFINITY;
+
+    @Parameter(names = "-silencePeakDb", description = "Peak level in dB relative to full scale below which audio " +
+            "input may be silent")
+    private double silencePeakDb = -20;
+
+    @Parameter(names = "-silenceHysteresisDb", description = "How much in dB a level must exceed its threshold for " +
+            "silent audio input to no longer be silent")
+    private double silenceHysteresisDb = 6;
+
+    @Parameter(names = "-silenceLabel", description = "Index of the silence label in classifications (label order " +
+            "is given by training)")
+    private int silenceLabel = 0;
+
+    @Parameter(names = "-silenceGateTopic", description = "MQTT topic to publish fraction of frames gated due to " +
+            "silence to")
+    private String silenceGateTopic = "podxtcontrol/classification/silencegate";
+
     @Parameter(names = "-actAutoMsg", description = "Message contents to start auto program change")
     private String actMsg = "activateAutoProgramChange";
 
@@ -43,8 +115,33 @@ public class AudioClassificationService implements Service {
     private Classifier classifier;
     private ClassifierInputProvider.UpdateHandle inputUpdateHandle;
     private ScheduledExecutorService executorService;
-    
-    private LocalTime lastTime = LocalTime.now();
+    private HopSignal hopSignal;
+    private DeadlineScheduler deadlineScheduler;
+    private TopicPublisher topicPublisher;
+    private long lastOverrunReportTime;
+    private String lastOverrunReport = "";
+    private SilenceGate silenceGate;
+    private INDArray silenceClassification;
+    private boolean inputSilent = false;
+    private String lastSilenceGateReport = "";
+
+    private static final LatencyHistogram bufferAge = Latencies.histogram("bufferAge");
+    private volatile long lastNewSamplesTime = 0;
+
+    private final StageTiming updateInputTiming = new StageTiming(Latencies.histogram("stage.updateInput"));
+    private final StageTiming classifyTiming = new StageTiming(Latencies.histogram("stage.classify"));
+    private final StageTiming listenerTiming = new StageTiming(Latencies.histogram("stage.listener"));
+    private final StageTiming totalTiming = new StageTiming(Latencies.histogram("stage.total"));
+    private final Map<String, StageTiming> stageTimings = new LinkedHashMap<>();
+
+    private long lastClassificationTime = System.nanoTime();
+
+    public AudioClassificationService() {
+        stageTimings.put("updateInput", updateInputTiming);
+        stageTimings.put("classify", classifyTiming);
+        stageTimings.put("listener", listenerTiming);
+        stageTimings.put("total", totalTiming);
+    }
 
     /**
      * Initialize the service. Reason for this method instead of a constructor is only because Jcommander must have
@@ -59,18 +156,60 @@ public class AudioClassificationService implements Service {
     		ClassificationListener ampInterface,
     		Classifier classifier,
     		ClassifierInputProvider.UpdateHandle inputUpdateHandle) {
+        initialize(ampInterface, classifier, inputUpdateHandle, (topic, message) -> {/* Ignore */});
+    }
+
+    /**
+     * Initialize the service. Reason for this method instead of a constructor is only because Jcommander must have
+     * an instance to set parameters.
+     *
+     * @param ampInterface Listens to classifications
+     * @param classifier Classifies audio
+     * @param inputUpdateHandle Updates input to the classifier
+     * @param topicPublisher Publishes missed deadlines, skipped frames and silence gate statistics
+     */
+    public void initialize(
+            ClassificationListener ampInterface,
+            Classifier classifier,
+            ClassifierInputProvider.UpdateHandle inputUpdateHandle,
+            TopicPublisher topicPublisher) {
 
         this.ampInterface = ampInterface;
+        this.topicPublisher = topicPublisher;
         this.classifier = classifier;
         this.inputUpdateHandle = inputUpdateHandle;
         inputUpdateHandle.updateInput();
-        log.info("" + classifier.classify());
+        final INDArray classification = classifier.classify();
+        log.info("" + classification);
+        if (silenceGate != null) {
+            // Same shape as the classifications from the classifier, but with all probability mass on silence
+            silenceClassification = Nd4j.zeros(classification.shape()).putScalar(silenceLabel, 1);
+        }
         isInit = true;
     }
 
     /**
-     * Start the service. Classifiction will be scheduled every minTimeBetweenUpdatesMs and result will be provided to
-     * listeners.
+     * Register to new samples from the given {@link ClassifierInputProviderFactory} to measure the age of input and,
+     * if classification shall be triggered by new audio, to trigger classification. Also creates the
+     * {@link SilenceGate} for its audio input if enabled. Must be called after all input has been created but before
+     * input is finalized.
+     *
+     * @param inputProviderFactory Factory which has created input to the classifier
+     */
+    public void registerTo(ClassifierInputProviderFactory inputProviderFactory) {
+        if (silenceRmsDb > Double.NEGATIVE_INFINITY) {
+            silenceGate = new SilenceGate(inputProviderFactory.getAudioInputs(), silenceRmsDb, silencePeakDb, silenceHysteresisDb);
+        }
+        inputProviderFactory.addNewSamplesListener(nrofSamples -> lastNewSamplesTime = System.nanoTime());
+        if (hopSize > 0) {
+            hopSignal = new HopSignal(hopSize);
+            inputProviderFactory.addNewSamplesListener(hopSignal);
+        }
+    }
+
+    /**
+     * Start the service. Classifiction will be scheduled every minTimeBetweenUpdatesMs (or every hopSize new samples)
+     * and result will be provided to listeners.
      */
     private void start() {
         if (!isInit) {
@@ -81,24 +220,200 @@ public class AudioClassificationService implements Service {
             return;
         }
 
-        executorService = Executors.newSingleThreadScheduledExecutor();
+        final ScheduledExecutorService thisExecutor = pipelined ?
+                Executors.newScheduledThreadPool(3) :
+                Executors.newSingleThreadScheduledExecutor();
+        executorService = thisExecutor;
+        deadlineScheduler = new DeadlineScheduler(
+                TimeUnit.MILLISECONDS.toNanos(minTimeBetweenUpdatesMs),
+                TimeUnit.MILLISECONDS.toNanos(Math.max(minTimeBetweenUpdatesMs, maxTimeBetweenUpdatesMs)),
+                nrofBusyTimesForInterval);
+        lastOverrunReportTime = System.nanoTime();
+
+        final Runnable cycle;
+        if (pipelined) {
+            final DropOldestQueue<Long> toInference = new DropOldestQueue<>(1);
+            final ClassificationPool classificationPool = new ClassificationPool(nrofPooledClassifications);
+            final Consumer<ClassifiedFrame> release = frame -> {
+                if (frame.pooled) {
+                    classificationPool.release(frame.classification);
+                }
+            };
+            final DropOldestQueue<ClassifiedFrame> toListener = new DropOldestQueue<>(1, release);
+            cycle = () -> {
+                final long startTime = updateInput();
+                if (inputSilent) {
+                    toListener.offer(new ClassifiedFrame(startTime, silenceClassification));
+                } else {
+                    toInference.offer(startTime);
+                }
+                reportOverruns();
+            };
+            executeStage(thisExecutor, toInference, startTime -> {
+                // A newer frame is due so no point in classifying this one
+                if (deadlineScheduler.isTooOld(startTime, System.nanoTime())) {
+                    return;
+                }
+                // Classifier might reuse the array for the next classification before the listener is done with it.
+                // Copy is released back to the pool when the listener is done with it or when it is dropped
+                toListener.offer(new ClassifiedFrame(startTime, classificationPool.copyOf(classify()), true));
+                deadlineScheduler.recordBusyTime(classifyTiming.getLastNanos());
+            });
+            executeStage(thisExecutor, toListener, frame -> {
+                notifyListener(frame);
+                release.accept(frame);
+            });
+        } else {
+            cycle = () -> {
+                final long startTime = updateInput();
+                notifyListener(new ClassifiedFrame(startTime, inputSilent ? silenceClassification : classify()));
+                deadlineScheduler.recordBusyTime(System.nanoTime() - startTime);
+                reportOverruns();
+            };
+        }
+
+        if (hopSignal != null) {
+            hopSignal.clear();
+            // Main loop. Timeout is only to notice when service is stopped
+            executorService.execute(() -> {
+                while (!thisExecutor.isShutdown()) {
+                    final boolean hop = hopSignal.await(0)
+                            // Sources paced by input updates, e.g. files replayed in lockstep, must be asked for
+                            // samples until a hop has arrived
+                            || !inputUpdateHandle.skipUpdate()
+                            && hopSignal.await(TimeUnit.MILLISECONDS.toNanos(minTimeBetweenUpdatesMs));
+                    if (hop) {
+                        cycle.run();
+                    }
+                }
+            });
+            return;
+        }
         // Main loop
-        executorService.scheduleAtFixedRate(() -> {     	
-        	 // Step 1, update input
+        deadlineScheduler.start(executorService, cycle);
+    }
+
+    /**
+     * Publishes number of missed deadlines (or coalesced hops in case classification is triggered by new audio)
+     * and skipped frames as well as silence gate statistics if they have changed since last report.
+     */
+    private void reportOverruns() {
+        final long now = System.nanoTime();
+        if (now - lastOverrunReportTime < TimeUnit.MILLISECONDS.toNanos(overrunReportIntervalMs)) {
+            return;
+        }
+        lastOverrunReportTime = now;
+        final long nrofMissed = hopSignal != null ?
+                hopSignal.getNrofCoalesced() :
+                deadlineScheduler.getNrofMissedDeadlines();
+        final String report = String.format(Locale.ROOT,
+                "{\"missedDeadlines\":%d,\"skippedFrames\":%d,\"updateIntervalMs\":%.1f}",
+                nrofMissed,
+                deadlineScheduler.getNrofSkippedFrames(),
+                deadlineScheduler.getIntervalNanos() / 1e6);
+        if (!report.equals(lastOverrunReport)) {
+            lastOverrunReport = report;
+            log.info("Overruns: " + report);
+            topicPublisher.publish(overrunTopic, report);
+        }
+        if (silenceGate != null) {
+            reportSilenceGate();
+        }
+    }
+
+    private void reportSilenceGate() {
+        final long nrofUpdates = silenceGate.getNrofUpdates();
+        final String report = String.format(Locale.ROOT,
+                "{\"silentFrames\":%d,\"frames\":%d,\"hitRate\":%.3f}",
+                silenceGate.getNrofSilent(),
+                nrofUpdates,
+                nrofUpdates > 0 ? silenceGate.getNrofSilent() / (double) nrofUpdates : 0);
+        if (!report.equals(lastSilenceGateReport)) {
+            lastSilenceGateReport = report;
+            log.info("Silence gate: " + report);
+            topicPublisher.publish(silenceGateTopic, report);
+        }
+    }
+
+    /**
+     * Runs the given stage on each element from the given queue until the executor is shut down.
+     */
+    private static <T> void executeStage(ExecutorService executor, DropOldestQueue<T> input, Consumer<T> stage) {
+        executor.execute(() -> {
+            try {
+                while (!executor.isShutdown()) {
+                    final T next = input.poll(stagePollTimeoutMs, TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        stage.accept(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private long updateInput() {
+        // Step 1, update input
+        final long startTime = System.nanoTime();
+        if (lastNewSamplesTime != 0) {
+            bufferAge.record(startTime - lastNewSamplesTime);
+        }
+        inputSilent = silenceGate != null && silenceGate.update();
+        if (inputSilent) {
+            inputUpdateHandle.skipUpdate();
+        } else {
             inputUpdateHandle.updateInput();
+        }
+        updateInputTiming.record(System.nanoTime() - startTime);
+        return startTime;
+    }
 
-            // Step 2: classify
-            final LocalTime starttime = LocalTime.now();
-            INDArray classification = classifier.classify();
-            final LocalTime endtime = LocalTime.now();
-            log.info("classTime: " + Duration.between(starttime,endtime).toMillis());
-            log.info(Duration.between(lastTime, endtime).toMillis() + " classification: " + classification);
-            lastTime = endtime;
-            
-            //Step 3: Give classification to listener
-            ampInterface.indicateAudioClassification(classification);
-        }, 0, TimeUnit.MILLISECONDS.toNanos(minTimeBetweenUpdatesMs), TimeUnit.NANOSECONDS);
-           
+    private INDArray classify() {
+        // Step 2: classify
+        final long startTime = System.nanoTime();
+        INDArray classification = classifier.classify();
+        final long endTime = System.nanoTime();
+        classifyTiming.record(endTime - startTime);
+        log.info("classTime: " + TimeUnit.NANOSECONDS.toMillis(endTime - startTime));
+        log.info(TimeUnit.NANOSECONDS.toMillis(endTime - lastClassificationTime) + " classification: " + classification);
+        lastClassificationTime = endTime;
+        return classification;
+    }
+
+    private void notifyListener(ClassifiedFrame frame) {
+        //Step 3: Give classification to listener
+        final long startTime = System.nanoTime();
+        ampInterface.indicateAudioClassification(frame.classification);
+        final long endTime = System.nanoTime();
+        listenerTiming.record(endTime - startTime);
+        totalTiming.record(endTime - frame.startTime);
+    }
+
+    /**
+     * Returns timings for each stage of the classification loop: updateInput, classify, listener and total, where
+     * total is the time from start of input update until the listener has been notified.
+     *
+     * @return timings for each stage
+     */
+    public Map<String, StageTiming> getStageTimings() {
+        return Collections.unmodifiableMap(stageTimings);
+    }
+
+    private static final class ClassifiedFrame {
+        private final long startTime;
+        private final INDArray classification;
+        private final boolean pooled;
+
+        private ClassifiedFrame(long startTime, INDArray classification) {
+            this(startTime, classification, false);
+        }
+
+        private ClassifiedFrame(long startTime, INDArray classification, boolean pooled) {
+            this.startTime = startTime;
+            this.classification = classification;
+            this.pooled = pooled;
+        }
     }
 
     /**
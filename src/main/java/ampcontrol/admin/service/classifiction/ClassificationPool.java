@@ -0,0 +1,52 @@
+package ampcontrol.admin.service.classifiction;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of arrays for handing over classifications between two pipeline stages without allocating a new array for
+ * each classification. Arrays are allocated on demand until the pool is saturated and are then recycled through
+ * {@link #release(INDArray)} once the consuming stage is done with them.
+ *
+ * @author Christian Skärby
+ */
+class ClassificationPool {
+
+    private final BlockingQueue<INDArray> free;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Max number of released arrays to keep for reuse
+     */
+    ClassificationPool(int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Copies the given classification into a released array. A new array is created if no array of the same shape
+     * has been released.
+     *
+     * @param classification classification to copy
+     * @return a copy of the classification
+     */
+    INDArray copyOf(INDArray classification) {
+        final INDArray array = free.poll();
+        if (array == null || !Arrays.equals(array.shape(), classification.shape())) {
+            return classification.dup();
+        }
+        return array.assign(classification);
+    }
+
+    /**
+     * Releases an array obtained from {@link #copyOf(INDArray)} for reuse. Caller must not use the array after this.
+     *
+     * @param array array to release
+     */
+    void release(INDArray array) {
+        free.offer(array);
+    }
+}
@@ -0,0 +1,151 @@
+package ampcontrol.admin.service.classifiction;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules a task periodically with an absolute deadline for each execution. Unlike
+ * {@link ScheduledExecutorService#scheduleAtFixedRate(Runnable, long, long, TimeUnit)}, executions which are missed
+ * because the previous execution took too long are skipped (and counted) instead of being run back to back.
+ * <br><br>
+ * The interval between executions is adapted to the 95th percentile of recently recorded busy times (times during
+ * which the next execution can not start) within the given bounds.
+ *
+ * @author Christian Skärby
+ */
+class DeadlineScheduler {
+
+    private static final double headroom = 1.2;
+    private static final double percentile = 0.95;
+
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final long[] busyTimes;
+    private final long[] sortedBusyTimes;
+    private int nrofBusyTimes = 0;
+    private int busyTimeInd = 0;
+
+    private volatile long intervalNanos;
+    private final AtomicLong nrofMissedDeadlines = new AtomicLong(0);
+    private final AtomicLong nrofSkippedFrames = new AtomicLong(0);
+
+    /**
+     * Constructor
+     *
+     * @param minIntervalNanos Shortest interval between executions
+     * @param maxIntervalNanos Longest interval between executions
+     * @param nrofBusyTimes    Number of recent busy times to base the interval on
+     */
+    DeadlineScheduler(long minIntervalNanos, long maxIntervalNanos, int nrofBusyTimes) {
+        if (minIntervalNanos <= 0 || maxIntervalNanos < minIntervalNanos) {
+            throw new IllegalArgumentException("Invalid interval bounds: " + minIntervalNanos + ", " + maxIntervalNanos);
+        }
+        this.minIntervalNanos = minIntervalNanos;
+        this.maxIntervalNanos = maxIntervalNanos;
+        this.intervalNanos = minIntervalNanos;
+        this.busyTimes = new long[nrofBusyTimes];
+        this.sortedBusyTimes = new long[nrofBusyTimes];
+    }
+
+    /**
+     * Starts periodic execution of the given task using the given executor. Periodic execution stops when the
+     * executor is shut down or if the task throws an exception.
+     *
+     * @param executor Executor to run task in
+     * @param task     Task to run
+     */
+    void start(ScheduledExecutorService executor, Runnable task) {
+        scheduleAt(executor, task, System.nanoTime());
+    }
+
+    private void scheduleAt(ScheduledExecutorService executor, Runnable task, long deadline) {
+        executor.schedule(() -> {
+            final long nextDeadline = nextDeadline(deadline, System.nanoTime());
+            task.run();
+            if (!executor.isShutdown()) {
+                scheduleAt(executor, task, nextDeadline);
+            }
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the deadline after the given deadline. If the given time is more than one interval after the given
+     * deadline, the missed deadlines are skipped.
+     *
+     * @param deadline Current deadline
+     * @param now      Current time
+     * @return the next deadline
+     */
+    long nextDeadline(long deadline, long now) {
+        final long interval = intervalNanos;
+        final long nrofMissed = (now - deadline) / interval;
+        if (nrofMissed > 0) {
+            nrofMissedDeadlines.addAndGet(nrofMissed);
+        }
+        return deadline + (Math.max(0, nrofMissed) + 1) * interval;
+    }
+
+    /**
+     * Returns true if a frame started at the given time is older than one interval, meaning that a newer frame is
+     * due. Such frames are counted as skipped.
+     *
+     * @param frameStartTime Start time of frame
+     * @param now            Current time
+     * @return true if frame shall be skipped
+     */
+    boolean isTooOld(long frameStartTime, long now) {
+        if (now - frameStartTime > intervalNanos) {
+            nrofSkippedFrames.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the time during which the next execution could not start and adapts the interval accordingly.
+     *
+     * @param nanos busy time in nanoseconds
+     */
+    synchronized void recordBusyTime(long nanos) {
+        busyTimes[busyTimeInd] = nanos;
+        busyTimeInd = (busyTimeInd + 1) % busyTimes.length;
+        nrofBusyTimes = Math.min(nrofBusyTimes + 1, busyTimes.length);
+        if (maxIntervalNanos == minIntervalNanos) {
+            return;
+        }
+
+        System.arraycopy(busyTimes, 0, sortedBusyTimes, 0, nrofBusyTimes);
+        Arrays.sort(sortedBusyTimes, 0, nrofBusyTimes);
+        final long busyTimePercentile = sortedBusyTimes[(int) Math.ceil(percentile * nrofBusyTimes) - 1];
+        intervalNanos = Math.min(maxIntervalNanos, Math.max(minIntervalNanos, (long) (busyTimePercentile * headroom)));
+    }
+
+    /**
+     * Returns the current interval between executions in nanoseconds
+     *
+     * @return the current interval between executions in nanoseconds
+     */
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * Returns the number of missed deadlines so far
+     *
+     * @return the number of missed deadlines so far
+     */
+    long getNrofMissedDeadlines() {
+        return nrofMissedDeadlines.get();
+    }
+
+    /**
+     * Returns the number of frames which were too old
+     *
+     * @return the number of frames which were too old
+     */
+    long getNrofSkippedFrames() {
+        return nrofSkippedFrames.get();
+    }
+}
@@ -0,0 +1,78 @@
+package ampcontrol.admin.service.classifiction;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue for handing over work between two pipeline stages. If the queue is full when a new element is
+ * offered, the oldest element is dropped so that the consumer always gets the newest elements. Assumes a single
+ * producer.
+ *
+ * @param <T> Type of elements in the queue
+ * @author Christian Skärby
+ */
+class DropOldestQueue<T> {
+
+    private final BlockingQueue<T> queue;
+    private final Consumer<T> onDrop;
+    private final AtomicLong nrofDropped = new AtomicLong(0);
+
+    /**
+     * Constructor
+     *
+     * @param capacity Max number of elements in queue
+     */
+    DropOldestQueue(int capacity) {
+        this(capacity, dropped -> {/* Ignore */});
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity Max number of elements in queue
+     * @param onDrop   Called with each element which is dropped
+     */
+    DropOldestQueue(int capacity, Consumer<T> onDrop) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.onDrop = onDrop;
+    }
+
+    /**
+     * Adds an element to the queue. Drops the oldest element(s) if the queue is full. Never blocks.
+     *
+     * @param element element to add
+     */
+    void offer(T element) {
+        while (!queue.offer(element)) {
+            final T dropped = queue.poll();
+            if (dropped != null) {
+                nrofDropped.incrementAndGet();
+                onDrop.accept(dropped);
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest element from the queue, waiting up to the given timeout for it to arrive.
+     *
+     * @param timeout Max time to wait
+     * @param unit    Unit of timeout
+     * @return oldest element or null if timeout expired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Returns the number of elements dropped so far
+     *
+     * @return the number of elements dropped so far
+     */
+    long getNrofDropped() {
+        return nrofDropped.get();
+    }
+}
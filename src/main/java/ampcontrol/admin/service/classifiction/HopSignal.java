@@ -0,0 +1,85 @@
+package ampcontrol.admin.service.classifiction;
+
+import ampcontrol.audio.NewSamplesListener;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Signals a single waiting consumer each time hopSize new samples have arrived. Signals are coalesced, i.e. if the
+ * consumer is busy when several hops arrive it will only be signalled once so that it always proceeds with the newest
+ * samples instead of working through a backlog.
+ * <br><br>
+ * The producer side never blocks: it just sets a flag and unparks the consumer. New samples are assumed to be
+ * reported from a single producer thread.
+ *
+ * @author Christian Skärby
+ */
+class HopSignal implements NewSamplesListener {
+
+    private final int hopSize;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final AtomicLong nrofCoalesced = new AtomicLong(0);
+    private volatile Thread waiter;
+    private int nrofNewSamples = 0;
+
+    /**
+     * Constructor
+     *
+     * @param hopSize Number of new samples between signals
+     */
+    HopSignal(int hopSize) {
+        if (hopSize <= 0) {
+            throw new IllegalArgumentException("Hop size must be > 0!");
+        }
+        this.hopSize = hopSize;
+    }
+
+    @Override
+    public void newSamples(int nrofSamples) {
+        nrofNewSamples += nrofSamples;
+        if (nrofNewSamples >= hopSize) {
+            nrofNewSamples %= hopSize;
+            if (pending.getAndSet(true)) {
+                nrofCoalesced.incrementAndGet();
+            }
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Waits until a hop has arrived since the last call or until the timeout expires.
+     *
+     * @param timeoutNanos Max time to wait in nanoseconds
+     * @return true if a hop has arrived, false if timed out
+     */
+    boolean await(long timeoutNanos) {
+        waiter = Thread.currentThread();
+        final long deadline = System.nanoTime() + timeoutNanos;
+        while (!pending.getAndSet(false)) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of hops which arrived before the previous hop was consumed
+     *
+     * @return the number of coalesced hops
+     */
+    long getNrofCoalesced() {
+        return nrofCoalesced.get();
+    }
+
+    /**
+     * Forgets any hop which has not yet been consumed
+     */
+    void clear() {
+        pending.set(false);
+    }
+}
@@ -0,0 +1,85 @@
+package ampcontrol.admin.service.classifiction;
+
+import ampcontrol.admin.service.latency.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing statistics for one stage of the classification loop. Recorded by the thread running the stage, may be read
+ * from any thread. Times are also recorded to a {@link LatencyHistogram} for percentiles.
+ *
+ * @author Christian Skärby
+ */
+public class StageTiming {
+
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong totalNanos = new AtomicLong(0);
+    private final AtomicLong maxNanos = new AtomicLong(0);
+    private volatile long lastNanos = 0;
+    private final LatencyHistogram histogram;
+
+    /**
+     * Constructor
+     *
+     * @param histogram Histogram to also record times to
+     */
+    StageTiming(LatencyHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * Records the time spent for one execution of the stage
+     *
+     * @param nanos time in nanoseconds
+     */
+    void record(long nanos) {
+        lastNanos = nanos;
+        totalNanos.addAndGet(nanos);
+        count.incrementAndGet();
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        histogram.record(nanos);
+    }
+
+    /**
+     * Returns the number of recorded executions
+     *
+     * @return the number of recorded executions
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the time of the last execution in nanoseconds
+     *
+     * @return the time of the last execution in nanoseconds
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Returns the mean time of all executions in nanoseconds
+     *
+     * @return the mean time of all executions in nanoseconds
+     */
+    public double getMeanNanos() {
+        final long nrofExecutions = count.get();
+        return nrofExecutions == 0 ? 0 : totalNanos.get() / (double) nrofExecutions;
+    }
+
+    /**
+     * Returns the max time of all executions in nanoseconds
+     *
+     * @return the max time of all executions in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("last: %.2f ms, mean: %.2f ms, max: %.2f ms, count: %d",
+                getLastNanos() / 1e6, getMeanNanos() / 1e6, getMaxNanos() / 1e6, getCount());
+    }
+}
@@ -0,0 +1,78 @@
+package ampcontrol.admin.service.latency;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Application wide registry of named {@link LatencyHistogram LatencyHistograms}. Works like a LoggerFactory: Classes
+ * typically keep the histograms they record to in static fields.
+ *
+ * @author Christian Skärby
+ */
+public final class Latencies {
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private Latencies() {
+        // No instances
+    }
+
+    /**
+     * Returns the histogram with the given name. Histogram is created if it does not exist.
+     *
+     * @param name name of histogram
+     * @return the {@link LatencyHistogram} with the given name
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns p50, p99 and max in microseconds as well as count of all histograms with at least one recorded value as
+     * compact JSON, e.g. {"midiSend":{"n":123,"p50":45,"p99":67,"max":89}}.
+     *
+     * @return JSON string of all histograms
+     */
+    public static String toJson() {
+        final StringBuilder json = new StringBuilder("{");
+        histograms.forEach((name, histogram) -> {
+            final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() == 0) {
+                return;
+            }
+            if (json.length() > 1) {
+                json.append(",");
+            }
+            json.append("\"").append(name).append("\":{")
+                    .append("\"n\":").append(snapshot.getCount())
+                    .append(",\"p50\":").append(snapshot.getValueAtPercentile(50) / 1000)
+                    .append(",\"p99\":").append(snapshot.getValueAtPercentile(99) / 1000)
+                    .append(",\"max\":").append(snapshot.getMax() / 1000)
+                    .append("}");
+        });
+        return json.append("}").toString();
+    }
+
+    /**
+     * Returns a human readable table of all histograms with times in milliseconds.
+     *
+     * @return a table of all histograms
+     */
+    public static String toTable() {
+        final StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-30s %10s %10s %10s %10s %10s %10s%n",
+                "name", "count", "p50", "p90", "p99", "p99.9", "max"));
+        histograms.forEach((name, histogram) -> {
+            final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            table.append(String.format(Locale.ROOT, "%-30s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    name,
+                    snapshot.getCount(),
+                    snapshot.getValueAtPercentile(50) / 1e6,
+                    snapshot.getValueAtPercentile(90) / 1e6,
+                    snapshot.getValueAtPercentile(99) / 1e6,
+                    snapshot.getValueAtPercentile(99.9) / 1e6,
+                    snapshot.getMax() / 1e6));
+        });
+        return table.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package ampcontrol.admin.service.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets in the spirit of HdrHistogram: Values below 64 ns are
+ * recorded exactly and larger values are recorded with a relative error of at most 1/32. Recording is lock free and
+ * allocation free so it can be done from real time threads. Percentiles are computed from a {@link Snapshot}.
+ *
+ * @author Christian Skärby
+ */
+public class LatencyHistogram {
+
+    private static final int subBucketBits = 6;
+    private static final int subBucketCount = 1 << subBucketBits;
+    private static final int subBucketHalfCount = subBucketCount / 2;
+    private static final int nrofBuckets = subBucketCount + (Long.SIZE - 1 - subBucketBits) * subBucketHalfCount;
+
+    private final AtomicLongArray counts = new AtomicLongArray(nrofBuckets);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Snapshot of a {@link LatencyHistogram}
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long sum = 0;
+            for (long bucketCount : counts) {
+                sum += bucketCount;
+            }
+            this.count = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of recorded values
+         *
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the largest recorded value
+         *
+         * @return the largest recorded value
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the value at the given percentile, i.e. the (upper bound of the bucket of the) smallest recorded
+         * value which is larger than or equal to the given percentage of all recorded values. Never larger than the
+         * largest recorded value.
+         *
+         * @param percentile percentile in range 0 to 100
+         * @return the value at the given percentile or 0 if nothing has been recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+            long cumulativeCount = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulativeCount += counts[i];
+                if (cumulativeCount >= countAtPercentile) {
+                    return Math.min(max, highestValueInBucket(i));
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Records the given latency
+     *
+     * @param nanos latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Records the time from the given start time until now
+     *
+     * @param startTime start time from {@link System#nanoTime()}
+     */
+    public void recordSince(long startTime) {
+        record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Returns a snapshot of the recorded values. Values recorded while the snapshot is taken may or may not be
+     * included.
+     *
+     * @return a {@link Snapshot}
+     */
+    public Snapshot snapshot() {
+        final long[] countsCopy = new long[nrofBuckets];
+        for (int i = 0; i < nrofBuckets; i++) {
+            countsCopy[i] = counts.get(i);
+        }
+        return new Snapshot(countsCopy, max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - subBucketBits + 1;
+        final int subBucket = (int) (value >>> shift) - subBucketHalfCount;
+        return subBucketCount + (exponent - subBucketBits) * subBucketHalfCount + subBucket;
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        final int exponent = (index - subBucketCount) / subBucketHalfCount + subBucketBits;
+        final long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+        final int shift = exponent - subBucketBits + 1;
+        final long highest = ((subBucket + 1) << shift) - 1;
+        // Last bucket overflows
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
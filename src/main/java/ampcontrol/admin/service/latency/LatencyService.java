@@ -0,0 +1,64 @@
+package ampcontrol.admin.service.latency;
+
+import ampcontrol.admin.service.Service;
+import ampcontrol.admin.service.control.SubscriptionRegistry;
+import ampcontrol.admin.service.control.TopicPublisher;
+import com.beust.jcommander.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service which periodically publishes a snapshot of all {@link Latencies} as compact JSON to a {@link TopicPublisher}.
+ * All latencies can also be dumped to the log through a message.
+ *
+ * @author Christian Skärby
+ */
+public class LatencyService implements Service {
+
+    private static final Logger log = LoggerFactory.getLogger(LatencyService.class);
+
+    @Parameter(names = "-latencyTopic", description = "MQTT topic to publish latencies to")
+    private String latencyTopic = "podxtcontrol/latency";
+
+    @Parameter(names = "-latencyPublishInterval", description = "Time in milli seconds between publications of " +
+            "latencies. No latencies are published if <= 0")
+    private int publishIntervalMs = 10000;
+
+    @Parameter(names = "-latencyDumpMsg", description = "Message contents to dump latencies to the log")
+    private String dumpMsg = "dumpLatencies";
+
+    private final TopicPublisher topicPublisher;
+    private ScheduledExecutorService executorService;
+
+    /**
+     * Constructor
+     *
+     * @param topicPublisher Publishes latencies
+     */
+    public LatencyService(TopicPublisher topicPublisher) {
+        this.topicPublisher = topicPublisher;
+    }
+
+    @Override
+    public void stop() {
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
+    @Override
+    public void registerTo(SubscriptionRegistry subscriptionRegistry) {
+        subscriptionRegistry.registerSubscription(dumpMsg, () -> log.info("Latencies:\n" + Latencies.toTable()));
+        if (executorService == null && publishIntervalMs > 0) {
+            executorService = Executors.newSingleThreadScheduledExecutor();
+            executorService.scheduleAtFixedRate(
+                    () -> topicPublisher.publish(latencyTopic, Latencies.toJson()),
+                    publishIntervalMs, publishIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
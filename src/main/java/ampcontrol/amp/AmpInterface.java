@@ -5,6 +5,7 @@ import ampcontrol.admin.service.control.SubscriptionRegistry;
 import ampcontrol.amp.midi.MidiProgChangeFactory;
 import ampcontrol.amp.midi.PodXtFactory;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -22,6 +23,17 @@ public interface AmpInterface extends ClassificationListener, Service {
          * @return a new {@link AmpInterface} instance
          */
         AmpInterface create();
+
+        /**
+         * Returns the thresholds for each label which the probability of the most likely label must exceed for the
+         * created {@link AmpInterface} to react to it. Labels without threshold are reacted to regardless of
+         * probability.
+         *
+         * @return map from label to probability threshold
+         */
+        default Map<Integer, Double> getProbabilityThresholds() {
+            return Collections.emptyMap();
+        }
     }
 
 
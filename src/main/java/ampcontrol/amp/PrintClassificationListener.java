@@ -13,6 +13,7 @@ import com.beust.jcommander.ParametersDelegate;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import javax.sound.midi.ShortMessage;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -60,6 +61,11 @@ public class PrintClassificationListener implements AmpInterface {
             }
             return new PrintClassificationListener(interpretProbabilities, midiServiceFactory.createService(msg -> System.out.println(msgToString(msg))));
         }
+
+        @Override
+        public Map<Integer, Double> getProbabilityThresholds() {
+            return Collections.unmodifiableMap(probabilityThresholds);
+        }
     }
 
     private PrintClassificationListener(Interpreter<Integer> interpreter, Service serviceDelegate) {
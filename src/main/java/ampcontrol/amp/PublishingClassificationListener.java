@@ -1,6 +1,8 @@
 package ampcontrol.amp;
 
 import ampcontrol.admin.service.control.TopicPublisher;
+import ampcontrol.admin.service.latency.Latencies;
+import ampcontrol.admin.service.latency.LatencyHistogram;
 import ampcontrol.amp.labelmapping.*;
 import ampcontrol.amp.probabilities.ArgMax;
 import ampcontrol.amp.probabilities.Interpreter;
@@ -22,6 +24,7 @@ import java.util.function.Function;
 public class PublishingClassificationListener implements ClassificationListener {
 
     private static final Logger log = LoggerFactory.getLogger(PublishingClassificationListener.class);
+    private static final LatencyHistogram labelMappingLatency = Latencies.histogram("mqtt.labelMapping");
 
     private final String classificationTopic;
     private final TopicPublisher topicPublisher;
@@ -89,7 +92,10 @@ public class PublishingClassificationListener implements ClassificationListener
 
     @Override
     public void indicateAudioClassification(INDArray probabilities) {
-        labelMapper.apply(probabilities).stream().findAny()
+        final long startTime = System.nanoTime();
+        final List<Integer> labels = labelMapper.apply(probabilities);
+        labelMappingLatency.recordSince(startTime);
+        labels.stream().findAny()
                 .ifPresent(label -> {
                     final String labelStr = ""+label;
                         log.info("Publish: " + labelStr);
@@ -2,6 +2,8 @@ package ampcontrol.amp.midi;
 
 import ampcontrol.admin.service.Service;
 import ampcontrol.admin.service.control.SubscriptionRegistry;
+import ampcontrol.admin.service.latency.Latencies;
+import ampcontrol.admin.service.latency.LatencyHistogram;
 import ampcontrol.amp.AmpInterface;
 import ampcontrol.amp.ClassificationListener;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -20,6 +22,8 @@ import java.util.stream.Stream;
  */
 public class MidiInterface implements AmpInterface {
 
+    private static final LatencyHistogram labelMappingLatency = Latencies.histogram("midi.labelMapping");
+    private static final LatencyHistogram sendLatency = Latencies.histogram("midi.send");
 
     private final Receiver receiver;
     private final Service serviceDelegate;
@@ -47,7 +51,14 @@ public class MidiInterface implements AmpInterface {
 
     @Override
     public void indicateAudioClassification(INDArray probabilities) {
-        probabilitiesToMessageMapper.apply(probabilities).forEach(msg -> receiver.send(msg, System.nanoTime() / 1000));
+        final long startTime = System.nanoTime();
+        final List<ShortMessage> messages = probabilitiesToMessageMapper.apply(probabilities);
+        labelMappingLatency.recordSince(startTime);
+        for (ShortMessage msg : messages) {
+            final long sendTime = System.nanoTime();
+            receiver.send(msg, sendTime / 1000);
+            sendLatency.recordSince(sendTime);
+        }
     }
 
     @Override
@@ -13,6 +13,7 @@ import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.ShortMessage;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -58,4 +59,9 @@ public class MidiProgChangeFactory implements AmpInterface.Factory {
             throw new IllegalStateException("Midi device initialization failed!", e);
         }
     }
+
+    @Override
+    public Map<Integer, Double> getProbabilityThresholds() {
+        return programChange.getProbabilityThresholds();
+    }
 }
@@ -14,6 +14,7 @@ import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.ShortMessage;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -57,6 +58,11 @@ public class PodXtFactory implements AmpInterface.Factory {
         }
     }
 
+    @Override
+    public Map<Integer, Double> getProbabilityThresholds() {
+        return programChange.getProbabilityThresholds();
+    }
+
     public static void main(String[] args) {
         PodXtFactory fac = new PodXtFactory();
         JCommander.newBuilder().addObject(fac).build().parse(args);
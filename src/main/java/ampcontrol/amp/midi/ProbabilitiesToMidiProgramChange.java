@@ -49,6 +49,16 @@ class ProbabilitiesToMidiProgramChange {
         this.midiChannel = midiChannel;
     }
 
+    /**
+     * Returns the thresholds for each label which the probability of the most likely label must exceed for a program
+     * change to happen
+     *
+     * @return map from label to probability threshold
+     */
+    Map<Integer, Double> getProbabilityThresholds() {
+        return Collections.unmodifiableMap(probabilityThresholds);
+    }
+
     /**
      * Create a mapping between probabilities for each label and the midi message to be sent
      *
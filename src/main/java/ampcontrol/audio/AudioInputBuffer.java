@@ -13,4 +13,34 @@ public interface AudioInputBuffer {
      * @return the contents of the buffer
      */
     double[] getAudio();
+
+    /**
+     * Copies the contents of the buffer into the given array. Intended for real time use where the caller keeps
+     * reusing the same array. Default implementation copies the output of {@link #getAudio()} and is therefore not
+     * allocation free.
+     *
+     * @param dest Array to put the contents of the buffer in. Must be of same length as the contents.
+     */
+    default void getAudio(double[] dest) {
+        final double[] audio = getAudio();
+        if (audio.length != dest.length) {
+            throw new IllegalArgumentException("Incorrect length of destination! Expected " + audio.length + ", got "
+                    + dest.length);
+        }
+        System.arraycopy(audio, 0, dest, 0, dest.length);
+    }
+
+    /**
+     * Same as {@link #getAudio(double[])} but also returns the position of the copied contents in the stream of audio,
+     * i.e. the total number of samples written to the buffer when the last copied sample was written. Allows for
+     * processing which reuses results from previous contents. Default implementation returns -1 which means that the
+     * position is not known.
+     *
+     * @param dest Array to put the contents of the buffer in. Must be of same length as the contents.
+     * @return position of the contents or -1 if not known
+     */
+    default long getPositionedAudio(double[] dest) {
+        getAudio(dest);
+        return -1;
+    }
 }
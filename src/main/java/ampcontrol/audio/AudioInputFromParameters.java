@@ -0,0 +1,60 @@
+package ampcontrol.audio;
+
+import ampcontrol.audio.asio.AsioClassifierInputFactory;
+import ampcontrol.audio.file.FileReplayClassifierInputFactory;
+import ampcontrol.audio.line.LineClassifierInputFactory;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Creates the {@link ClassifierInputProviderFactory} for the audio input selected through
+ * {@link com.beust.jcommander.JCommander}.
+ *
+ * @author Christian Skärby
+ */
+public class AudioInputFromParameters {
+
+    @Parameter(names = "-audioInput", description = "Audio input to use. Valid values: asio, line, file")
+    private String audioInput = "asio";
+
+    @ParametersDelegate
+    private final AudioInputPar audioInputPar = new AudioInputPar();
+
+    @ParametersDelegate
+    private final AsioClassifierInputFactory asioFactory = new AsioClassifierInputFactory(audioInputPar);
+
+    @ParametersDelegate
+    private final LineClassifierInputFactory lineFactory = new LineClassifierInputFactory(audioInputPar);
+
+    @ParametersDelegate
+    private final FileReplayClassifierInputFactory fileFactory = new FileReplayClassifierInputFactory(audioInputPar);
+
+    private final Map<String, Supplier<ClassifierInputProviderFactory>> factories = new LinkedHashMap<>();
+
+    public AudioInputFromParameters() {
+        factories.put("asio", () -> {
+            asioFactory.initialize();
+            return asioFactory;
+        });
+        factories.put("line", () -> lineFactory);
+        factories.put("file", () -> fileFactory);
+    }
+
+    /**
+     * Creates and initializes the selected {@link ClassifierInputProviderFactory}.
+     *
+     * @return a {@link ClassifierInputProviderFactory}
+     */
+    public ClassifierInputProviderFactory createFactory() {
+        final Supplier<ClassifierInputProviderFactory> factory = factories.get(audioInput);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown audio input: " + audioInput + "! Valid values: "
+                    + factories.keySet());
+        }
+        return factory.get();
+    }
+}
@@ -0,0 +1,36 @@
+package ampcontrol.audio;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Audio input channel and sample rate from JCommander. Separate class so that the same parameters can be used by all
+ * {@link ClassifierInputProviderFactory ClassifierInputProviderFactories} to reduce the risk of inconsistency.
+ *
+ * @author Christian Skärby
+ */
+public class AudioInputPar {
+
+    @Parameter(names = "-channel", description = "Input channel to classify")
+    private int channelInd = 0;
+
+    @Parameter(names = "-samplingRate", description = "Sample rate used when training model")
+    private int sampleRate = 44100;
+
+    /**
+     * Returns the index of the input channel to classify
+     *
+     * @return the index of the input channel to classify
+     */
+    public int getChannel() {
+        return channelInd;
+    }
+
+    /**
+     * Returns the sample rate to use
+     *
+     * @return the sample rate to use
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
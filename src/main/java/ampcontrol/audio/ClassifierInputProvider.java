@@ -17,6 +17,16 @@ public interface ClassifierInputProvider {
          * Updates the input, e.g. read new samples from an input buffer.
          */
         void updateInput();
+
+        /**
+         * Called instead of {@link #updateInput()} when the input is not needed this time, e.g. because audio input
+         * is silent. Sources of samples which are paced by input updates shall provide new samples anyway.
+         *
+         * @return true if new samples were provided, false if samples arrive regardless of input updates
+         */
+        default boolean skipUpdate() {
+            return false;
+        }
     }
 
     /**
@@ -27,9 +37,30 @@ public interface ClassifierInputProvider {
     }
 
     /**
-     * Returns input for a classifier
+     * Returns input for a classifier. The returned array might be reused by the provider and shall not be modified or
+     * kept after the next call. Use {@link INDArray#dup()} to keep it.
      *
      * @return input for a classifier
      */
     INDArray getModelInput();
+
+    /**
+     * Returns input for a classifier which is not changed by the provider until it is given back through
+     * {@link #releaseModelInput(INDArray)}. Shall be used instead of {@link #getModelInput()} by readers which may
+     * read concurrently with other readers of the same provider. The returned array shall not be modified.
+     *
+     * @return input for a classifier
+     */
+    default INDArray acquireModelInput() {
+        return getModelInput();
+    }
+
+    /**
+     * Gives back input returned by {@link #acquireModelInput()} so that the provider may reuse it.
+     *
+     * @param input input to give back
+     */
+    default void releaseModelInput(INDArray input) {
+        // Nothing is reused by default
+    }
 }
@@ -0,0 +1,75 @@
+package ampcontrol.audio;
+
+import ampcontrol.audio.processing.ProcessingResult;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of {@link ClassifierInputProvider ClassifierInputProviders} created by a
+ * {@link ClassifierInputProviderFactory} so that classifiers which use the same {@link AudioInputBuffer} and the same
+ * {@link ProcessingResult.Factory} share one {@link ClassifierInputProvider}. Classifiers which use the same
+ * {@link AudioInputBuffer} but different {@link ProcessingResult.Factory ProcessingResult.Factories} share all
+ * processing stages which are the same (by name) up to the point where they differ.
+ *
+ * @author Christian Skärby
+ */
+public class ClassifierInputProviderCache {
+
+    private final Map<AudioInputBuffer, SharedAudioProcessing> processingCache = new LinkedHashMap<>();
+    private final Map<AudioInputBuffer, Map<String, ClassifierInputProvider.Updatable>> inputProviderCache = new LinkedHashMap<>();
+
+    /**
+     * Returns the {@link ClassifierInputProvider} for the given buffer and processing. A new {@link Cnn2DInputProvider}
+     * is created if none exists.
+     *
+     * @param audioInput    Audio input to the {@link ClassifierInputProvider}
+     * @param resultFactory Processing to apply to the audio input
+     * @return a {@link ClassifierInputProvider}
+     */
+    public ClassifierInputProvider get(AudioInputBuffer audioInput, ProcessingResult.Factory resultFactory) {
+        final SharedAudioProcessing processing = processingCache.computeIfAbsent(audioInput, SharedAudioProcessing::new);
+        return inputProviderCache
+                .computeIfAbsent(audioInput, k -> new HashMap<>())
+                .computeIfAbsent(resultFactory.name(), k -> new Cnn2DInputProvider(processing.add(resultFactory), () -> {
+                    // Processing is updated for all inputs by the update handle
+                }));
+    }
+
+    /**
+     * Returns an {@link ClassifierInputProvider.UpdateHandle} which updates all cached
+     * {@link ClassifierInputProvider ClassifierInputProviders}.
+     *
+     * @return an {@link ClassifierInputProvider.UpdateHandle}
+     */
+    public ClassifierInputProvider.UpdateHandle getUpdateHandle() {
+        return () -> {
+            processingCache.values().forEach(SharedAudioProcessing::update);
+            inputProviderCache.values().stream()
+                    .flatMap(procToInputMap -> procToInputMap.values().stream())
+                    .forEach(ClassifierInputProvider.UpdateHandle::updateInput);
+        };
+    }
+
+    /**
+     * Returns all {@link AudioInputBuffer AudioInputBuffers} for which a {@link ClassifierInputProvider} has been created
+     *
+     * @return all {@link AudioInputBuffer AudioInputBuffers} for which a {@link ClassifierInputProvider} has been created
+     */
+    public Collection<AudioInputBuffer> getAudioInputs() {
+        return Collections.unmodifiableSet(processingCache.keySet());
+    }
+
+    /**
+     * Returns the number of distinct processing stages for the given buffer
+     *
+     * @param audioInput Audio input
+     * @return the number of distinct processing stages
+     */
+    int getNrofStages(AudioInputBuffer audioInput) {
+        return processingCache.containsKey(audioInput) ? processingCache.get(audioInput).getNrofStages() : 0;
+    }
+}
@@ -3,6 +3,7 @@ package ampcontrol.audio;
 
 import ampcontrol.audio.processing.ProcessingResult.Factory;
 
+import java.util.Collection;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,6 +33,22 @@ public interface ClassifierInputProviderFactory {
      */
     ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle();
 
+    /**
+     * Adds a {@link NewSamplesListener} which will be notified when new samples arrive to the created input. Must be
+     * called after all input has been created but before {@link #finalizeAndReturnUpdateHandle()}.
+     *
+     * @param listener listener to add
+     */
+    void addNewSamplesListener(NewSamplesListener listener);
+
+    /**
+     * Returns the {@link AudioInputBuffer AudioInputBuffers} of all created input. Must be called after all input has
+     * been created.
+     *
+     * @return the {@link AudioInputBuffer AudioInputBuffers} of all created input
+     */
+    Collection<AudioInputBuffer> getAudioInputs();
+
     /**
      * Generic utility for parsing out the time window size of a modelName
      * @param windowSizeString string containing window size
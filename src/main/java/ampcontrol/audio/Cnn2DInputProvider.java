@@ -1,60 +1,187 @@
 package ampcontrol.audio;
 
+import ampcontrol.audio.processing.FlatProcessing;
 import ampcontrol.audio.processing.ProcessingResult;
-import ampcontrol.audio.processing.SingletonDoubleInput;
+import ampcontrol.audio.processing.SharedProcessing;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 /**
  * {@link ClassifierInputProvider} for 2D CNN. Takes samples from an audio buffer and runs them through supplied
- * {@link ProcessingResult.Factory} and puts the output in an {@link INDArray}.
+ * {@link ProcessingResult.Factory} and puts the output in an {@link INDArray}. The processing is
+ * {@link ProcessingResult.Factory#compile(FlatProcessing.Shape) compiled} once so that all buffers are reused between
+ * updates. Instances created by a {@link ClassifierInputProviderCache} share processing with other instances for the
+ * same {@link AudioInputBuffer}.
+ * <br><br>
+ * Processed input is copied in bulk into the buffer of an {@link INDArray} (converted to half precision first if that
+ * is the data type of ND4J) which is then swapped in as the current model input so that readers get the array without
+ * copying. Since a reader may still use the array it got last time while the next update is written, a spare array is
+ * used instead of the one last handed out. Readers which may read concurrently with other readers shall use
+ * {@link #acquireModelInput()} and {@link #releaseModelInput(INDArray)} so that arrays they hold are not reused either.
+ * An additional array is created if all spare arrays are held. Input may thus be read while it is updated from another
+ * thread but only one thread shall update it.
  *
  * @author Christian Skärby
  */
 public class Cnn2DInputProvider implements ClassifierInputProvider.Updatable {
 
-    private final AudioInputBuffer audioBuffer;
-    private final INDArray output;
-    private final Supplier<ProcessingResult.Factory> resultSupplier;
+    private final List<INDArray> buffers = new ArrayList<>(); // Current, last read, acquired and one to write the next update to
+    private final SharedProcessing.Output processed;
+    private final Runnable processInput;
+    private float[] floatFrame;
+    private short[] halfFrame;
+    private int[] nrofHolders = new int[3];
+    private int current = 0;
+    private int lastRead = -1;
 
     public Cnn2DInputProvider(
             AudioInputBuffer audioBuffer,
             Supplier<ProcessingResult.Factory> resultSupplier) {
-        this.audioBuffer = audioBuffer;
-        this.resultSupplier = resultSupplier;
+        this(new SharedAudioProcessing(audioBuffer), resultSupplier.get());
+    }
+
+    private Cnn2DInputProvider(SharedAudioProcessing processing, ProcessingResult.Factory factory) {
+        this(processing.add(factory), processing::update);
+    }
 
-        List<double[][]> result = getPostProcessedInput();
-        this.output = Nd4j.create(new int[] {1, result.size(), result.get(0).length, result.get(0)[0].length}, 'f');
+    /**
+     * Constructor
+     *
+     * @param processed    Processed input
+     * @param processInput Updates the processed input. Called before processed input is copied.
+     */
+    Cnn2DInputProvider(SharedProcessing.Output processed, Runnable processInput) {
+        this.processed = processed;
+        this.processInput = processInput;
+        for (int i = 0; i < nrofHolders.length; i++) {
+            buffers.add(createBuffer());
+        }
     }
 
+    private INDArray createBuffer() {
+        final FlatProcessing.Shape shape = processed.getShape();
+        // Same layout as the flat output of the processing
+        return Nd4j.create(new int[]{1, shape.getNrofChannels(), shape.getNrofRows(), shape.getNrofCols()}, 'c');
+    }
+
+    /**
+     * Returns the current model input. The returned array is not copied and shall thus not be modified. It is not
+     * changed by updates until the next call to this method.
+     *
+     * @return the current model input
+     */
     @Override
     public INDArray getModelInput() {
-        return output.dup();
+        synchronized (buffers) {
+            lastRead = current;
+            return buffers.get(current);
+        }
     }
 
+    /**
+     * Returns the current model input. The returned array is not copied and shall thus not be modified. It is not
+     * changed by updates until it is given back through {@link #releaseModelInput(INDArray)}.
+     *
+     * @return the current model input
+     */
     @Override
-    public void updateInput() {
-        List<double[][]> nextInput = getPostProcessedInput();
-        for(int inputInd = 0; inputInd < nextInput.size(); inputInd++) {
-            double[][] oneInput = nextInput.get(inputInd);
-            for (int timeInd = 0; timeInd < oneInput.length; timeInd++) {
-                for (int freqInd = 0; freqInd < oneInput[timeInd].length; freqInd++) {
-                    output.putScalar(0, inputInd, timeInd, freqInd, oneInput[timeInd][freqInd]);
+    public INDArray acquireModelInput() {
+        synchronized (buffers) {
+            nrofHolders[current]++;
+            return buffers.get(current);
+        }
+    }
+
+    @Override
+    public void releaseModelInput(INDArray input) {
+        synchronized (buffers) {
+            for (int i = 0; i < buffers.size(); i++) {
+                if (buffers.get(i) == input) {
+                    if (nrofHolders[i] == 0) {
+                        throw new IllegalStateException("Model input was not acquired!");
+                    }
+                    nrofHolders[i]--;
+                    return;
                 }
             }
         }
+        throw new IllegalArgumentException("Model input not from this provider!");
     }
 
-    private List<double[][]> getPostProcessedInput() {
+    @Override
+    public void updateInput() {
+        processInput.run();
+        final int next;
+        final INDArray nextBuffer;
+        synchronized (buffers) {
+            next = nextFreeBuffer();
+            nextBuffer = buffers.get(next);
+        }
+        copy(processed.get(), nextBuffer);
+        synchronized (buffers) {
+            current = next;
+        }
+    }
 
-        ProcessingResult.Factory next = resultSupplier.get();
-        double[] audioFrame = audioBuffer.getAudio();
-        ProcessingResult res = next.create(new SingletonDoubleInput(audioFrame));
-        return res.stream().collect(Collectors.toList());
+    private int nextFreeBuffer() {
+        for (int i = 0; i < buffers.size(); i++) {
+            if (i != current && i != lastRead && nrofHolders[i] == 0) {
+                return i;
+            }
+        }
+        // All spare buffers are held by readers
+        buffers.add(createBuffer());
+        nrofHolders = Arrays.copyOf(nrofHolders, buffers.size());
+        return buffers.size() - 1;
+    }
 
+    private void copy(double[] processedFrame, INDArray array) {
+        final DataBuffer buffer = array.data();
+        switch (buffer.dataType()) {
+            case DOUBLE:
+                buffer.asNioDouble().put(processedFrame);
+                break;
+            case FLOAT:
+                if (floatFrame == null) {
+                    floatFrame = new float[processedFrame.length];
+                }
+                for (int i = 0; i < processedFrame.length; i++) {
+                    floatFrame[i] = (float) processedFrame[i];
+                }
+                buffer.asNioFloat().put(floatFrame);
+                break;
+            case HALF:
+                if (halfFrame == null) {
+                    halfFrame = new short[processedFrame.length];
+                }
+                toHalf(processedFrame, halfFrame);
+                buffer.asNio().order(ByteOrder.nativeOrder()).asShortBuffer().put(halfFrame);
+                break;
+            default:
+                buffer.setData(processedFrame);
+        }
+        // Writes through the nio buffers above are not tracked by backends which keep a copy on a device
+        Nd4j.getAffinityManager().tagLocation(array, AffinityManager.Location.HOST);
+    }
+
+    /**
+     * Converts the given values to the bit patterns of half precision floats
+     *
+     * @param values values to convert
+     * @param half   half precision representation of values
+     */
+    static void toHalf(double[] values, short[] half) {
+        for (int i = 0; i < values.length; i++) {
+            half[i] = (short) HalfIndexer.fromFloat((float) values[i]);
+        }
     }
 }
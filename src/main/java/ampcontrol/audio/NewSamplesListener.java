@@ -0,0 +1,17 @@
+package ampcontrol.audio;
+
+/**
+ * Listens to new samples arriving to an {@link AudioInputBuffer}. Typically called from a real time audio thread
+ * so implementations must return quickly and must not block.
+ *
+ * @author Christian Skärby
+ */
+public interface NewSamplesListener {
+
+    /**
+     * Indicates that new samples have been written
+     *
+     * @param nrofSamples Number of new samples
+     */
+    void newSamples(int nrofSamples);
+}
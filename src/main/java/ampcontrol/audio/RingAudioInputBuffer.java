@@ -0,0 +1,212 @@
+package ampcontrol.audio;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Single producer single consumer circular buffer holding the last nrofSamples written to it. The producer (typically
+ * an audio driver callback thread) never blocks: Each write is bracketed by a sequence counter which the consumer
+ * uses to validate that the snapshot it copied was not overwritten while copying. If it was, the copy is simply
+ * retried.
+ * <br><br>
+ * The sequence counter is a {@link StampedLock} which is only ever write locked by the producer and only used through
+ * optimistic reads by the consumer. As there is only one producer, the write lock is always uncontended.
+ * <br><br>
+ * Samples are stored as the floats given by the producer and the scale factor is applied when reading. Reading through
+ * {@link #getAudio(double[])} does not allocate any memory.
+ * <br><br>
+ * Consumers which only need the most recent samples can use a {@link #view(int)} of the buffer. This way one buffer
+ * (and one write per producer callback) can serve any number of window sizes.
+ * <br><br>
+ * {@link NewSamplesListener NewSamplesListeners} are notified from the producer thread after each write.
+ * <br><br>
+ * The buffer keeps track of the total number of samples written to it so that readers can get the position of what
+ * they read through {@link #getPositionedAudio(double[])}.
+ *
+ * @author Christian Skärby
+ */
+public class RingAudioInputBuffer implements AudioInputBuffer {
+
+    private final StampedLock seqLock = new StampedLock();
+    private final double scale;
+    private float[] samples;
+    private int cursor = 0;
+    private long position = 0;
+    private volatile NewSamplesListener[] listeners = new NewSamplesListener[0];
+
+    /**
+     * {@link AudioInputBuffer} of the last nrofSamples samples of the buffer.
+     */
+    private final class View implements AudioInputBuffer {
+
+        private final int nrofSamples;
+
+        private View(int nrofSamples) {
+            this.nrofSamples = nrofSamples;
+        }
+
+        @Override
+        public double[] getAudio() {
+            final double[] audio = new double[nrofSamples];
+            read(audio);
+            return audio;
+        }
+
+        @Override
+        public void getAudio(double[] dest) {
+            getPositionedAudio(dest);
+        }
+
+        @Override
+        public long getPositionedAudio(double[] dest) {
+            if (dest.length != nrofSamples) {
+                throw new IllegalArgumentException("Incorrect length of destination! Expected " + nrofSamples + ", got "
+                        + dest.length);
+            }
+            return read(dest);
+        }
+    }
+
+    /**
+     * Constructor
+     * @param nrofSamples Number of samples to hold
+     * @param scale Scale factor applied to samples when read
+     */
+    public RingAudioInputBuffer(int nrofSamples, double scale) {
+        if (nrofSamples <= 0) {
+            throw new IllegalArgumentException("Desired number of samples must be > 0!!");
+        }
+        this.samples = new float[nrofSamples];
+        this.scale = scale;
+    }
+
+    /**
+     * Writes the given samples to the buffer. May only be called by the producer thread.
+     *
+     * @param buffer samples to write
+     */
+    public void write(float[] buffer) {
+        write(buffer, buffer.length);
+    }
+
+    /**
+     * Writes the first length samples of the given buffer to the buffer. May only be called by the producer thread.
+     *
+     * @param buffer samples to write
+     * @param length number of samples to write
+     */
+    public void write(float[] buffer, int length) {
+        final long stamp = seqLock.writeLock();
+        try {
+            for (int i = 0; i < length; i++) {
+                samples[getSamplesInd(i)] = buffer[i];
+            }
+            cursor = (cursor + length) % samples.length;
+            position += length;
+        } finally {
+            seqLock.unlockWrite(stamp);
+        }
+        for (NewSamplesListener listener : listeners) {
+            listener.newSamples(length);
+        }
+    }
+
+    /**
+     * Adds a {@link NewSamplesListener} which will be notified after each write. Listeners shall preferably be added
+     * before the producer is started.
+     *
+     * @param listener listener to add
+     */
+    public synchronized void addListener(NewSamplesListener listener) {
+        final NewSamplesListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    /**
+     * Returns an {@link AudioInputBuffer} which provides the last nrofSamples samples of this buffer. Reading from the
+     * view copies directly from this buffer. If nrofSamples is larger than the current size of this buffer, the buffer
+     * will be enlarged. As this means the producer is blocked while samples are moved, views shall preferably be
+     * created before the producer is started.
+     *
+     * @param nrofSamples Number of samples in the view
+     * @return an {@link AudioInputBuffer} of the last nrofSamples samples
+     */
+    public AudioInputBuffer view(int nrofSamples) {
+        if (nrofSamples <= 0) {
+            throw new IllegalArgumentException("Desired number of samples must be > 0!!");
+        }
+        final long stamp = seqLock.writeLock();
+        try {
+            if (nrofSamples > samples.length) {
+                // Put old samples last in chronological order so that next write overwrites the oldest one
+                final float[] newSamples = new float[nrofSamples];
+                final int offset = nrofSamples - samples.length;
+                for (int i = 0; i < samples.length; i++) {
+                    newSamples[offset + i] = samples[getSamplesInd(i)];
+                }
+                samples = newSamples;
+                cursor = 0;
+            }
+        } finally {
+            seqLock.unlockWrite(stamp);
+        }
+        return new View(nrofSamples);
+    }
+
+    @Override
+    public double[] getAudio() {
+        final double[] audio = new double[samples.length];
+        read(audio);
+        return audio;
+    }
+
+    @Override
+    public void getAudio(double[] dest) {
+        getPositionedAudio(dest);
+    }
+
+    @Override
+    public long getPositionedAudio(double[] dest) {
+        if (dest.length != samples.length) {
+            throw new IllegalArgumentException("Incorrect length of destination! Expected " + samples.length + ", got "
+                    + dest.length);
+        }
+        return read(dest);
+    }
+
+    /**
+     * Copies the last dest.length samples into dest.
+     *
+     * @param dest Destination of samples
+     * @return position of the last sample
+     */
+    private long read(double[] dest) {
+        long stamp;
+        long readPosition = -1;
+        do {
+            stamp = seqLock.tryOptimisticRead();
+            if (stamp == 0) {
+                // Producer is currently writing
+                Thread.yield();
+                continue;
+            }
+            readPosition = position;
+            final float[] source = samples;
+            if (dest.length > source.length) {
+                // Buffer was enlarged while reading. Validation will fail
+                continue;
+            }
+            final int start = cursor - dest.length + source.length;
+            for (int i = 0; i < dest.length; i++) {
+                // Cast to double before multiplying with a (possibly) large value
+                dest[i] = (double) source[(i + start) % source.length] * scale;
+            }
+        } while (stamp == 0 || !seqLock.validate(stamp));
+        return readPosition;
+    }
+
+    private int getSamplesInd(int i) {
+        return (i + cursor) % samples.length;
+    }
+}
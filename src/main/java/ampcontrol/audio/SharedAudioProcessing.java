@@ -0,0 +1,52 @@
+package ampcontrol.audio;
+
+import ampcontrol.audio.processing.FlatProcessing;
+import ampcontrol.audio.processing.ProcessingResult;
+import ampcontrol.audio.processing.SharedProcessing;
+
+/**
+ * Reads audio from an {@link AudioInputBuffer} and processes it through a {@link SharedProcessing} so that all
+ * {@link ProcessingResult.Factory ProcessingResult.Factories} added to it get the same audio and any processing they
+ * have in common is done only once.
+ *
+ * @author Christian Skärby
+ */
+class SharedAudioProcessing {
+
+    private final AudioInputBuffer audioBuffer;
+    private final double[] audioFrame;
+    private final SharedProcessing processing;
+
+    SharedAudioProcessing(AudioInputBuffer audioBuffer) {
+        this.audioBuffer = audioBuffer;
+        this.audioFrame = new double[audioBuffer.getAudio().length];
+        this.processing = new SharedProcessing(new FlatProcessing.Shape(1, 1, audioFrame.length));
+    }
+
+    /**
+     * Adds the given processing.
+     *
+     * @param factory processing to add
+     * @return output of the processing
+     */
+    SharedProcessing.Output add(ProcessingResult.Factory factory) {
+        return processing.add(factory);
+    }
+
+    /**
+     * Reads the latest audio and processes it.
+     */
+    void update() {
+        final long position = audioBuffer.getPositionedAudio(audioFrame);
+        processing.process(audioFrame, position);
+    }
+
+    /**
+     * Returns the number of distinct processing stages
+     *
+     * @return the number of distinct processing stages
+     */
+    int getNrofStages() {
+        return processing.getNrofStages();
+    }
+}
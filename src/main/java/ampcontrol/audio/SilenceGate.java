@@ -0,0 +1,115 @@
+package ampcontrol.audio;
+
+import java.util.Collection;
+
+/**
+ * Cheap detection of silence directly on the samples of {@link AudioInputBuffer AudioInputBuffers} so that processing
+ * and classification can be skipped when there is nothing to classify. Input is silent if both RMS and peak level of
+ * all buffers are below their thresholds. To avoid toggling when the level is close to the thresholds, input which
+ * is silent only stops being so once either level exceeds its threshold by the hysteresis.
+ * <br><br>
+ * Levels are in dB relative to full scale of 16 bit samples, which is the scale of all audio input. Not thread safe.
+ *
+ * @author Christian Skärby
+ */
+public class SilenceGate {
+
+    private static final double fullScale = 1 << 15;
+
+    private final AudioInputBuffer[] inputs;
+    private final double[][] samples;
+    private final double rmsThreshold;
+    private final double peakThreshold;
+    private final double hysteresisFactor;
+
+    private boolean silent = false;
+    private long nrofUpdates = 0;
+    private long nrofSilent = 0;
+
+    /**
+     * Constructor
+     *
+     * @param inputs          Audio inputs to detect silence on
+     * @param rmsThresholdDb  RMS level in dB below which input may be silent
+     * @param peakThresholdDb Peak level in dB below which input may be silent
+     * @param hysteresisDb    How much (in dB) a level must exceed its threshold for silent input to stop being silent
+     */
+    public SilenceGate(Collection<AudioInputBuffer> inputs, double rmsThresholdDb, double peakThresholdDb, double hysteresisDb) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No inputs!");
+        }
+        if (hysteresisDb < 0) {
+            throw new IllegalArgumentException("Hysteresis must not be negative!");
+        }
+        this.inputs = inputs.toArray(new AudioInputBuffer[0]);
+        this.samples = new double[this.inputs.length][];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = this.inputs[i].getAudio();
+        }
+        this.rmsThreshold = fromDb(rmsThresholdDb);
+        this.peakThreshold = fromDb(peakThresholdDb);
+        this.hysteresisFactor = Math.pow(10, hysteresisDb / 20);
+    }
+
+    /**
+     * Reads the current samples of all inputs and updates whether input is silent or not.
+     *
+     * @return true if input is silent
+     */
+    public boolean update() {
+        final double factor = silent ? hysteresisFactor : 1;
+        boolean allSilent = true;
+        for (int i = 0; i < inputs.length && allSilent; i++) {
+            allSilent = isSilent(inputs[i], samples[i], factor);
+        }
+        silent = allSilent;
+        nrofUpdates++;
+        if (silent) {
+            nrofSilent++;
+        }
+        return silent;
+    }
+
+    private boolean isSilent(AudioInputBuffer input, double[] samples, double factor) {
+        input.getAudio(samples);
+        double sumSquares = 0;
+        double peak = 0;
+        for (double sample : samples) {
+            sumSquares += sample * sample;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        final double rms = Math.sqrt(sumSquares / samples.length);
+        return rms < rmsThreshold * factor && peak < peakThreshold * factor;
+    }
+
+    /**
+     * Returns true if input was silent at the last update
+     *
+     * @return true if input was silent at the last update
+     */
+    public boolean isSilent() {
+        return silent;
+    }
+
+    /**
+     * Returns the number of updates
+     *
+     * @return the number of updates
+     */
+    public long getNrofUpdates() {
+        return nrofUpdates;
+    }
+
+    /**
+     * Returns the number of updates for which input was silent
+     *
+     * @return the number of updates for which input was silent
+     */
+    public long getNrofSilent() {
+        return nrofSilent;
+    }
+
+    private static double fromDb(double db) {
+        return fullScale * Math.pow(10, db / 20);
+    }
+}
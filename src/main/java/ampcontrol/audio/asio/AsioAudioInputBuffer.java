@@ -1,6 +1,8 @@
 package ampcontrol.audio.asio;
 
 import ampcontrol.audio.AudioInputBuffer;
+import ampcontrol.audio.NewSamplesListener;
+import ampcontrol.audio.RingAudioInputBuffer;
 import com.synthbot.jasiohost.AsioChannel;
 import com.synthbot.jasiohost.AsioDriver;
 import com.synthbot.jasiohost.AsioDriverListener;
@@ -12,38 +14,56 @@ import java.util.Set;
 
 /**
  * A circular buffer holding the last desiredNrofSamples from an {@link AsioChannel}.
- * Use for online classification of audio from an ASIO device.
+ * Use for online classification of audio from an ASIO device. Samples are stored in a {@link RingAudioInputBuffer}
+ * so that the driver callback never has to wait for a slow reader.
  *
  * @author Christian Skärby
  */
 public class AsioAudioInputBuffer implements AsioDriverListener, AudioInputBuffer {
 
     private final AsioInputChannel inputChannel;
+    private final RingAudioInputBuffer ringBuffer;
     private float[] bufferRetreiver;
-    private final double[] samples;
-    private final int desiredNrofSamples;
-    private int cursor = 0;
 
     AsioAudioInputBuffer(AsioInputChannel inputChannel, int bufferSize, int desiredSamples) {
         this.inputChannel = inputChannel;
         this.bufferRetreiver = new float[bufferSize];
-        this.samples = new double[desiredSamples];
-        desiredNrofSamples = desiredSamples;
-        if (desiredSamples <= 0) {
-            throw new IllegalArgumentException("Desired number of samples must be > 0!!");
-        }
+        // Models trained in this framework use shorts for waveinput.
+        this.ringBuffer = new RingAudioInputBuffer(desiredSamples, Short.MAX_VALUE);
     }
 
     @Override
     public double[] getAudio() {
-        double[] audio = new double[desiredNrofSamples];
-        synchronized (this) {
-            for (int i = 0; i < audio.length; i++) {
-                int samplesInd = getSamplesInd(i);
-                audio[i] = samples[samplesInd];
-            }
-        }
-        return audio;
+        return ringBuffer.getAudio();
+    }
+
+    @Override
+    public void getAudio(double[] dest) {
+        ringBuffer.getAudio(dest);
+    }
+
+    @Override
+    public long getPositionedAudio(double[] dest) {
+        return ringBuffer.getPositionedAudio(dest);
+    }
+
+    /**
+     * Returns an {@link AudioInputBuffer} of the last nrofSamples samples. See {@link RingAudioInputBuffer#view(int)}.
+     *
+     * @param nrofSamples Number of samples in the view
+     * @return an {@link AudioInputBuffer} of the last nrofSamples samples
+     */
+    AudioInputBuffer view(int nrofSamples) {
+        return ringBuffer.view(nrofSamples);
+    }
+
+    /**
+     * Adds a {@link NewSamplesListener} which is notified from the driver thread on each buffer switch.
+     *
+     * @param listener listener to add
+     */
+    void addListener(NewSamplesListener listener) {
+        ringBuffer.addListener(listener);
     }
 
 
@@ -75,23 +95,10 @@ public class AsioAudioInputBuffer implements AsioDriverListener, AudioInputBuffe
     @Override
     public void bufferSwitch(long l, long l1, Set<AsioChannel> set) {
         if (inputChannel.updateBuffer(bufferRetreiver, set)) {
-            synchronized (this) {
-                for (int i = 0; i < bufferRetreiver.length; i++) {
-                    int samplesInd = getSamplesInd(i);
-                    // Models trained in this framework use shorts for waveinput.
-                    // More "accurate" to cast to double before multiplying with a large value?
-                    samples[samplesInd] = ((double) bufferRetreiver[i] * Short.MAX_VALUE);
-                }
-                cursor += bufferRetreiver.length;
-                cursor %= samples.length;
-            }
+            ringBuffer.write(bufferRetreiver);
         }
     }
 
-    private int getSamplesInd(int i) {
-        return (i + cursor) % samples.length;
-    }
-
     public static void main(String[] args) {
         List<String> driverNameList = AsioDriver.getDriverNames();
         System.out.println(driverNameList);
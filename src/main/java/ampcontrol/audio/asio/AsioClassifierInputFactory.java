@@ -1,9 +1,6 @@
 package ampcontrol.audio.asio;
 
-import ampcontrol.audio.AudioInputBuffer;
-import ampcontrol.audio.ClassifierInputProvider;
-import ampcontrol.audio.ClassifierInputProviderFactory;
-import ampcontrol.audio.Cnn2DInputProvider;
+import ampcontrol.audio.*;
 import ampcontrol.audio.processing.ProcessingFactoryFromString;
 import ampcontrol.audio.processing.ProcessingResult;
 import com.beust.jcommander.Parameter;
@@ -27,19 +24,28 @@ public class AsioClassifierInputFactory implements ClassifierInputProviderFactor
     @Parameter(names = "-asioDriver", description = "Asio driver to use")
     private String driverName = "";
 
-    @Parameter(names = "-channel", description = "Input channel to classify")
-    private int channelInd = 0;
-
-    @Parameter(names = "-samplingRate", description = "Sample rate used when training model")
-    private int sampleRate = 44100;
+    private final AudioInputPar audioInputPar;
 
     // Should be final but can't thanks to JCommander...
     private AsioDriver driver;
 
-    private final Map<AudioInputBuffer, Map<String, ClassifierInputProvider.Updatable>> inputProviderCache = new LinkedHashMap<>();
+    private final ClassifierInputProviderCache inputProviderCache = new ClassifierInputProviderCache();
     private final Map<Integer, AudioInputBuffer> audioInputCache = new LinkedHashMap<>();
+    private final Map<Integer, AsioAudioInputBuffer> channelInputCache = new HashMap<>();
     private final Map<Integer, AsioChannel> activeAsioChannels = new HashMap<>();
 
+    /**
+     * Constructor
+     *
+     * @param audioInputPar Which channel and sample rate to use
+     */
+    public AsioClassifierInputFactory(AudioInputPar audioInputPar) {
+        this.audioInputPar = audioInputPar;
+    }
+
+    /**
+     * Initialize the ASIO driver. Must be called before any other methods.
+     */
     public void initialize() {
         // Effectively untestable as Asio stuff is not mockable
         AsioDriver.getDriverNames().forEach(name -> log.info("Found ASIO driver with name: " + name));
@@ -47,7 +53,7 @@ public class AsioClassifierInputFactory implements ClassifierInputProviderFactor
 
         // No matter what, we must shut down the driver when program ends!
         setShutdownHook(driver);
-        driver.setSampleRate(sampleRate);
+        driver.setSampleRate(audioInputPar.getSampleRate());
     }
 
     private void setShutdownHook(AsioDriver driver) {
@@ -65,31 +71,45 @@ public class AsioClassifierInputFactory implements ClassifierInputProviderFactor
     public ClassifierInputProvider createInputProvider(String inputDescriptionString) {
         final AudioInputBuffer audioInput = createAudioBuffer(inputDescriptionString);
 
-        final Map<String, ClassifierInputProvider.Updatable> processingToInputProvider = inputProviderCache
-                .computeIfAbsent(audioInput, k -> new HashMap<>());
-
         final ProcessingResult.Factory resultFactory = new ProcessingFactoryFromString(driver.getSampleRate())
                 .get(inputDescriptionString);
 
-        return processingToInputProvider
-                .computeIfAbsent(resultFactory.name(), k -> new Cnn2DInputProvider(audioInput, () -> resultFactory));
-
+        return inputProviderCache.get(audioInput, resultFactory);
     }
 
     @Override
     public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
         driver.createBuffers(new HashSet<>(activeAsioChannels.values()));
         driver.start();
-        return () -> inputProviderCache.values().stream()
-                .flatMap(procToInputMap -> procToInputMap.values().stream())
-                .forEach(ClassifierInputProvider.UpdateHandle::updateInput);
+        return inputProviderCache.getUpdateHandle();
+    }
+
+    @Override
+    public Collection<AudioInputBuffer> getAudioInputs() {
+        return inputProviderCache.getAudioInputs();
+    }
+
+    @Override
+    public void addNewSamplesListener(NewSamplesListener listener) {
+        if (channelInputCache.isEmpty()) {
+            throw new IllegalStateException("No input created!");
+        }
+        channelInputCache.values().forEach(channelBuffer -> channelBuffer.addListener(listener));
     }
 
     private AudioInputBuffer createAudioBuffer(String str) {
         final int windowSizeMs = ClassifierInputProviderFactory.parseWindowSize(str);
         final int nrofSamples = (int)(driver.getSampleRate() * windowSizeMs / 1000);
-        final int key = hashKey(nrofSamples,channelInd);
-        return audioInputCache.computeIfAbsent(key, k -> {
+        final int key = hashKey(nrofSamples, audioInputPar.getChannel());
+        return audioInputCache.computeIfAbsent(key, k -> getChannelBuffer(nrofSamples).view(nrofSamples));
+    }
+
+    /**
+     * Returns the one and only buffer for the selected channel so that each ASIO buffer is only copied once
+     * regardless of how many window sizes are used.
+     */
+    private AsioAudioInputBuffer getChannelBuffer(int nrofSamples) {
+        return channelInputCache.computeIfAbsent(audioInputPar.getChannel(), channelInd -> {
 
             final AsioChannel channel = activeAsioChannels.computeIfAbsent(channelInd,  k2 -> driver.getChannelInput(channelInd));
 
@@ -0,0 +1,162 @@
+package ampcontrol.audio.file;
+
+import ampcontrol.audio.*;
+import ampcontrol.audio.processing.ProcessingFactoryFromString;
+import ampcontrol.audio.processing.ProcessingResult;
+import com.beust.jcommander.Parameter;
+import org.datavec.audio.Wave;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * {@link ClassifierInputProviderFactory} which replays wav files instead of capturing audio from a sound card. Files
+ * can be replayed in real time, N times faster than real time or in lockstep with updates of the input, i.e. as fast
+ * as the classifier can consume it. Main use is to run the whole chain in a headless environment, e.g. to soak test it
+ * and to measure sustainable throughput.
+ * <br><br>
+ * A dedicated thread writes chunks of samples from the files into a {@link RingAudioInputBuffer}.
+ *
+ * @author Christian Skärby
+ */
+public class FileReplayClassifierInputFactory implements ClassifierInputProviderFactory {
+
+    @Parameter(names = "-replayFiles", description = "Comma separated list of wav files to replay")
+    private List<String> files = new ArrayList<>();
+
+    @Parameter(names = "-replaySpeed", description = "Replay speed relative to real time. Values <= 0 means " +
+            "replay in lockstep with classification, i.e. as fast as input is consumed")
+    private double replaySpeed = 1;
+
+    @Parameter(names = "-replayChunkMs", description = "Size in milliseconds of each chunk of samples written " +
+            "during replay. Also the amount of new audio per update in lockstep mode")
+    private int chunkMs = 10;
+
+    @Parameter(names = "-replayLoop", description = "Replay files forever if set")
+    private boolean loop = false;
+
+    private final AudioInputPar audioInputPar;
+    private final Function<String, short[]> fileReader;
+
+    private final ClassifierInputProviderCache inputProviderCache = new ClassifierInputProviderCache();
+    private final Map<Integer, AudioInputBuffer> audioInputCache = new LinkedHashMap<>();
+    private RingAudioInputBuffer ringBuffer;
+
+    /**
+     * Constructor
+     *
+     * @param audioInputPar Which channel and sample rate to use
+     */
+    public FileReplayClassifierInputFactory(AudioInputPar audioInputPar) {
+        this(audioInputPar, file -> readWav(file, audioInputPar.getChannel(), audioInputPar.getSampleRate()));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param audioInputPar Which channel and sample rate to use
+     * @param fileReader    Reads samples from a file
+     */
+    FileReplayClassifierInputFactory(AudioInputPar audioInputPar, Function<String, short[]> fileReader) {
+        this.audioInputPar = audioInputPar;
+        this.fileReader = fileReader;
+    }
+
+    @Override
+    public ClassifierInputProvider createInputProvider(String inputDescriptionString) {
+        final AudioInputBuffer audioInput = createAudioBuffer(inputDescriptionString);
+
+        final ProcessingResult.Factory resultFactory = new ProcessingFactoryFromString(audioInputPar.getSampleRate())
+                .get(inputDescriptionString);
+
+        return inputProviderCache.get(audioInput, resultFactory);
+    }
+
+    @Override
+    public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("No input created!");
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No files to replay!");
+        }
+
+        final int sampleRate = audioInputPar.getSampleRate();
+        final int chunkSize = Math.max(1, sampleRate * chunkMs / 1000);
+        final ReplayPace pace = replaySpeed > 0 ?
+                new ReplayPace.FixedRate((long) (chunkSize * 1e9 / sampleRate / replaySpeed)) :
+                new ReplayPace.LockStep();
+
+        final Thread replayer = new Thread(
+                new FileReplayer(files, fileReader, loop, chunkSize, sampleRate, ringBuffer, pace),
+                "FileReplayer");
+        replayer.setPriority(Thread.MAX_PRIORITY);
+        replayer.setDaemon(true);
+        replayer.start();
+
+        return pace.wrap(inputProviderCache.getUpdateHandle());
+    }
+
+    /**
+     * Reads the samples of the given channel from a 16 bit wav file.
+     *
+     * @param file       Name of file to read
+     * @param channel    Channel to read
+     * @param sampleRate Expected sample rate
+     * @return samples of the given channel
+     */
+    static short[] readWav(String file, int channel, int sampleRate) {
+        final Wave wave = new Wave(file);
+        if (wave.getWaveHeader().getSampleRate() != sampleRate) {
+            throw new IllegalArgumentException("Incorrect sample rate of " + file + "! Expected " + sampleRate
+                    + ", got " + wave.getWaveHeader().getSampleRate());
+        }
+        if (wave.getWaveHeader().getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("Only 16 bit wav files supported! Got " + file + " with "
+                    + wave.getWaveHeader().getBitsPerSample() + " bits per sample");
+        }
+        final int nrofChannels = wave.getWaveHeader().getChannels();
+        if (channel >= nrofChannels) {
+            throw new IllegalArgumentException("Can not read channel " + channel + " from " + file + " which has "
+                    + nrofChannels + " channels!");
+        }
+
+        final short[] interleaved = wave.getSampleAmplitudes();
+        if (nrofChannels == 1) {
+            return interleaved;
+        }
+        final short[] samples = new short[interleaved.length / nrofChannels];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = interleaved[i * nrofChannels + channel];
+        }
+        return samples;
+    }
+
+    @Override
+    public Collection<AudioInputBuffer> getAudioInputs() {
+        return inputProviderCache.getAudioInputs();
+    }
+
+    @Override
+    public void addNewSamplesListener(NewSamplesListener listener) {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("No input created!");
+        }
+        ringBuffer.addListener(listener);
+    }
+
+    private AudioInputBuffer createAudioBuffer(String str) {
+        final int windowSizeMs = ClassifierInputProviderFactory.parseWindowSize(str);
+        final int nrofSamples = audioInputPar.getSampleRate() * windowSizeMs / 1000;
+        return audioInputCache.computeIfAbsent(nrofSamples, k -> {
+            if (ringBuffer == null) {
+                ringBuffer = new RingAudioInputBuffer(nrofSamples, 1);
+            }
+            return ringBuffer.view(nrofSamples);
+        });
+    }
+}
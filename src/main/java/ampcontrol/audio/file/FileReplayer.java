@@ -0,0 +1,96 @@
+package ampcontrol.audio.file;
+
+import ampcontrol.audio.RingAudioInputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes samples from a list of files to a {@link RingAudioInputBuffer} in chunks at the pace of a given
+ * {@link ReplayPace}. Logs how fast audio was replayed relative to real time after each pass through the files.
+ * <br><br>
+ * Each file is read during the first pass through the files and its samples are kept in memory so that later passes
+ * when looping do not spend time reading from disk.
+ *
+ * @author Christian Skärby
+ */
+class FileReplayer implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileReplayer.class);
+
+    private final List<String> files;
+    private final Function<String, short[]> fileReader;
+    private final boolean loop;
+    private final int chunkSize;
+    private final double sampleRate;
+    private final RingAudioInputBuffer buffer;
+    private final ReplayPace pace;
+
+    /**
+     * Constructor
+     *
+     * @param files      Files to replay
+     * @param fileReader Reads samples from a file. Called once per file
+     * @param loop       Replay files forever if true
+     * @param chunkSize  Number of samples to write at a time
+     * @param sampleRate Sample rate of files. Only used for logging
+     * @param buffer     Buffer to write samples to
+     * @param pace       Pace to write chunks at
+     */
+    FileReplayer(
+            List<String> files,
+            Function<String, short[]> fileReader,
+            boolean loop,
+            int chunkSize,
+            double sampleRate,
+            RingAudioInputBuffer buffer,
+            ReplayPace pace) {
+        this.files = files;
+        this.fileReader = fileReader;
+        this.loop = loop;
+        this.chunkSize = chunkSize;
+        this.sampleRate = sampleRate;
+        this.buffer = buffer;
+        this.pace = pace;
+    }
+
+    @Override
+    public void run() {
+        final float[] chunk = new float[chunkSize];
+        final short[][] filesSamples = new short[files.size()][];
+        long chunkInd = 0;
+        try {
+            do {
+                final long startTime = System.nanoTime();
+                long nrofSamples = 0;
+                for (int fileInd = 0; fileInd < filesSamples.length; fileInd++) {
+                    if (filesSamples[fileInd] == null) {
+                        filesSamples[fileInd] = fileReader.apply(files.get(fileInd));
+                    }
+                    final short[] samples = filesSamples[fileInd];
+                    for (int offset = 0; offset < samples.length; offset += chunkSize) {
+                        final int length = Math.min(chunkSize, samples.length - offset);
+                        for (int i = 0; i < length; i++) {
+                            chunk[i] = samples[offset + i];
+                        }
+                        pace.awaitWrite(chunkInd++);
+                        buffer.write(chunk, length);
+                        pace.written();
+                    }
+                    nrofSamples += samples.length;
+                }
+                final double audioTime = nrofSamples / sampleRate;
+                final double replayTime = (System.nanoTime() - startTime) / 1e9;
+                log.info(String.format("Replayed %.1f s of audio in %.1f s (%.2f x real time)",
+                        audioTime, replayTime, audioTime / replayTime));
+            } while (loop);
+        } catch (InterruptedException e) {
+            log.info("Replay interrupted!");
+            Thread.currentThread().interrupt();
+        } finally {
+            pace.done();
+        }
+    }
+}
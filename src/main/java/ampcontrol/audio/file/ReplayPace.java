@@ -0,0 +1,145 @@
+package ampcontrol.audio.file;
+
+import ampcontrol.audio.ClassifierInputProvider;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Determines the pace at which a {@link FileReplayer} writes chunks of samples.
+ *
+ * @author Christian Skärby
+ */
+interface ReplayPace {
+
+    /**
+     * Waits until it is time to write the given chunk.
+     *
+     * @param chunkInd Index of the chunk to write. First chunk has index 0.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitWrite(long chunkInd) throws InterruptedException;
+
+    /**
+     * Indicates that a chunk has been written
+     */
+    void written();
+
+    /**
+     * Indicates that no more chunks will be written
+     */
+    void done();
+
+    /**
+     * Wraps the given {@link ClassifierInputProvider.UpdateHandle} so that it follows the pace.
+     *
+     * @param updateHandle handle to wrap
+     * @return an {@link ClassifierInputProvider.UpdateHandle}
+     */
+    ClassifierInputProvider.UpdateHandle wrap(ClassifierInputProvider.UpdateHandle updateHandle);
+
+    /**
+     * Writes chunks at a fixed rate. Chunks are scheduled from the time of the first chunk so that the rate does not
+     * drift due to time spent outside of {@link #awaitWrite(long)}.
+     */
+    class FixedRate implements ReplayPace {
+
+        private final long nanosPerChunk;
+        private long startTime;
+
+        /**
+         * Constructor
+         *
+         * @param nanosPerChunk Time between chunks in nanoseconds
+         */
+        FixedRate(long nanosPerChunk) {
+            this.nanosPerChunk = nanosPerChunk;
+        }
+
+        @Override
+        public void awaitWrite(long chunkInd) throws InterruptedException {
+            if (chunkInd == 0) {
+                startTime = System.nanoTime();
+                return;
+            }
+            final long deadline = startTime + chunkInd * nanosPerChunk;
+            long remaining = deadline - System.nanoTime();
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted while waiting!");
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+
+        @Override
+        public void written() {
+            // Ignore
+        }
+
+        @Override
+        public void done() {
+            // Ignore
+        }
+
+        @Override
+        public ClassifierInputProvider.UpdateHandle wrap(ClassifierInputProvider.UpdateHandle updateHandle) {
+            return updateHandle;
+        }
+    }
+
+    /**
+     * Writes chunks in lockstep with updates of input: Each update asks for a new chunk and waits until it has been
+     * written. This means files are replayed as fast as input is consumed. Skipped updates also ask for a new chunk so
+     * that replay does not stall when input is not needed, e.g. because audio is silent.
+     */
+    class LockStep implements ReplayPace {
+
+        private final Semaphore requested = new Semaphore(0);
+        private final Semaphore written = new Semaphore(0);
+        private volatile boolean done = false;
+
+        @Override
+        public void awaitWrite(long chunkInd) throws InterruptedException {
+            requested.acquire();
+        }
+
+        @Override
+        public void written() {
+            written.release();
+        }
+
+        @Override
+        public void done() {
+            done = true;
+            // Release any waiting consumer. Consumer will not wait any more as done is set
+            written.release();
+        }
+
+        @Override
+        public ClassifierInputProvider.UpdateHandle wrap(ClassifierInputProvider.UpdateHandle updateHandle) {
+            return new ClassifierInputProvider.UpdateHandle() {
+                @Override
+                public void updateInput() {
+                    awaitChunk();
+                    updateHandle.updateInput();
+                }
+
+                @Override
+                public boolean skipUpdate() {
+                    return awaitChunk();
+                }
+            };
+        }
+
+        private boolean awaitChunk() {
+            if (done) {
+                return false;
+            }
+            requested.release();
+            written.acquireUninterruptibly();
+            return !done;
+        }
+    }
+}
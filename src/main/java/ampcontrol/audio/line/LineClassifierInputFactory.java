@@ -0,0 +1,155 @@
+package ampcontrol.audio.line;
+
+import ampcontrol.audio.*;
+import ampcontrol.audio.processing.ProcessingFactoryFromString;
+import ampcontrol.audio.processing.ProcessingResult;
+import com.beust.jcommander.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.*;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link ClassifierInputProviderFactory} which creates input from a given channel of a {@link TargetDataLine} from
+ * javax.sound.sampled. Unlike ASIO this works on any platform with a sound card supported by java.
+ * <br><br>
+ * A dedicated high priority thread reads from the line into a {@link RingAudioInputBuffer}. Capture latency is mainly
+ * determined by the size of the line buffer which is configurable.
+ *
+ * @author Christian Skärby
+ */
+public class LineClassifierInputFactory implements ClassifierInputProviderFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(LineClassifierInputFactory.class);
+
+    @Parameter(names = "-mixer", description = "Name of mixer to capture audio from. First mixer with a suitable " +
+            "input line is used if not set")
+    private String mixerName = "";
+
+    @Parameter(names = "-lineBufferMs", description = "Size of capture line buffer in milliseconds. Smaller buffer " +
+            "means lower latency but higher risk of dropouts")
+    private int lineBufferMs = 10;
+
+    private final AudioInputPar audioInputPar;
+    private final Supplier<List<Mixer>> mixers;
+
+    private final ClassifierInputProviderCache inputProviderCache = new ClassifierInputProviderCache();
+    private final Map<Integer, AudioInputBuffer> audioInputCache = new LinkedHashMap<>();
+    private RingAudioInputBuffer ringBuffer;
+
+    /**
+     * Constructor
+     *
+     * @param audioInputPar Which channel and sample rate to use
+     */
+    public LineClassifierInputFactory(AudioInputPar audioInputPar) {
+        this(audioInputPar, () -> Stream.of(AudioSystem.getMixerInfo())
+                .map(AudioSystem::getMixer)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param audioInputPar Which channel and sample rate to use
+     * @param mixers        Supplies the mixers to select from
+     */
+    LineClassifierInputFactory(AudioInputPar audioInputPar, Supplier<List<Mixer>> mixers) {
+        this.audioInputPar = audioInputPar;
+        this.mixers = mixers;
+    }
+
+    @Override
+    public ClassifierInputProvider createInputProvider(String inputDescriptionString) {
+        final AudioInputBuffer audioInput = createAudioBuffer(inputDescriptionString);
+
+        final ProcessingResult.Factory resultFactory = new ProcessingFactoryFromString(audioInputPar.getSampleRate())
+                .get(inputDescriptionString);
+
+        return inputProviderCache.get(audioInput, resultFactory);
+    }
+
+    @Override
+    public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("No input created!");
+        }
+
+        final int sampleRate = audioInputPar.getSampleRate();
+        final int channel = audioInputPar.getChannel();
+        final AudioFormat format = new AudioFormat(sampleRate, 16, channel + 1, true, false);
+        final DataLine.Info lineInfo = new DataLine.Info(TargetDataLine.class, format);
+        final int nrofFramesInLine = Math.max(2, sampleRate * lineBufferMs / 1000);
+
+        try {
+            final TargetDataLine line = (TargetDataLine) findMixer(lineInfo).getLine(lineInfo);
+            line.open(format, nrofFramesInLine * format.getFrameSize());
+            log.info("Opened line with format " + line.getFormat() + " and buffer size " + line.getBufferSize());
+
+            // No matter what, we must close the line when program ends!
+            setShutdownHook(line);
+            line.start();
+
+            // Read half a line buffer at the time so that there is room for new samples while the last are processed
+            final Thread reader = new Thread(
+                    new TargetDataLineReader(line, channel, nrofFramesInLine / 2, ringBuffer),
+                    "TargetDataLineReader");
+            reader.setPriority(Thread.MAX_PRIORITY);
+            reader.setDaemon(true);
+            reader.start();
+        } catch (LineUnavailableException e) {
+            throw new IllegalStateException("Could not open line!", e);
+        }
+
+        return inputProviderCache.getUpdateHandle();
+    }
+
+    private Mixer findMixer(Line.Info lineInfo) {
+        final List<Mixer> candidates = mixers.get();
+        candidates.forEach(mixer -> log.info("Found mixer with name: " + mixer.getMixerInfo().getName()));
+        return candidates.stream()
+                .filter(mixer -> mixer.getMixerInfo().getName().contains(mixerName))
+                .filter(mixer -> mixer.isLineSupported(lineInfo))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Could not find mixer with name " + mixerName +
+                        " which supports " + lineInfo + "!"));
+    }
+
+    private static void setShutdownHook(Line line) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Program ended, close line");
+            line.close();
+        }));
+    }
+
+    @Override
+    public Collection<AudioInputBuffer> getAudioInputs() {
+        return inputProviderCache.getAudioInputs();
+    }
+
+    @Override
+    public void addNewSamplesListener(NewSamplesListener listener) {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("No input created!");
+        }
+        ringBuffer.addListener(listener);
+    }
+
+    private AudioInputBuffer createAudioBuffer(String str) {
+        final int windowSizeMs = ClassifierInputProviderFactory.parseWindowSize(str);
+        final int nrofSamples = audioInputPar.getSampleRate() * windowSizeMs / 1000;
+        return audioInputCache.computeIfAbsent(nrofSamples, k -> {
+            if (ringBuffer == null) {
+                ringBuffer = new RingAudioInputBuffer(nrofSamples, 1);
+            }
+            return ringBuffer.view(nrofSamples);
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package ampcontrol.audio.line;
+
+import ampcontrol.audio.RingAudioInputBuffer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Reads samples of one channel from a {@link TargetDataLine} and writes them to a {@link RingAudioInputBuffer}. Runs
+ * until the line is closed. Intended to be run in a dedicated high priority thread so that the line buffer can be kept
+ * small.
+ * <br><br>
+ * Line is assumed to deliver 16 bit signed little endian PCM. Samples are written as is, i.e. in the same scale as the
+ * 16 bit wav files which models are trained on.
+ *
+ * @author Christian Skärby
+ */
+class TargetDataLineReader implements Runnable {
+
+    private final static int bytesPerSample = 2;
+
+    private final TargetDataLine line;
+    private final RingAudioInputBuffer buffer;
+    private final int channelOffset;
+    private final int frameSize;
+    private final byte[] bytes;
+    private final float[] samples;
+
+    /**
+     * Constructor
+     *
+     * @param line              Line to read from
+     * @param channel           Which channel to read
+     * @param nrofFramesPerRead How many frames to read at a time
+     * @param buffer            Buffer to write samples to
+     */
+    TargetDataLineReader(TargetDataLine line, int channel, int nrofFramesPerRead, RingAudioInputBuffer buffer) {
+        final AudioFormat format = line.getFormat();
+        if (format.getSampleSizeInBits() != 8 * bytesPerSample
+                || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+                || format.isBigEndian()) {
+            throw new IllegalArgumentException("Unsupported format: " + format + "!");
+        }
+        if (channel >= format.getChannels()) {
+            throw new IllegalArgumentException("Channel " + channel + " not available in format " + format + "!");
+        }
+        this.line = line;
+        this.buffer = buffer;
+        this.frameSize = format.getFrameSize();
+        this.channelOffset = channel * bytesPerSample;
+        this.bytes = new byte[nrofFramesPerRead * frameSize];
+        this.samples = new float[nrofFramesPerRead];
+    }
+
+    @Override
+    public void run() {
+        while (line.isOpen()) {
+            readNext();
+        }
+    }
+
+    /**
+     * Reads the next chunk of samples from the line. Blocks until the chunk has been read or the line is stopped or
+     * closed.
+     */
+    void readNext() {
+        final int nrofFrames = line.read(bytes, 0, bytes.length) / frameSize;
+        for (int frame = 0; frame < nrofFrames; frame++) {
+            final int offset = frame * frameSize + channelOffset;
+            samples[frame] = (short) ((bytes[offset] & 0xFF) | (bytes[offset + 1] << 8));
+        }
+        if (nrofFrames > 0) {
+            buffer.write(samples, nrofFrames);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ampcontrol.audio.processing;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Base class for {@link BatchProcessing} which does not change the shape of the input. Subclasses process all
+ * channels of all examples at once as a matrix with one channel per row.
+ *
+ * @author Christian Skärby
+ */
+abstract class BatchChannelProcessing implements BatchProcessing {
+
+    protected final FlatProcessing.Shape shape;
+
+    BatchChannelProcessing(FlatProcessing.Shape shape) {
+        this.shape = shape;
+    }
+
+    @Override
+    public FlatProcessing.Shape getOutputShape() {
+        return shape;
+    }
+
+    @Override
+    public INDArray process(INDArray input) {
+        final int batchSize = input.rows();
+        final INDArray channels = input.reshape('c', batchSize * shape.getNrofChannels(), shape.getChannelSize());
+        return processChannels(channels).reshape('c', batchSize, shape.getSize());
+    }
+
+    /**
+     * Processes channels of input
+     *
+     * @param channels input with one channel per row. Shall not be modified.
+     * @return output with one channel per row
+     */
+    abstract INDArray processChannels(INDArray channels);
+
+    /**
+     * Returns the given per channel reduction as a column vector
+     *
+     * @param reduction result of a reduction along dimension 1 of the channels
+     * @return the reduction as a column vector
+     */
+    static INDArray column(INDArray reduction) {
+        return reduction.reshape(reduction.length(), 1);
+    }
+}
@@ -0,0 +1,34 @@
+package ampcontrol.audio.processing;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Processing compiled for a fixed input {@link FlatProcessing.Shape} which processes a whole batch of inputs in one
+ * go. Intended for training where a minibatch of raw audio windows can be processed using vectorized ND4J operations
+ * instead of one example at the time in Java loops.
+ * <br><br>
+ * Input and output are matrices with one example per row. Each row is laid out as the flat arrays of
+ * {@link FlatProcessing}, so an output of shape [batchSize, outputShape.getSize()] in 'c' order can be reshaped to
+ * [batchSize, nrofChannels, nrofRows, nrofCols] without copying.
+ * <br><br>
+ * Input is never modified. Instances are not thread safe.
+ *
+ * @author Christian Skärby
+ */
+public interface BatchProcessing {
+
+    /**
+     * Returns the shape of the output of each example
+     *
+     * @return the shape of the output of each example
+     */
+    FlatProcessing.Shape getOutputShape();
+
+    /**
+     * Processes a batch of input
+     *
+     * @param input input with one example per row
+     * @return output with one example per row
+     */
+    INDArray process(INDArray input);
+}
@@ -0,0 +1,46 @@
+package ampcontrol.audio.processing;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Adapts a {@link FlatProcessing} to {@link BatchProcessing} by processing one example at the time. Used for
+ * processing which has no vectorized counterpart in ND4J, e.g. FFTs.
+ *
+ * @author Christian Skärby
+ */
+class BatchProcessingAdapter implements BatchProcessing {
+
+    private final FlatProcessing flat;
+    private final double[] output;
+
+    BatchProcessingAdapter(FlatProcessing flat) {
+        this.flat = flat;
+        this.output = new double[flat.getOutputShape().getSize()];
+    }
+
+    /**
+     * Returns the adapted {@link FlatProcessing}
+     *
+     * @return the adapted {@link FlatProcessing}
+     */
+    FlatProcessing getFlatProcessing() {
+        return flat;
+    }
+
+    @Override
+    public FlatProcessing.Shape getOutputShape() {
+        return flat.getOutputShape();
+    }
+
+    @Override
+    public INDArray process(INDArray input) {
+        final int batchSize = input.rows();
+        final INDArray result = Nd4j.createUninitialized(new int[]{batchSize, output.length}, 'c');
+        for (int i = 0; i < batchSize; i++) {
+            flat.process(input.getRow(i).toDoubleVector(), output);
+            result.putRow(i, Nd4j.create(output));
+        }
+        return result;
+    }
+}
@@ -1,11 +1,15 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * {@link ProcessingResult.Factory} which buffers input.
+ * {@link ProcessingResult.Factory} which buffers input so that it is only computed once even if the result is streamed
+ * several times, e.g. by both paths of a {@link Fork}. Buffered arrays are not copied but shared between all consumers
+ * as results are read-only.
  *
  * @author Christian Skärby
  */
@@ -25,6 +29,37 @@ public class Buffer implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    /**
+     * Flat input is never modified so there is nothing to buffer.
+     */
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                System.arraycopy(input, inputOffset, output, outputOffset, shape.getChannelSize());
+            }
+        };
+    }
+
+    /**
+     * Batch input is never modified so there is nothing to buffer.
+     */
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return inputShape;
+            }
+
+            @Override
+            public INDArray process(INDArray input) {
+                return input;
+            }
+        };
+    }
+
     private final static class Result implements ProcessingResult {
 
         private final ProcessingResult input;
@@ -36,22 +71,14 @@ public class Buffer implements ProcessingResult.Factory {
 
         @Override
         public Stream<double[][]> stream() {
-            if(bufferedInput == null) {
-                bufferedInput = input.stream()
-                        .map(Result::deepCopy)
-                        .collect(Collectors.toList());
-            }
-            return bufferedInput.stream()
-                    .map(Result::deepCopy);
-
+            return getBufferedInput().stream();
         }
 
-        private static double[][] deepCopy(double[][] array) {
-            double[][] copy = new double[array.length][array[0].length];
-            for(int i = 0; i < array.length; i++) {
-                System.arraycopy(array[i], 0, copy[i], 0, array[i].length);
+        private synchronized List<double[][]> getBufferedInput() {
+            if(bufferedInput == null) {
+                bufferedInput = input.stream().collect(Collectors.toList());
             }
-            return copy;
+            return bufferedInput;
         }
     }
 }
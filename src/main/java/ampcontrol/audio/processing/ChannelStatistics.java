@@ -0,0 +1,58 @@
+package ampcontrol.audio.processing;
+
+/**
+ * Reusable min, max and average of one channel of flat input. Same compensated summation as
+ * {@link java.util.DoubleSummaryStatistics} but can be reset so that no memory is allocated.
+ *
+ * @author Christian Skärby
+ */
+final class ChannelStatistics {
+
+    private double min;
+    private double max;
+    private double average;
+
+    /**
+     * Computes statistics for the given range.
+     *
+     * @param input  input array
+     * @param offset index of first element
+     * @param length number of elements
+     * @return this instance
+     */
+    ChannelStatistics compute(double[] input, int offset, int length) {
+        double sum = 0;
+        double sumCompensation = 0;
+        double simpleSum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + length; i++) {
+            final double value = input[i];
+            simpleSum += value;
+            final double tmp = value - sumCompensation;
+            final double velvel = sum + tmp;
+            sumCompensation = (velvel - sum) - tmp;
+            sum = velvel;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double total = sum + sumCompensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) {
+            total = simpleSum;
+        }
+        average = length > 0 ? total / length : 0;
+        return this;
+    }
+
+    double getMin() {
+        return min;
+    }
+
+    double getMax() {
+        return max;
+    }
+
+    double getAverage() {
+        return average;
+    }
+}
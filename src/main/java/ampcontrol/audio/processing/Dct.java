@@ -2,15 +2,19 @@ package ampcontrol.audio.processing;
 
 import org.jtransforms.dct.DoubleDCT_1D;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
- * Does discrete cosine transform of input
+ * Does discrete cosine transform of input. DCT plans are not shared between threads.
  *
  * @author Christian Skärby
  */
 public class Dct implements ProcessingResult.Factory {
 
+    private final ThreadLocal<Map<Integer, DoubleDCT_1D>> dctPlans = ThreadLocal.withInitial(HashMap::new);
+
     @Override
     public String name() {
         return nameStatic();
@@ -25,7 +29,23 @@ public class Dct implements ProcessingResult.Factory {
         return new Result(input);
     }
 
-    private final static class Result implements ProcessingResult {
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        // Compiled instances are not thread safe so they may just as well have their own plan
+        final DoubleDCT_1D dct1d = new DoubleDCT_1D(inputShape.getNrofCols());
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                final int nrofCols = shape.getNrofCols();
+                System.arraycopy(input, inputOffset, output, outputOffset, shape.getChannelSize());
+                for (int row = 0; row < shape.getNrofRows(); row++) {
+                    dct1d.forward(output, outputOffset + row * nrofCols, false);
+                }
+            }
+        };
+    }
+
+    private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
 
@@ -36,13 +56,11 @@ public class Dct implements ProcessingResult.Factory {
         @Override
         public Stream<double[][]> stream() {
             return input.stream().map(inputArr -> {
-                final int nrofFrames = inputArr.length;
                 final int nrofSamplesPerBin = inputArr[0].length;
-                final double[][] dct = new double[nrofFrames][nrofSamplesPerBin];
-                // Could be cached or initialized in the factory but it does not seem to be worth it.
-                final DoubleDCT_1D dct1d = new DoubleDCT_1D(nrofSamplesPerBin);
+                final double[][] dct = ProcessingResult.writableCopy(inputArr);
+                // Plan of the thread which consumes the stream, not the one which created the result
+                final DoubleDCT_1D dct1d = dctPlans.get().computeIfAbsent(nrofSamplesPerBin, DoubleDCT_1D::new);
                 for (int i = 0; i < dct.length; i++) {
-                    dct[i] = inputArr[i].clone();
                     dct1d.forward(dct[i], false);
                 }
                 return dct;
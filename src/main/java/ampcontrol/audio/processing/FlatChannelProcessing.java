@@ -0,0 +1,39 @@
+package ampcontrol.audio.processing;
+
+/**
+ * Base class for {@link FlatProcessing} which processes one channel at the time and does not change the shape of the
+ * input.
+ *
+ * @author Christian Skärby
+ */
+abstract class FlatChannelProcessing implements FlatProcessing {
+
+    protected final Shape shape;
+
+    FlatChannelProcessing(Shape shape) {
+        this.shape = shape;
+    }
+
+    @Override
+    public Shape getOutputShape() {
+        return shape;
+    }
+
+    @Override
+    public void process(double[] input, long position, double[] output, int offset) {
+        final int channelSize = shape.getChannelSize();
+        for (int channel = 0; channel < shape.getNrofChannels(); channel++) {
+            processChannel(input, channel * channelSize, output, offset + channel * channelSize);
+        }
+    }
+
+    /**
+     * Processes one channel of input
+     *
+     * @param input        input array
+     * @param inputOffset  index of first element of the channel in input
+     * @param output       output array
+     * @param outputOffset index of first element of the channel in output
+     */
+    abstract void processChannel(double[] input, int inputOffset, double[] output, int outputOffset);
+}
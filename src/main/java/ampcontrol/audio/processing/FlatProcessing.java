@@ -0,0 +1,117 @@
+package ampcontrol.audio.processing;
+
+/**
+ * Processing compiled for a fixed input {@link Shape}. Reads from and writes to flat arrays so that all buffers can
+ * be allocated once and reused. Intended for real time use where the same processing is applied over and over again to
+ * input of the same size.
+ * <br><br>
+ * Flat arrays are laid out as channels of rows, i.e. element (channel, row, col) is at index
+ * (channel * nrofRows + row) * nrofCols + col. Channels correspond to the elements of
+ * {@link ProcessingResult#stream()} and rows and cols to the first and second dimension of each element.
+ * <br><br>
+ * Input is never modified. Instances hold scratch buffers and are not thread safe. Compile one instance per thread if
+ * needed.
+ *
+ * @author Christian Skärby
+ */
+public interface FlatProcessing {
+
+    /**
+     * Shape of flat input or output.
+     */
+    final class Shape {
+
+        private final int nrofChannels;
+        private final int nrofRows;
+        private final int nrofCols;
+
+        public Shape(int nrofChannels, int nrofRows, int nrofCols) {
+            if (nrofChannels <= 0 || nrofRows <= 0 || nrofCols <= 0) {
+                throw new IllegalArgumentException("All dimensions must be > 0! Got " + nrofChannels + ", "
+                        + nrofRows + ", " + nrofCols);
+            }
+            this.nrofChannels = nrofChannels;
+            this.nrofRows = nrofRows;
+            this.nrofCols = nrofCols;
+        }
+
+        public int getNrofChannels() {
+            return nrofChannels;
+        }
+
+        public int getNrofRows() {
+            return nrofRows;
+        }
+
+        public int getNrofCols() {
+            return nrofCols;
+        }
+
+        /**
+         * Returns the number of elements in one channel
+         *
+         * @return the number of elements in one channel
+         */
+        public int getChannelSize() {
+            return nrofRows * nrofCols;
+        }
+
+        /**
+         * Returns the total number of elements
+         *
+         * @return the total number of elements
+         */
+        public int getSize() {
+            return nrofChannels * getChannelSize();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Shape shape = (Shape) o;
+            return nrofChannels == shape.nrofChannels && nrofRows == shape.nrofRows && nrofCols == shape.nrofCols;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * nrofChannels + nrofRows) * 31 + nrofCols;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + nrofChannels + ", " + nrofRows + ", " + nrofCols + "]";
+        }
+    }
+
+    /**
+     * Returns the shape of the output
+     *
+     * @return the shape of the output
+     */
+    Shape getOutputShape();
+
+    /**
+     * Processes the given input.
+     *
+     * @param input    input of the shape this instance was compiled for
+     * @param position position of the input in a stream of audio (see {@link PositionedInput}) or -1 if not known
+     * @param output   array to write output to
+     * @param offset   index in output to start writing at
+     */
+    void process(double[] input, long position, double[] output, int offset);
+
+    /**
+     * Processes the given input of unknown position.
+     *
+     * @param input  input of the shape this instance was compiled for
+     * @param output array to write output to. Must be at least as large as the output shape
+     */
+    default void process(double[] input, double[] output) {
+        process(input, -1, output, 0);
+    }
+}
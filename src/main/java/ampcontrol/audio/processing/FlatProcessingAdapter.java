@@ -0,0 +1,72 @@
+package ampcontrol.audio.processing;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Adapts a {@link ProcessingResult.Factory} which does not support {@link FlatProcessing} by copying input to and
+ * output from {@link ProcessingResult ProcessingResults}. Not allocation free.
+ *
+ * @author Christian Skärby
+ */
+class FlatProcessingAdapter implements FlatProcessing {
+
+    private final ProcessingResult.Factory factory;
+    private final Shape inputShape;
+    private final Shape outputShape;
+
+    FlatProcessingAdapter(ProcessingResult.Factory factory, Shape inputShape) {
+        this.factory = factory;
+        this.inputShape = inputShape;
+        final List<double[][]> dryRun = factory.create(toResult(new double[inputShape.getSize()], -1)).stream()
+                .collect(Collectors.toList());
+        if (dryRun.isEmpty()) {
+            throw new IllegalArgumentException("No output from " + factory.name() + "!");
+        }
+        this.outputShape = new Shape(dryRun.size(), dryRun.get(0).length, dryRun.get(0)[0].length);
+    }
+
+    @Override
+    public Shape getOutputShape() {
+        return outputShape;
+    }
+
+    @Override
+    public void process(double[] input, long position, double[] output, int offset) {
+        int outInd = offset;
+        final Iterator<double[][]> resultIter = factory.create(toResult(input, position)).stream().iterator();
+        for (int channel = 0; channel < outputShape.getNrofChannels(); channel++) {
+            final double[][] result = resultIter.next();
+            if (result.length != outputShape.getNrofRows()) {
+                throw new IllegalStateException("Incorrect number of rows from " + factory.name() + "! Expected "
+                        + outputShape.getNrofRows() + ", got " + result.length);
+            }
+            for (double[] row : result) {
+                if (row.length != outputShape.getNrofCols()) {
+                    throw new IllegalStateException("Incorrect number of cols from " + factory.name() + "! Expected "
+                            + outputShape.getNrofCols() + ", got " + row.length);
+                }
+                System.arraycopy(row, 0, output, outInd, row.length);
+                outInd += row.length;
+            }
+        }
+    }
+
+    private ProcessingResult toResult(double[] input, long position) {
+        if (position >= 0 && inputShape.getNrofChannels() == 1 && inputShape.getNrofRows() == 1) {
+            return new PositionedInput(input.clone(), position);
+        }
+        final double[][][] channels = new double[inputShape.getNrofChannels()][inputShape.getNrofRows()][];
+        int inInd = 0;
+        for (double[][] channel : channels) {
+            for (int row = 0; row < channel.length; row++) {
+                channel[row] = new double[inputShape.getNrofCols()];
+                System.arraycopy(input, inInd, channel[row], 0, inputShape.getNrofCols());
+                inInd += inputShape.getNrofCols();
+            }
+        }
+        return () -> Stream.of(channels);
+    }
+}
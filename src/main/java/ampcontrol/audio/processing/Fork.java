@@ -1,6 +1,8 @@
 package ampcontrol.audio.processing;
 
 import ampcontrol.audio.processing.ProcessingResult.Factory;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.stream.Stream;
 
@@ -34,6 +36,75 @@ public class Fork implements ProcessingResult.Factory {
         return new Result(path1.create(bufferedInput), path2.create(bufferedInput));
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        // No need to buffer as flat input is never modified
+        final FlatProcessing flat1 = path1.compile(inputShape);
+        final FlatProcessing flat2 = path2.compile(inputShape);
+        final FlatProcessing.Shape shape1 = flat1.getOutputShape();
+        final FlatProcessing.Shape shape2 = flat2.getOutputShape();
+        if (shape1.getNrofRows() != shape2.getNrofRows() || shape1.getNrofCols() != shape2.getNrofCols()) {
+            throw new IllegalArgumentException("Paths of " + name() + " have different output shapes: " + shape1
+                    + " vs " + shape2 + "!");
+        }
+        final FlatProcessing.Shape outputShape = new FlatProcessing.Shape(
+                shape1.getNrofChannels() + shape2.getNrofChannels(),
+                shape1.getNrofRows(),
+                shape1.getNrofCols());
+        return new FlatProcessing() {
+            @Override
+            public Shape getOutputShape() {
+                return outputShape;
+            }
+
+            @Override
+            public void process(double[] input, long position, double[] output, int offset) {
+                flat1.process(input, position, output, offset);
+                flat2.process(input, position, output, offset + shape1.getSize());
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        final BatchProcessing batch1 = path1.compileBatch(inputShape);
+        final BatchProcessing batch2 = path2.compileBatch(inputShape);
+        if (batch1 instanceof BatchProcessingAdapter && batch2 instanceof BatchProcessingAdapter) {
+            // Nothing to gain from converting between batch and examples twice
+            return new BatchProcessingAdapter(compile(inputShape));
+        }
+        final FlatProcessing.Shape shape1 = batch1.getOutputShape();
+        final FlatProcessing.Shape shape2 = batch2.getOutputShape();
+        if (shape1.getNrofRows() != shape2.getNrofRows() || shape1.getNrofCols() != shape2.getNrofCols()) {
+            throw new IllegalArgumentException("Paths of " + name() + " have different output shapes: " + shape1
+                    + " vs " + shape2 + "!");
+        }
+        final FlatProcessing.Shape outputShape = new FlatProcessing.Shape(
+                shape1.getNrofChannels() + shape2.getNrofChannels(),
+                shape1.getNrofRows(),
+                shape1.getNrofCols());
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return outputShape;
+            }
+
+            @Override
+            public INDArray process(INDArray input) {
+                // Channels of path 2 come after channels of path 1 in each row
+                return Nd4j.hstack(batch1.process(input), batch2.process(input));
+            }
+        };
+    }
+
+    Factory getPath1() {
+        return path1;
+    }
+
+    Factory getPath2() {
+        return path2;
+    }
+
     private final static class Result implements ProcessingResult {
 
         private final ProcessingResult result1;
@@ -1,5 +1,8 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
 import java.util.stream.Stream;
 
 /**
@@ -26,6 +29,30 @@ public class Log10 implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                for (int i = 0; i < shape.getChannelSize(); i++) {
+                    final double value = input[inputOffset + i];
+                    // Avoid NaN/-inf
+                    output[outputOffset + i] = value < minValid ? Math.log10(minValid) : Math.log10(value);
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchChannelProcessing(inputShape) {
+            @Override
+            INDArray processChannels(INDArray channels) {
+                return Transforms.log(Transforms.max(channels, minValid, true), false).divi(Math.log(10));
+            }
+        };
+    }
+
     private final static class Result implements ProcessingResult {
 
         private final ProcessingResult input;
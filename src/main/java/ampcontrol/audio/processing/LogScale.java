@@ -26,6 +26,23 @@ public class LogScale implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final ChannelStatistics stats = new ChannelStatistics();
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                stats.compute(input, inputOffset, shape.getChannelSize());
+                final double min = stats.getMin() != 0 ? stats.getMin() : 0.00000000001F;
+                final double diff = Math.log10(stats.getMax() / min); // perceptual difference
+                for (int i = 0; i < shape.getChannelSize(); i++) {
+                    final double value = input[inputOffset + i];
+                    output[outputOffset + i] = value < min ? 0 : Math.log10(value / min) / diff;
+                }
+            }
+        };
+    }
+
     private final static class Result implements ProcessingResult {
 
         private final ProcessingResult input;
@@ -1,5 +1,8 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
 import java.util.Arrays;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,6 +44,42 @@ public class MaskBins implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                System.arraycopy(input, inputOffset, output, outputOffset, shape.getChannelSize());
+                for (int row = 0; row < shape.getNrofRows(); row++) {
+                    for (int j : binsToMask) {
+                        output[outputOffset + row * shape.getNrofCols() + j] = 0;
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        final INDArray mask = Nd4j.ones(1, inputShape.getSize());
+        for (int row = 0; row < inputShape.getNrofChannels() * inputShape.getNrofRows(); row++) {
+            for (int j : binsToMask) {
+                mask.putScalar(row * inputShape.getNrofCols() + j, 0);
+            }
+        }
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return inputShape;
+            }
+
+            @Override
+            public INDArray process(INDArray input) {
+                return input.mulRowVector(mask);
+            }
+        };
+    }
+
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
@@ -52,7 +91,7 @@ public class MaskBins implements ProcessingResult.Factory {
         @Override
         public Stream<double[][]> stream() {
             return input.stream().map(inputArr -> {
-                double[][] result = inputArr.clone();
+                final double[][] result = ProcessingResult.writableCopy(inputArr);
                 for (int i = 0; i < result.length; i++) {
                     for (int j : binsToMask) {
                         result[i][j] = 0;
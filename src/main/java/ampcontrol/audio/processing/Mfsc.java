@@ -8,10 +8,16 @@ package ampcontrol.audio.processing;
   Blog : http://ganeshtiwaridotcomdotnp.blogspot.com/
  */
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Arrays;
 import java.util.stream.Stream;
 
 /**
- * Mel-Frequency Spectrum Coefficients.
+ * Mel-Frequency Spectrum Coefficients. The mel filter bank is computed once per frame size and applied as a sparse
+ * matrix-vector product.
  *
  * @author Ganesh Tiwari
  * @author Hanns Holger Rutz
@@ -22,6 +28,7 @@ public class Mfsc implements ProcessingResult.Factory {
 
     private final double sampleRate;
     private final double upperFilterFreq;
+    private volatile MelFilterBank filterBank;
 
 
     public Mfsc(double sampleRate) {
@@ -56,7 +63,7 @@ public class Mfsc implements ProcessingResult.Factory {
             return input.stream().map(inputArr -> {
                 final int nrofFrames = inputArr.length;
                 final int nrofSamplesPerFrame = inputArr[0].length;
-                final double[][] mfcc = new double[nrofFrames][nrofSamplesPerFrame];
+                final double[][] mfcc = new double[nrofFrames][];
                 final int numMelFilters = nrofSamplesPerFrame;
                 final int samplesPerFrame = nrofSamplesPerFrame;
                 for (int i = 0; i < nrofFrames; i++) {
@@ -67,93 +74,164 @@ public class Mfsc implements ProcessingResult.Factory {
         }
     }
 
-    private double[] process(double[] bin, int numMelFilters, int samplesPerFrame) {
-        /*
-         * cBin=frequencies of the channels in terms of FFT bin indices (cBin[i]
-         * for the i -th channel)
-         */
-
-        // prepare filter for for melFilter
-        final int cBin[] = fftBinIndices(numMelFilters, samplesPerFrame);// same for all
-        // process Mel filter bank
-        final double fBank[] = melFilter(bin, cBin, numMelFilters);
-        // magnitudeSpectrum and bin filter indices
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final int nrofCols = inputShape.getNrofCols();
+        final MelFilterBank bank = getFilterBank(nrofCols, nrofCols);
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                for (int row = 0; row < shape.getNrofRows(); row++) {
+                    bank.apply(input, inputOffset + row * nrofCols, output, outputOffset + row * nrofCols);
+                }
+            }
+        };
+    }
 
-        // System.out.println("after mel filter");
-        // ArrayWriter.printDoubleArrayToConsole(fBank);
+    /**
+     * Applies the filter bank to all frames of all channels as one dense matrix product.
+     */
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        final int nrofCols = inputShape.getNrofCols();
+        final INDArray bank = getFilterBank(nrofCols, nrofCols).toMatrix();
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return inputShape;
+            }
 
-        // Non-linear transformation
-        final double f[] = nonLinearTransformation(fBank);
-        // System.out.println("after N L T");
-        // ArrayWriter.printDoubleArrayToConsole(f);
+            @Override
+            public INDArray process(INDArray input) {
+                final INDArray frames = input.reshape('c', input.length() / nrofCols, nrofCols);
+                final INDArray filtered = Transforms.log(frames.mmul(bank), false);
+                return Transforms.max(filtered, -50, false).reshape('c', input.rows(), inputShape.getSize());
+            }
+        };
+    }
 
-        // Cepstral coefficients, by DCT
-        // System.out.println("after DCT");
-        // ArrayWriter.printDoubleArrayToConsole(cepc);
-        //return perform(f);
+    private double[] process(double[] bin, int numMelFilters, int samplesPerFrame) {
+        final double[] f = new double[numMelFilters];
+        // process Mel filter bank followed by non-linear transformation
+        getFilterBank(numMelFilters, samplesPerFrame).apply(bin, 0, f, 0);
         return f;
     }
 
-    private int[] fftBinIndices(int numMelFilters, int samplesPerFrame) {
-        final int cBin[] = new int[numMelFilters + 2];
-        cBin[0] = (int) Math.round(lowerFilterFreq / sampleRate * samplesPerFrame);// cBin0
-        cBin[cBin.length - 1] = (samplesPerFrame / 2);// cBin24
-        for (int i = 1; i <= numMelFilters; i++) {// from cBin1 to cBin23
-            final double fc = centerFreq(i, numMelFilters);// center freq for i th filter
-            cBin[i] = (int) Math.round(fc / sampleRate * samplesPerFrame);
+    private MelFilterBank getFilterBank(int numMelFilters, int samplesPerFrame) {
+        MelFilterBank bank = filterBank;
+        if (bank == null || bank.numMelFilters != numMelFilters || bank.samplesPerFrame != samplesPerFrame) {
+            // Benign race: Worst case is that a few threads compute the same filter bank
+            bank = new MelFilterBank(numMelFilters, samplesPerFrame);
+            filterBank = bank;
         }
-        return cBin;
+        return bank;
     }
 
     /**
-     * Performs mel filter operation
-     *
-     * @param bin  magnitude spectrum (| |) of fft
-     * @param cBin mel filter coefficients
-     * @return mel filtered coefficients --> filter bank coefficients.
+     * Mel filter bank stored as a sparse matrix in CSR format. Each filter is split in a rising and a falling part
+     * which are summed separately (same as the original implementation) so that output is identical to applying the
+     * triangles one by one.
      */
-    private double[] melFilter(double bin[], int cBin[], int numMelFilters) {
-        final double temp[] = new double[numMelFilters + 2];
-        for (int k = 1; k <= numMelFilters; k++) {
-            double num1 = 0.0;
-            double num2 = 0.0;
-            for (int i = cBin[k - 1]; i <= cBin[k]; i++) {
-                num1 += ((i - cBin[k - 1] + 1) / (cBin[k] - cBin[k - 1] + 1)) * bin[i];
+    private final class MelFilterBank {
+
+        private final int numMelFilters;
+        private final int samplesPerFrame;
+        private final int[] rowPtr; // Rising part of filter k is rowPtr[2k]..rowPtr[2k+1], falling part ends at rowPtr[2k+2]
+        private final int[] colInd;
+        private final double[] weights;
+
+        private MelFilterBank(int numMelFilters, int samplesPerFrame) {
+            this.numMelFilters = numMelFilters;
+            this.samplesPerFrame = samplesPerFrame;
+            final int cBin[] = fftBinIndices(numMelFilters, samplesPerFrame);
+            int nnz = 0;
+            for (int k = 1; k <= numMelFilters; k++) {
+                nnz += Math.max(0, cBin[k + 1] - cBin[k - 1] + 1);
             }
 
-            for (int i = cBin[k] + 1; i <= cBin[k + 1]; i++) {
-                num2 += (1 - ((i - cBin[k]) / (cBin[k + 1] - cBin[k] + 1))) * bin[i];
+            final int[] cols = new int[nnz];
+            final double[] vals = new double[nnz];
+            rowPtr = new int[2 * numMelFilters + 1];
+            int cnt = 0;
+            for (int k = 1; k <= numMelFilters; k++) {
+                for (int i = cBin[k - 1]; i <= cBin[k]; i++) {
+                    final double weight = ((i - cBin[k - 1] + 1) / (cBin[k] - cBin[k - 1] + 1));
+                    if (weight != 0) {
+                        cols[cnt] = i;
+                        vals[cnt++] = weight;
+                    }
+                }
+                rowPtr[2 * k - 1] = cnt;
+
+                for (int i = cBin[k] + 1; i <= cBin[k + 1]; i++) {
+                    final double weight = (1 - ((i - cBin[k]) / (cBin[k + 1] - cBin[k] + 1)));
+                    if (weight != 0) {
+                        cols[cnt] = i;
+                        vals[cnt++] = weight;
+                    }
+                }
+                rowPtr[2 * k] = cnt;
             }
+            colInd = Arrays.copyOf(cols, cnt);
+            weights = Arrays.copyOf(vals, cnt);
+        }
 
-            temp[k] = num1 + num2;
+        /**
+         * Returns the filter bank as a dense matrix with one filter per column
+         *
+         * @return the filter bank as a dense matrix
+         */
+        private INDArray toMatrix() {
+            final INDArray matrix = Nd4j.zeros(samplesPerFrame, numMelFilters);
+            for (int k = 0; k < numMelFilters; k++) {
+                for (int j = rowPtr[2 * k]; j < rowPtr[2 * k + 2]; j++) {
+                    matrix.putScalar(colInd[j], k, matrix.getDouble(colInd[j], k) + weights[j]);
+                }
+            }
+            return matrix;
         }
-        final double fBank[] = new double[numMelFilters];
-        System.arraycopy(temp, 1, fBank, 0, numMelFilters);
-        return fBank;
-    }
 
-    /**
-     * performs nonlinear transformation
-     *
-     * @param fBank filter bank coefficients
-     * @return f log of filter bac
-     */
-    private double[] nonLinearTransformation(double fBank[]) {
-        double f[] = new double[fBank.length];
-        final double FLOOR = -50;
-        for (int i = 0; i < fBank.length; i++) {
-            f[i] = Math.log(fBank[i]);
-            // check if ln() returns a value less than the floor
-            if (f[i] < FLOOR) {
-                f[i] = FLOOR;
+        /**
+         * Applies the filter bank followed by the non-linear transformation to the given magnitude spectrum
+         *
+         * @param bin       magnitude spectrum (| |) of fft
+         * @param binOffset index of first element of the magnitude spectrum in bin
+         * @param f         log of filter bank coefficients
+         * @param fOffset   index to put first coefficient at in f
+         */
+        private void apply(double[] bin, int binOffset, double[] f, int fOffset) {
+            final double FLOOR = -50;
+            for (int k = 0; k < numMelFilters; k++) {
+                double num1 = 0.0;
+                final int mid = rowPtr[2 * k + 1];
+                for (int j = rowPtr[2 * k]; j < mid; j++) {
+                    num1 += weights[j] * bin[binOffset + colInd[j]];
+                }
+                double num2 = 0.0;
+                final int end = rowPtr[2 * k + 2];
+                for (int j = mid; j < end; j++) {
+                    num2 += weights[j] * bin[binOffset + colInd[j]];
+                }
+                // check if ln() returns a value less than the floor
+                f[fOffset + k] = Math.max(Math.log(num1 + num2), FLOOR);
             }
         }
-        return f;
     }
 
-    private double centerFreq(int i, int numMelFilters) {
+    private int[] fftBinIndices(int numMelFilters, int samplesPerFrame) {
+        final int cBin[] = new int[numMelFilters + 2];
+        cBin[0] = (int) Math.round(lowerFilterFreq / sampleRate * samplesPerFrame);// cBin0
+        cBin[cBin.length - 1] = (samplesPerFrame / 2);// cBin24
         final double melFLow = freqToMel(lowerFilterFreq);
         final double melFHigh = freqToMel(upperFilterFreq);
+        for (int i = 1; i <= numMelFilters; i++) {// from cBin1 to cBin23
+            final double fc = centerFreq(i, numMelFilters, melFLow, melFHigh);// center freq for i th filter
+            cBin[i] = (int) Math.round(fc / sampleRate * samplesPerFrame);
+        }
+        return cBin;
+    }
+
+    private double centerFreq(int i, int numMelFilters, double melFLow, double melFHigh) {
         final double temp = melFLow + ((melFHigh - melFLow) / (numMelFilters + 1)) * i;
         return inverseMel(temp);
     }
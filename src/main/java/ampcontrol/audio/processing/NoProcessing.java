@@ -1,5 +1,6 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
 /**
  * No postprocessing. Output = input.
  *
@@ -13,6 +14,34 @@ public class NoProcessing implements ProcessingResult.Factory {
         return input;
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                System.arraycopy(input, inputOffset, output, outputOffset, shape.getChannelSize());
+            }
+        };
+    }
+
+    /**
+     * Input is never modified so it is passed on as is.
+     */
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return inputShape;
+            }
+
+            @Override
+            public INDArray process(INDArray input) {
+                return input;
+            }
+        };
+    }
+
     @Override
     public String name() {
         return nameStatic();
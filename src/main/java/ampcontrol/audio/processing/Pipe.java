@@ -1,6 +1,11 @@
 package ampcontrol.audio.processing;
 
 import ampcontrol.audio.processing.ProcessingResult.Factory;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Connects two {@link Factory} so that output from the first is input to the second
@@ -22,6 +27,125 @@ public class Pipe implements Factory {
         return second.create(first.create(input));
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final FlatProcessing firstFlat = first.compile(inputShape);
+        final FlatProcessing secondFlat = second.compile(firstFlat.getOutputShape());
+        return new Chain(Arrays.asList(firstFlat, secondFlat));
+    }
+
+    /**
+     * Compiles the whole chain of (possibly nested) {@link Pipe Pipes} at once so that consecutive stages which are
+     * not vectorized are processed together one example at the time instead of converting between batch and examples
+     * between each one of them.
+     */
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        final List<Factory> factories = new ArrayList<>();
+        addStages(this, factories);
+
+        final List<BatchProcessing> stages = new ArrayList<>();
+        final List<FlatProcessing> perExample = new ArrayList<>();
+        FlatProcessing.Shape shape = inputShape;
+        for (Factory factory : factories) {
+            final BatchProcessing stage = factory.compileBatch(shape);
+            if (stage instanceof BatchProcessingAdapter) {
+                perExample.add(((BatchProcessingAdapter) stage).getFlatProcessing());
+            } else {
+                addPerExample(perExample, stages);
+                stages.add(stage);
+            }
+            shape = stage.getOutputShape();
+        }
+        addPerExample(perExample, stages);
+        return stages.size() == 1 ? stages.get(0) : new BatchChain(stages);
+    }
+
+    /**
+     * Adds the stages of the given factory to the given list. A {@link Pipe} adds the stages of its first and second
+     * factory, any other factory adds itself.
+     *
+     * @param factory factory to add stages from
+     * @param stages  list to add stages to
+     */
+    static void addStages(Factory factory, List<Factory> stages) {
+        if (factory instanceof Pipe) {
+            addStages(((Pipe) factory).first, stages);
+            addStages(((Pipe) factory).second, stages);
+        } else {
+            stages.add(factory);
+        }
+    }
+
+    private static void addPerExample(List<FlatProcessing> perExample, List<BatchProcessing> stages) {
+        if (perExample.size() == 1) {
+            stages.add(new BatchProcessingAdapter(perExample.get(0)));
+        } else if (perExample.size() > 1) {
+            stages.add(new BatchProcessingAdapter(new Chain(perExample)));
+        }
+        perExample.clear();
+    }
+
+    /**
+     * Sequence of {@link FlatProcessing FlatProcessings} with one intermediate buffer between each pair of stages.
+     */
+    private static final class Chain implements FlatProcessing {
+
+        private final FlatProcessing[] stages;
+        private final double[][] intermediates;
+
+        private Chain(List<FlatProcessing> stages) {
+            this.stages = stages.toArray(new FlatProcessing[0]);
+            this.intermediates = new double[stages.size() - 1][];
+            for (int i = 0; i < intermediates.length; i++) {
+                intermediates[i] = new double[stages.get(i).getOutputShape().getSize()];
+            }
+        }
+
+        @Override
+        public Shape getOutputShape() {
+            return stages[stages.length - 1].getOutputShape();
+        }
+
+        @Override
+        public void process(double[] input, long position, double[] output, int offset) {
+            double[] stageInput = input;
+            long stagePosition = position;
+            for (int i = 0; i < intermediates.length; i++) {
+                stages[i].process(stageInput, stagePosition, intermediates[i], 0);
+                stageInput = intermediates[i];
+                stagePosition = -1;
+            }
+            stages[stages.length - 1].process(stageInput, stagePosition, output, offset);
+        }
+    }
+
+    /**
+     * Sequence of {@link BatchProcessing BatchProcessings}.
+     */
+    private static final class BatchChain implements BatchProcessing {
+
+        private final BatchProcessing[] stages;
+
+        private BatchChain(List<BatchProcessing> stages) {
+            this.stages = stages.toArray(new BatchProcessing[0]);
+        }
+
+        @Override
+        public FlatProcessing.Shape getOutputShape() {
+            return stages[stages.length - 1].getOutputShape();
+        }
+
+        @Override
+        public INDArray process(INDArray input) {
+            INDArray output = input;
+            for (BatchProcessing stage : stages) {
+                output = stage.process(output);
+            }
+            return output;
+        }
+    }
+
     @Override
     public String name() {
         return first.name() + nameStatic() + second.name();
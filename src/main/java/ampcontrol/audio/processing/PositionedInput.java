@@ -0,0 +1,34 @@
+package ampcontrol.audio.processing;
+
+/**
+ * Input {@link ProcessingResult} created from a single double array which is a window of samples from a stream of
+ * audio. Stateful processing can use the position of the window to reuse results from previous windows.
+ *
+ * @author Christian Skärby
+ */
+public class PositionedInput extends SingletonDoubleInput {
+
+    private final long position;
+
+    /**
+     * Constructor
+     *
+     * @param inputVec window of samples
+     * @param position position of the window in the stream, i.e. the number of samples in the stream up to and
+     *                 including the last sample of the window
+     */
+    public PositionedInput(double[] inputVec, long position) {
+        super(inputVec);
+        this.position = position;
+    }
+
+    /**
+     * Returns the position of the window in the stream, i.e. the number of samples in the stream up to and including
+     * the last sample of the window
+     *
+     * @return the position of the window
+     */
+    public long getPosition() {
+        return position;
+    }
+}
@@ -11,7 +11,11 @@ import java.util.stream.Stream;
 public interface ProcessingResult {
 
     /**
-     * The factory to create a ProcessingResult
+     * The factory to create a ProcessingResult. Implementations shall be reentrant: {@link #create(ProcessingResult)}
+     * may be called from several threads at once and results may be streamed concurrently and from other threads than
+     * the one which created them. Streaming a result several times shall give the same output each time. Mutable
+     * resources such as FFT plans shall thus not be shared between threads and random draws shall be made when the
+     * result is created. Compiled {@link FlatProcessing FlatProcessings} are on the other hand not thread safe.
      */
     interface Factory {
 
@@ -29,13 +33,54 @@ public interface ProcessingResult {
          */
         ProcessingResult create(ProcessingResult input);
 
+        /**
+         * Compiles this processing into a {@link FlatProcessing} for input of the given shape. Output shall be the
+         * same as from {@link #create(ProcessingResult)}. Default implementation goes through
+         * {@link #create(ProcessingResult)} and is thus not allocation free.
+         *
+         * @param inputShape shape of input
+         * @return a {@link FlatProcessing}
+         */
+        default FlatProcessing compile(FlatProcessing.Shape inputShape) {
+            return new FlatProcessingAdapter(this, inputShape);
+        }
+
+        /**
+         * Compiles this processing into a {@link BatchProcessing} for input of the given shape. Output shall be the
+         * same as from {@link #compile(FlatProcessing.Shape)} up to numerical precision. Default implementation
+         * processes one example at the time through {@link #compile(FlatProcessing.Shape)}.
+         *
+         * @param inputShape shape of input
+         * @return a {@link BatchProcessing}
+         */
+        default BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+            return new BatchProcessingAdapter(compile(inputShape));
+        }
+
     }
 
     /**
      * Return the result. Example of when the returned {@link List} has more than one element is when processing is
      * {@link Fork forked}.
+     * <br><br>
+     * The returned arrays are read-only as they may be shared with other results, e.g. by a {@link Buffer}. Stages
+     * which want to work in place shall do so on a {@link #writableCopy(double[][])}.
      *
      * @return the result
      */
     Stream<double[][]> stream();
+
+    /**
+     * Returns a copy of the given read-only array which may be modified
+     *
+     * @param input array to copy
+     * @return a copy of input
+     */
+    static double[][] writableCopy(double[][] input) {
+        final double[][] copy = new double[input.length][];
+        for (int i = 0; i < input.length; i++) {
+            copy[i] = input[i].clone();
+        }
+        return copy;
+    }
 }
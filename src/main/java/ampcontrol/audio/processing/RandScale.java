@@ -1,11 +1,21 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
 import java.util.Random;
 import java.util.stream.Stream;
 
 /**
  * Does random scaling of input. Useful for data augmentation. Obviously useless if normalization is applied. Should also
  * obviously not be recreated when doing classification of unknown input.
+ * <br><br>
+ * One scaling factor is drawn per channel. To make this safe for concurrent use, a seed is split off the given
+ * {@link Random} (typically from a {@link ampcontrol.model.training.data.state.ResetableStateFactory}) when a
+ * {@link ProcessingResult} is created and the scaling factors of the channels are drawn from a {@link Random} of its
+ * own seeded with it. Streaming the result is thereby reentrant and gives the same output every time and from any
+ * thread. Results get the same seeds for the same seed of the given {@link Random} regardless of which threads create
+ * them, although which result gets which seed depends on the order in which they are created.
  *
  * @author Christian Skärby
  */
@@ -43,24 +53,85 @@ public class RandScale implements ProcessingResult.Factory {
 
     @Override
     public ProcessingResult create(ProcessingResult input) {
-        return new Result(input);
+        return new Result(input, nextSeed());
+    }
+
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        return new FlatChannelProcessing(inputShape) {
+
+            private final Random channelRng = new Random();
+
+            @Override
+            public void process(double[] input, long position, double[] output, int offset) {
+                channelRng.setSeed(nextSeed());
+                super.process(input, position, output, offset);
+            }
+
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                final double scalingFactor = drawScalingFactor(channelRng);
+                for (int i = 0; i < shape.getChannelSize(); i++) {
+                    output[outputOffset + i] = input[inputOffset + i] * scalingFactor;
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return inputShape;
+            }
+
+            @Override
+            public INDArray process(INDArray input) {
+                final INDArray output = input.dup();
+                final Random channelRng = new Random();
+                final int channelSize = inputShape.getChannelSize();
+                for (int row = 0; row < output.rows(); row++) {
+                    channelRng.setSeed(nextSeed());
+                    for (int channel = 0; channel < inputShape.getNrofChannels(); channel++) {
+                        output.get(NDArrayIndex.point(row), NDArrayIndex.interval(channel * channelSize, (channel + 1) * channelSize))
+                                .muli(drawScalingFactor(channelRng));
+                    }
+                }
+                return output;
+            }
+        };
+    }
+
+    private long nextSeed() {
+        // nextLong is not atomic, draws from concurrent threads could otherwise be mixed
+        synchronized (rng) {
+            return rng.nextLong();
+        }
+    }
+
+    private double drawScalingFactor(Random channelRng) {
+        return (minScalingPerc + channelRng.nextInt(maxScalingPerc - minScalingPerc)) / 1e2;
     }
 
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
+        private final long seed;
 
-        public Result(ProcessingResult input) {
+        public Result(ProcessingResult input, long seed) {
             this.input = input;
+            this.seed = seed;
         }
 
         @Override
         public Stream<double[][]> stream() {
+            final Random channelRng = new Random(seed);
             return input.stream().map(inputArr -> {
+                final double scalingFactor = drawScalingFactor(channelRng);
                 final int nrofFrames = inputArr.length;
                 final int nrofSamplesPerFrame = inputArr[0].length;
                 final double[][] result = new double[nrofFrames][nrofSamplesPerFrame];
-                final double scalingFactor = (minScalingPerc + rng.nextInt(maxScalingPerc - minScalingPerc)) / 1e2;
 
                 for (int i = 0; i < nrofFrames; i++) {
                     for (int j = 0; j < nrofSamplesPerFrame; j++) {
@@ -0,0 +1,190 @@
+package ampcontrol.audio.processing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles several {@link ProcessingResult.Factory ProcessingResult.Factories} for the same input into one graph of
+ * {@link FlatProcessing FlatProcessings} where stages which have the same name and the same input are only created
+ * once. Typical use is an ensemble of models which all use the same spectrogram but different processing after it.
+ * Each {@link #process(double[], long)} evaluates every distinct stage exactly once, so the cost of processing scales
+ * with the number of distinct stages rather than with the number of added factories.
+ * <br><br>
+ * Not thread safe. All factories shall be added before processing starts.
+ *
+ * @author Christian Skärby
+ */
+public class SharedProcessing {
+
+    private final FlatProcessing.Shape inputShape;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * Output of one added {@link ProcessingResult.Factory}.
+     */
+    public static final class Output {
+
+        private final Node node;
+
+        private Output(Node node) {
+            this.node = node;
+        }
+
+        /**
+         * Returns the shape of the output
+         *
+         * @return the shape of the output
+         */
+        public FlatProcessing.Shape getShape() {
+            return node.shape;
+        }
+
+        /**
+         * Returns the output from the last call to {@link #process(double[], long)}. Shall not be modified.
+         *
+         * @return the output
+         */
+        public double[] get() {
+            return node.output;
+        }
+    }
+
+    private abstract static class Node {
+
+        final String key;
+        final FlatProcessing.Shape shape;
+        final double[] output;
+
+        private Node(String key, FlatProcessing.Shape shape) {
+            this.key = key;
+            this.shape = shape;
+            this.output = new double[shape.getSize()];
+        }
+
+        abstract void process(double[] input, long position);
+    }
+
+    private static final class StageNode extends Node {
+
+        private final Node parent;
+        private final FlatProcessing stage;
+
+        private StageNode(String key, Node parent, FlatProcessing stage) {
+            super(key, stage.getOutputShape());
+            this.parent = parent;
+            this.stage = stage;
+        }
+
+        @Override
+        void process(double[] input, long position) {
+            if (parent == null) {
+                stage.process(input, position, output, 0);
+            } else {
+                stage.process(parent.output, -1, output, 0);
+            }
+        }
+    }
+
+    private static final class ForkNode extends Node {
+
+        private final Node first;
+        private final Node second;
+
+        private ForkNode(String key, FlatProcessing.Shape shape, Node first, Node second) {
+            super(key, shape);
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        void process(double[] input, long position) {
+            System.arraycopy(first.output, 0, output, 0, first.output.length);
+            System.arraycopy(second.output, 0, output, first.output.length, second.output.length);
+        }
+    }
+
+    public SharedProcessing(FlatProcessing.Shape inputShape) {
+        this.inputShape = inputShape;
+    }
+
+    /**
+     * Adds the given factory.
+     *
+     * @param factory {@link ProcessingResult.Factory} to add
+     * @return the {@link Output} of the factory
+     */
+    public Output add(ProcessingResult.Factory factory) {
+        return new Output(addNode(factory, null));
+    }
+
+    /**
+     * Processes the given input through all distinct stages.
+     *
+     * @param input    input of the shape given in the constructor
+     * @param position position of the input in a stream of audio (see {@link PositionedInput}) or -1 if not known
+     */
+    public void process(double[] input, long position) {
+        // Nodes are inserted after their inputs
+        for (Node node : nodes.values()) {
+            node.process(input, position);
+        }
+    }
+
+    /**
+     * Returns the number of distinct stages
+     *
+     * @return the number of distinct stages
+     */
+    public int getNrofStages() {
+        return nodes.size();
+    }
+
+    private Node addNode(ProcessingResult.Factory factory, Node parent) {
+        if (factory instanceof Pipe) {
+            return addPipe((Pipe) factory, parent);
+        }
+        if (factory instanceof Fork) {
+            return addFork((Fork) factory, parent);
+        }
+        return nodes.computeIfAbsent(key(parent, factory.name()),
+                key -> new StageNode(key, parent, factory.compile(shape(parent))));
+    }
+
+    private Node addPipe(Pipe pipe, Node parent) {
+        final List<ProcessingResult.Factory> stages = new ArrayList<>();
+        Pipe.addStages(pipe, stages);
+
+        Node node = parent;
+        for (ProcessingResult.Factory stage : stages) {
+            node = addNode(stage, node);
+        }
+        return node;
+    }
+
+    private Node addFork(Fork fork, Node parent) {
+        final Node first = addNode(fork.getPath1(), parent);
+        final Node second = addNode(fork.getPath2(), parent);
+        return nodes.computeIfAbsent(key(parent, fork.name()), key -> {
+            if (first.shape.getNrofRows() != second.shape.getNrofRows()
+                    || first.shape.getNrofCols() != second.shape.getNrofCols()) {
+                throw new IllegalArgumentException("Paths of " + fork.name() + " have different output shapes: "
+                        + first.shape + " vs " + second.shape + "!");
+            }
+            return new ForkNode(key, new FlatProcessing.Shape(
+                    first.shape.getNrofChannels() + second.shape.getNrofChannels(),
+                    first.shape.getNrofRows(),
+                    first.shape.getNrofCols()),
+                    first, second);
+        });
+    }
+
+    private FlatProcessing.Shape shape(Node node) {
+        return node == null ? inputShape : node.shape;
+    }
+
+    private static String key(Node parent, String name) {
+        return parent == null ? name : parent.key + Pipe.nameStatic() + name;
+    }
+}
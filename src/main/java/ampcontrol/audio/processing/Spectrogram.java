@@ -27,6 +27,13 @@ import java.util.stream.Stream;
 
 /**
  * Computes spectrogram of input. Ripped from {@link org.datavec.audio.extension.Spectrogram}.
+ * <br><br>
+ * If input is a {@link PositionedInput} the magnitude frames are cached by their position in the stream so that only
+ * frames which were not part of previous input need to be computed. Output is identical to non-positioned input.
+ * Note that this requires that the distance between the positions of consecutive inputs is a multiple of the time
+ * stride as frames are otherwise not aligned with previous frames.
+ * <br><br>
+ * Results may be streamed concurrently from several threads as each thread uses its own FFT plan.
  *
  * @author Jacquet Wong
  */
@@ -41,7 +48,8 @@ public class Spectrogram implements ProcessingResult.Factory {
     private final int fftWindowSize; // number of sample in fft, the value needed to be a number to power of 2
     private final int timeStride; // 1/overlapFactor overlapping, e.g. 1/4=25% overlapping
     private final double[] window;
-    private final DoubleFFT_1D fft;
+    private final ThreadLocal<DoubleFFT_1D> fftPlans; // DoubleFFT_1D is not documented as thread safe
+    private final FrameCache frameCache = new FrameCache();
 
     public Spectrogram(int fftWindowSize, int spectrogramTimeStride) {
         this.fftWindowSize = fftWindowSize;
@@ -50,7 +58,7 @@ public class Spectrogram implements ProcessingResult.Factory {
         WindowFunction window = new WindowFunction();
         window.setWindowType("Hamming");
         this.window = window.generate(fftWindowSize);
-        this.fft = new DoubleFFT_1D(fftWindowSize);
+        this.fftPlans = ThreadLocal.withInitial(() -> new DoubleFFT_1D(fftWindowSize));
     }
 
 
@@ -63,7 +71,7 @@ public class Spectrogram implements ProcessingResult.Factory {
             throw new IllegalArgumentException("Could not create " + this.getClass().getSimpleName() + " from string " + parString + "!");
         }
 
-        fft = new DoubleFFT_1D(fftWindowSize);
+        fftPlans = ThreadLocal.withInitial(() -> new DoubleFFT_1D(fftWindowSize));
         WindowFunction window = new WindowFunction();
         window.setWindowType("Hamming");
         this.window = window.generate(fftWindowSize);
@@ -83,6 +91,41 @@ public class Spectrogram implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final int nrofSamples = inputShape.getNrofCols();
+        final int nrofFrames = getNrofFrames(nrofSamples);
+        final int nrofBins = fftWindowSize / 2;
+        final int nrofInputRows = inputShape.getNrofChannels() * inputShape.getNrofRows();
+        final FlatProcessing.Shape outputShape = new FlatProcessing.Shape(
+                inputShape.getNrofChannels(),
+                inputShape.getNrofRows() * nrofFrames,
+                nrofBins);
+        final FrameCache cache = nrofInputRows == 1 ? new FrameCache() : null;
+        final double[] signal = new double[fftWindowSize];
+        final DoubleFFT_1D fft = new DoubleFFT_1D(fftWindowSize);
+        return new FlatProcessing() {
+            @Override
+            public Shape getOutputShape() {
+                return outputShape;
+            }
+
+            @Override
+            public void process(double[] input, long position, double[] output, int offset) {
+                if (position >= 0 && cache != null) {
+                    cache.buildSpectrogram(input, position, output, offset);
+                    return;
+                }
+                for (int row = 0; row < nrofInputRows; row++) {
+                    for (int f = 0; f < nrofFrames; f++) {
+                        calculateFrame(input, row * nrofSamples + f * timeStride, signal, fft,
+                                output, offset + (row * nrofFrames + f) * nrofBins);
+                    }
+                }
+            }
+        };
+    }
+
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
@@ -93,6 +136,10 @@ public class Spectrogram implements ProcessingResult.Factory {
 
         @Override
         public Stream<double[][]> stream() {
+            if (input instanceof PositionedInput) {
+                final long position = ((PositionedInput) input).getPosition();
+                return input.stream().map(inputArr -> frameCache.buildSpectrogram(inputArr[0], position));
+            }
             return input.stream().map(inputArr -> {
                 final int nrofFrames = inputArr.length;
                 final int nrofSamplesInFrame = inputArr[0].length;
@@ -113,28 +160,98 @@ public class Spectrogram implements ProcessingResult.Factory {
          */
         private double[][] buildSpectrogram(double[] amplitudes) {
 
-            final int nrofFrames = (1 + (amplitudes.length - fftWindowSize) / timeStride);
+            final int nrofFrames = getNrofFrames(amplitudes.length);
 
-            double[][] signals = new double[nrofFrames][fftWindowSize];
+            final double[] signal = new double[fftWindowSize];
+            final DoubleFFT_1D fft = fftPlans.get();
             double[][] specgram = new double[nrofFrames][fftWindowSize / 2];
             for (int f = 0; f < nrofFrames; f++) {
-                int startSample = f * timeStride;
-                for (int n = 0; n < fftWindowSize; n++) {
-                    signals[f][n] = amplitudes[n + startSample] * window[n];
-                }
-                calculateFftMagnitudes(signals[f], specgram[f]);
+                calculateFrame(amplitudes, f * timeStride, signal, fft, specgram[f], 0);
             }
 
             return specgram;
         }
 
-        private void calculateFftMagnitudes(double[] signals, double[] mag) {
-            fft.realForward(signals);
-            mag[0] = Math.abs(signals[0]);
-            // signals[1] is for some reason equal to real part at bin fftWindowSize / 2 -> Useless, discard it
-            for (int j = 2; j < fftWindowSize; j += 2) {
-                mag[j / 2] = Math.sqrt(signals[j] * signals[j] + signals[j + 1] * signals[j + 1]);
+    }
+
+    /**
+     * Magnitude frames from previous input in a circular buffer where the slot of each frame is given by its position
+     * in the stream.
+     */
+    private final class FrameCache {
+
+        private double[] signal = new double[0];
+        private DoubleFFT_1D fft;
+        private double[][] frames = new double[0][];
+        private long[] framePositions = new long[0];
+        private long nrofFftsComputed = 0;
+
+        private synchronized double[][] buildSpectrogram(double[] amplitudes, long position) {
+            final int nrofFrames = getNrofFrames(amplitudes.length);
+            final double[][] specgram = new double[nrofFrames][];
+            for (int f = 0; f < nrofFrames; f++) {
+                specgram[f] = getFrame(amplitudes, position, nrofFrames, f).clone();
             }
+            return specgram;
+        }
+
+        private synchronized void buildSpectrogram(double[] amplitudes, long position, double[] output, int offset) {
+            final int nrofFrames = getNrofFrames(amplitudes.length);
+            final int nrofBins = fftWindowSize / 2;
+            for (int f = 0; f < nrofFrames; f++) {
+                System.arraycopy(getFrame(amplitudes, position, nrofFrames, f), 0, output, offset + f * nrofBins, nrofBins);
+            }
+        }
+
+        private double[] getFrame(double[] amplitudes, long position, int nrofFrames, int f) {
+            if (frames.length != nrofFrames) {
+                signal = new double[fftWindowSize];
+                fft = new DoubleFFT_1D(fftWindowSize);
+                frames = new double[nrofFrames][fftWindowSize / 2];
+                framePositions = new long[nrofFrames];
+                Arrays.fill(framePositions, Long.MIN_VALUE);
+            }
+
+            final int startSample = f * timeStride;
+            final long framePosition = position - amplitudes.length + startSample;
+            final int slot = (int) Math.floorMod(Math.floorDiv(framePosition, timeStride), (long) nrofFrames);
+            if (framePositions[slot] != framePosition) {
+                calculateFrame(amplitudes, startSample, signal, fft, frames[slot], 0);
+                framePositions[slot] = framePosition;
+                nrofFftsComputed++;
+            }
+            return frames[slot];
+        }
+    }
+
+    private int getNrofFrames(int nrofSamples) {
+        return 1 + (nrofSamples - fftWindowSize) / timeStride;
+    }
+
+    private void calculateFrame(double[] amplitudes, int startSample, double[] signal, DoubleFFT_1D fft, double[] mag, int magOffset) {
+        for (int n = 0; n < fftWindowSize; n++) {
+            signal[n] = amplitudes[n + startSample] * window[n];
+        }
+        calculateFftMagnitudes(signal, fft, mag, magOffset);
+    }
+
+    private void calculateFftMagnitudes(double[] signals, DoubleFFT_1D fft, double[] mag, int offset) {
+        fft.realForward(signals);
+        mag[offset] = Math.abs(signals[0]);
+        // signals[1] is for some reason equal to real part at bin fftWindowSize / 2 -> Useless, discard it
+        for (int j = 2; j < fftWindowSize; j += 2) {
+            mag[offset + j / 2] = Math.sqrt(signals[j] * signals[j] + signals[j + 1] * signals[j + 1]);
+        }
+    }
+
+    /**
+     * Returns the number of FFTs computed for {@link PositionedInput}. Intended for testing.
+     *
+     * @return the number of FFTs computed for {@link PositionedInput}
+     */
+    long getNrofFftsComputed() {
+        synchronized (frameCache) {
+            return frameCache.nrofFftsComputed;
         }
     }
 
@@ -1,5 +1,8 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
 import java.util.DoubleSummaryStatistics;
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
@@ -26,6 +29,35 @@ public class UnitMaxZeroMean implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final ChannelStatistics stats = new ChannelStatistics();
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                stats.compute(input, inputOffset, shape.getChannelSize());
+                final double avg = stats.getAverage();
+                final double absMax = Math.max(1e-10,
+                        Math.max(Math.abs(stats.getMax() - avg), Math.abs(stats.getMin() - avg)));
+                for (int i = 0; i < shape.getChannelSize(); i++) {
+                    output[outputOffset + i] = (input[inputOffset + i] - avg) / absMax;
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchChannelProcessing(inputShape) {
+            @Override
+            INDArray processChannels(INDArray channels) {
+                final INDArray centered = channels.subColumnVector(column(channels.mean(1)));
+                final INDArray absMax = Transforms.max(Transforms.abs(centered, true).max(1), 1e-10, false);
+                return centered.diviColumnVector(column(absMax));
+            }
+        };
+    }
+
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
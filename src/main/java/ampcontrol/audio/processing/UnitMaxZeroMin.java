@@ -1,5 +1,8 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
 import java.util.DoubleSummaryStatistics;
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
@@ -17,6 +20,34 @@ public class UnitMaxZeroMin implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final ChannelStatistics stats = new ChannelStatistics();
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                stats.compute(input, inputOffset, shape.getChannelSize());
+                final double min = stats.getMin();
+                final double diff = Math.max(1e-10, stats.getMax() - min);
+                for (int i = 0; i < shape.getChannelSize(); i++) {
+                    output[outputOffset + i] = (input[inputOffset + i] - min) / diff;
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchChannelProcessing(inputShape) {
+            @Override
+            INDArray processChannels(INDArray channels) {
+                final INDArray min = column(channels.min(1));
+                final INDArray diff = Transforms.max(column(channels.max(1)).subi(min), 1e-10, false);
+                return channels.subColumnVector(min).diviColumnVector(diff);
+            }
+        };
+    }
+
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
@@ -1,5 +1,8 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
@@ -24,6 +27,39 @@ public class UnitStdZeroMean implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final ChannelStatistics stats = new ChannelStatistics();
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                final int channelSize = shape.getChannelSize();
+                final double avg = stats.compute(input, inputOffset, channelSize).getAverage();
+                double varSum = 0;
+                for (int i = 0; i < channelSize; i++) {
+                    final double centered = input[inputOffset + i] - avg;
+                    output[outputOffset + i] = centered;
+                    varSum += centered * centered;
+                }
+                final double std = Math.max(1e-10, Math.sqrt(varSum / channelSize));
+                for (int i = 0; i < channelSize; i++) {
+                    output[outputOffset + i] /= std;
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchChannelProcessing(inputShape) {
+            @Override
+            INDArray processChannels(INDArray channels) {
+                final INDArray std = Transforms.max(channels.std(false, 1), 1e-10, false);
+                return channels.subColumnVector(column(channels.mean(1))).diviColumnVector(column(std));
+            }
+        };
+    }
+
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
@@ -1,5 +1,8 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -29,6 +32,39 @@ public class Ycoord implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                for (int row = 0; row < shape.getNrofRows(); row++) {
+                    for (int j = 0; j < shape.getNrofCols(); j++) {
+                        output[outputOffset + row * shape.getNrofCols() + j] = j;
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        final FlatProcessing flat = compile(inputShape);
+        final double[] coordinates = new double[flat.getOutputShape().getSize()];
+        flat.process(new double[inputShape.getSize()], coordinates);
+        final INDArray coordinateRow = Nd4j.create(coordinates, new int[]{1, coordinates.length});
+        return new BatchProcessing() {
+            @Override
+            public FlatProcessing.Shape getOutputShape() {
+                return flat.getOutputShape();
+            }
+
+            @Override
+            public INDArray process(INDArray input) {
+                return Nd4j.zeros(input.rows(), coordinateRow.columns()).addiRowVector(coordinateRow);
+            }
+        };
+    }
+
     private class Result implements ProcessingResult {
         private final ProcessingResult input;
 
@@ -1,5 +1,7 @@
 package ampcontrol.audio.processing;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
@@ -24,6 +26,30 @@ public class ZeroMean implements ProcessingResult.Factory {
         return new Result(input);
     }
 
+    @Override
+    public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+        final ChannelStatistics stats = new ChannelStatistics();
+        return new FlatChannelProcessing(inputShape) {
+            @Override
+            void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                final double avg = stats.compute(input, inputOffset, shape.getChannelSize()).getAverage();
+                for (int i = 0; i < shape.getChannelSize(); i++) {
+                    output[outputOffset + i] = input[inputOffset + i] - avg;
+                }
+            }
+        };
+    }
+
+    @Override
+    public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return new BatchChannelProcessing(inputShape) {
+            @Override
+            INDArray processChannels(INDArray channels) {
+                return channels.subColumnVector(column(channels.mean(1)));
+            }
+        };
+    }
+
     private final class Result implements ProcessingResult {
 
         private final ProcessingResult input;
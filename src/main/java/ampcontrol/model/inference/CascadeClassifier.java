@@ -0,0 +1,106 @@
+package ampcontrol.model.inference;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cascade of {@link Classifier Classifiers} which are evaluated in order, typically from cheapest to most expensive,
+ * until the result is confident enough. The result after each stage is the accuracy weighted average of the
+ * classifications of all stages evaluated so far, same as {@link EnsembleWeightedSumClassifier} with average
+ * normalization. Evaluation stops when the probability of the most likely label of the result is not below the
+ * confidence threshold of that label. Labels without threshold are always confident enough. The last stage is used
+ * regardless of confidence.
+ * <br><br>
+ * The number of times each stage was reached is counted and logged periodically.
+ *
+ * @author Christian Skärby
+ */
+class CascadeClassifier implements Classifier {
+
+    private static final Logger log = LoggerFactory.getLogger(CascadeClassifier.class);
+    private static final int reportInterval = 1000;
+
+    private final List<Classifier> stages;
+    private final Map<Integer, Double> confidenceThresholds;
+    private final double accuracy;
+    private final long[] nrofReached;
+    private INDArray weightedSum;
+    private INDArray result;
+
+    /**
+     * Constructor
+     *
+     * @param stages               stages of the cascade in order of evaluation
+     * @param confidenceThresholds map from label to the probability needed to stop evaluation
+     */
+    CascadeClassifier(List<? extends Classifier> stages, Map<Integer, Double> confidenceThresholds) {
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException("No stages!");
+        }
+        this.stages = new ArrayList<>(stages);
+        this.confidenceThresholds = confidenceThresholds;
+        this.nrofReached = new long[stages.size()];
+        this.accuracy = stages.stream()
+                .mapToDouble(Classifier::getAccuracy)
+                .max()
+                .orElse(0);
+    }
+
+    @Override
+    public INDArray classify() {
+        double sumAcc = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            nrofReached[i]++;
+            final Classifier stage = stages.get(i);
+            sumAcc += stage.getAccuracy();
+            if (i == 0) {
+                weightedSum = InPlace.scale(weightedSum, stage.classify(), stage.getAccuracy());
+            } else {
+                InPlace.addScaled(weightedSum, stage.classify(), stage.getAccuracy());
+            }
+            result = InPlace.scale(result, weightedSum, 1 / sumAcc);
+            if (isConfident(result)) {
+                break;
+            }
+        }
+        report();
+        return result;
+    }
+
+    private boolean isConfident(INDArray probabilities) {
+        int label = 0;
+        for (int i = 1; i < probabilities.length(); i++) {
+            if (probabilities.getDouble(i) > probabilities.getDouble(label)) {
+                label = i;
+            }
+        }
+        return probabilities.getDouble(label) >= confidenceThresholds.getOrDefault(label, 0d);
+    }
+
+    private void report() {
+        if (nrofReached[0] % reportInterval == 0) {
+            log.info("Cascade stages reached: " + Arrays.toString(nrofReached));
+        }
+    }
+
+    /**
+     * Returns the number of times the given stage was reached
+     *
+     * @param stage index of stage
+     * @return the number of times the stage was reached
+     */
+    long getNrofReached(int stage) {
+        return nrofReached[stage];
+    }
+
+    @Override
+    public double getAccuracy() {
+        return accuracy;
+    }
+}
@@ -0,0 +1,176 @@
+package ampcontrol.model.inference;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reuses the last classification of the source {@link Classifier} when its input has not changed much, e.g. when a
+ * chord is held. Input is compared through a downsampled version of it where each element is the mean of a contiguous
+ * block of the model input. Input is considered unchanged if the L2 distance between the downsampled input and the
+ * downsampled input at the last classification relative to the L2 norm of the latter is below a threshold. At most
+ * maxNrofReuses consecutive classifications are reused so that the classification can not go stale.
+ * <br><br>
+ * Effect on accuracy is estimated when a classification is made only because maxNrofReuses has been reached: The
+ * fraction of such classifications for which the most likely class is the same as for the reused classification is
+ * reported together with the fraction of reused classifications.
+ *
+ * @author Christian Skärby
+ */
+class ChangeDetectionClassifier implements Classifier {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeDetectionClassifier.class);
+    private static final int reportInterval = 1000;
+
+    private final Classifier sourceClassifier;
+    private final PinnedInputProvider inputProvider;
+    private final double thresholdSquared;
+    private final int maxNrofReuses;
+
+    private double[] features;
+    private double[] lastFeatures;
+    private INDArray lastClassification;
+    private int nrofConsecutiveReuses = 0;
+
+    private long nrofClassifications = 0;
+    private long nrofReuses = 0;
+    private long nrofRefreshes = 0;
+    private long nrofRefreshAgreements = 0;
+
+    /**
+     * Constructor
+     *
+     * @param sourceClassifier {@link Classifier} to reuse classifications from
+     * @param inputProvider    Provides input to the source classifier. Input is pinned during classification so that
+     *                         it is compared to exactly what the source classifier classifies
+     * @param threshold        Relative distance between downsampled inputs below which input is considered unchanged
+     * @param maxNrofReuses    Maximum number of consecutive reused classifications
+     * @param nrofBins         Number of elements to downsample input to
+     */
+    ChangeDetectionClassifier(
+            Classifier sourceClassifier,
+            PinnedInputProvider inputProvider,
+            double threshold,
+            int maxNrofReuses,
+            int nrofBins) {
+        this.sourceClassifier = sourceClassifier;
+        this.inputProvider = inputProvider;
+        this.thresholdSquared = threshold * threshold;
+        this.maxNrofReuses = maxNrofReuses;
+        this.features = new double[nrofBins];
+        this.lastFeatures = new double[nrofBins];
+    }
+
+    @Override
+    public INDArray classify() {
+        final INDArray input = inputProvider.pin();
+        try {
+            return classify(input);
+        } finally {
+            inputProvider.unpin();
+        }
+    }
+
+    private INDArray classify(INDArray input) {
+        downsample(input, features);
+        nrofClassifications++;
+
+        final boolean unchanged = lastClassification != null && isUnchanged();
+        if (unchanged && nrofConsecutiveReuses < maxNrofReuses) {
+            nrofConsecutiveReuses++;
+            nrofReuses++;
+            report();
+            return lastClassification;
+        }
+
+        final INDArray classification = sourceClassifier.classify();
+        if (unchanged) {
+            nrofRefreshes++;
+            if (argMax(classification) == argMax(lastClassification)) {
+                nrofRefreshAgreements++;
+            }
+        }
+
+        final double[] tmp = lastFeatures;
+        lastFeatures = features;
+        features = tmp;
+        lastClassification = InPlace.scale(lastClassification, classification, 1);
+        nrofConsecutiveReuses = 0;
+        report();
+        return classification;
+    }
+
+    private boolean isUnchanged() {
+        double distSquared = 0;
+        double normSquared = 0;
+        for (int i = 0; i < features.length; i++) {
+            final double diff = features[i] - lastFeatures[i];
+            distSquared += diff * diff;
+            normSquared += lastFeatures[i] * lastFeatures[i];
+        }
+        return distSquared <= thresholdSquared * normSquared;
+    }
+
+    private static void downsample(INDArray input, double[] bins) {
+        final INDArray flat = input.ordering() == 'c' && !input.isView() ? input : input.dup('c');
+        final DataBuffer data = flat.data();
+        final long length = flat.length();
+        final int nrofBins = (int) Math.min(bins.length, length);
+        Arrays.fill(bins, 0);
+        for (int bin = 0; bin < nrofBins; bin++) {
+            final long start = bin * length / nrofBins;
+            final long end = (bin + 1) * length / nrofBins;
+            double sum = 0;
+            for (long i = start; i < end; i++) {
+                sum += data.getDouble(i);
+            }
+            bins[bin] = sum / (end - start);
+        }
+    }
+
+    private static int argMax(INDArray classification) {
+        int argMax = 0;
+        for (int i = 1; i < classification.length(); i++) {
+            if (classification.getDouble(i) > classification.getDouble(argMax)) {
+                argMax = i;
+            }
+        }
+        return argMax;
+    }
+
+    private void report() {
+        if (nrofClassifications % reportInterval == 0) {
+            log.info(String.format(Locale.ROOT, "Reused classifications: %.3f, agreement at refresh: %.3f (%d)",
+                    getReuseRatio(), getRefreshAgreement(), nrofRefreshes));
+        }
+    }
+
+    /**
+     * Returns the fraction of classifications which were reused
+     *
+     * @return the fraction of classifications which were reused
+     */
+    double getReuseRatio() {
+        return nrofClassifications == 0 ? 0 : nrofReuses / (double) nrofClassifications;
+    }
+
+    /**
+     * Returns the fraction of classifications made only because the maximum number of reuses was reached for which
+     * the most likely class was the same as for the reused classification. Returns 1 if there are no such
+     * classifications.
+     *
+     * @return the fraction of agreeing classifications
+     */
+    double getRefreshAgreement() {
+        return nrofRefreshes == 0 ? 1 : nrofRefreshAgreements / (double) nrofRefreshes;
+    }
+
+    @Override
+    public double getAccuracy() {
+        return sourceClassifier.getAccuracy();
+    }
+}
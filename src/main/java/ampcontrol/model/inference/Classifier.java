@@ -11,7 +11,8 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 public interface Classifier {
 
     /**
-     * Returns probabilities of each class as an {@link INDArray}.
+     * Returns probabilities of each class as an {@link INDArray}. The returned array might be reused by the classifier
+     * and shall not be modified or kept after the next call. Use {@link INDArray#dup()} to keep it.
      *
      * @return probabilities of each class as an {@link INDArray}.
      */
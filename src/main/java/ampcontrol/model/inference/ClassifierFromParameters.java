@@ -1,13 +1,21 @@
 package ampcontrol.model.inference;
 
-import ampcontrol.audio.ClassifierInputProvider;
+import ampcontrol.admin.service.latency.Latencies;
 import ampcontrol.audio.ClassifierInputProviderFactory;
 import com.beust.jcommander.Parameter;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Factory for creating a {@link Classifier}. Parameterized through {@link com.beust.jcommander.JCommander}.
@@ -43,8 +51,51 @@ public class ClassifierFromParameters {
 	@Parameter(names = {"-classificationForgettingFactor", "-cff"}, description = "Set forgetting factor for classification")
 	private double cff = 0.85;
 
+	@Parameter(names = "-reuseThreshold", description = "Relative distance between downsampled model input and the " +
+			"model input at the last classification below which the last classification is reused. No reuse if <= 0")
+	private double reuseThreshold = 0;
+
+	@Parameter(names = "-maxNrofReuses", description = "Maximum number of consecutive reused classifications")
+	private int maxNrofReuses = 4;
+
+	@Parameter(names = "-reuseNrofBins", description = "Number of elements to downsample model input to when " +
+			"comparing it to the model input at the last classification")
+	private int reuseNrofBins = 64;
+
+	@Parameter(names = "-ensembleThreads", description = "Number of threads to run members of an ensemble in parallel " +
+			"on. Members are run in sequence if <= 0")
+	private int ensembleThreads = 0;
+
+	@Parameter(names = "-ensembleDeadlineMs", description = "Time in milli seconds after which ensemble members which " +
+			"are not done are left out of a classification. Only used if ensembleThreads > 0. No deadline if <= 0")
+	private double ensembleDeadlineMs = 0;
+
+	@Parameter(names = "-cascade", description = "Evaluate classifiers as a cascade in the given order (cheapest " +
+			"first) until the result is confident enough according to the label thresholds of the amp instead of as " +
+			"an ensemble")
+	private boolean cascade = false;
+
+	@Parameter(names = "-inferenceWorkspaces", description = "Do inference in workspaces so that steady state " +
+			"classification does not allocate")
+	private boolean inferenceWorkspaces = false;
+
+	@Parameter(names = "-inferenceBundles", description = "Load classifiers from inference bundles created by " +
+			"InferenceGraphExport instead of from stored models")
+	private boolean inferenceBundles = false;
+
+	@Parameter(names = "-loadThreads", description = "Number of threads to load classifiers on. Classifiers are " +
+			"loaded in sequence if <= 1")
+	private int loadThreads = Runtime.getRuntime().availableProcessors();
+
 	// Make parameter if ever needed? Or maybe needs to figure out type from name?
-	private ClassifierFactory factory = (name, inputProvider) -> new StoredGraphClassifier(name, inputProvider);
+	private ClassifierFactory factory = (name, inputProvider) -> new StoredGraphClassifier(name, inputProvider, inferenceWorkspaces);
+
+	/**
+	 * Loads one {@link Classifier}. Used so that classifiers can be loaded in parallel.
+	 */
+	private interface ClassifierLoader {
+		Classifier load() throws IOException;
+	}
 
 	/**
 	 * Creates a {@link Classifier}.
@@ -54,16 +105,60 @@ public class ClassifierFromParameters {
 	 * @throws IOException
 	 */
 	public Classifier getClassifier(ClassifierInputProviderFactory inputFactory) throws IOException {
+		return getClassifier(inputFactory, Collections.emptyMap());
+	}
 
-		List<Classifier> classifierList = new ArrayList<>();
+	/**
+	 * Creates a {@link Classifier}.
+	 *
+	 * @param inputFactory Factory for creating input to the classifier
+	 * @param confidenceThresholds Probability per label needed to stop evaluation if classifiers shall be a cascade
+	 * @return a {@link Classifier}
+	 * @throws IOException
+	 */
+	public Classifier getClassifier(
+			ClassifierInputProviderFactory inputFactory,
+			Map<Integer, Double> confidenceThresholds) throws IOException {
+
+		// Change detection needs to see the exact input its member classifies
+		final List<PinnedInputProvider> inputProviders = new ArrayList<>();
+		final List<ClassifierLoader> loaders = new ArrayList<>();
 		for(String classifierName: classifiers) {
-            final ClassifierInputProvider inputProvider = inputFactory.createInputProvider(classifierName);
-			classifierList.add(factory.create(classifierName, inputProvider));
+			if(inferenceBundles) {
+				final InferenceBundle bundle = InferenceBundle.map(Paths.get(StoredGraphClassifier.getBundleFileName(classifierName)));
+				final PinnedInputProvider inputProvider = new PinnedInputProvider(inputFactory.createInputProvider(bundle.getInputDescription()));
+				inputProviders.add(inputProvider);
+				loaders.add(() -> new StoredGraphClassifier(bundle, inputProvider, inferenceWorkspaces));
+			} else {
+				final PinnedInputProvider inputProvider = new PinnedInputProvider(inputFactory.createInputProvider(classifierName));
+				inputProviders.add(inputProvider);
+				loaders.add(() -> factory.create(classifierName, inputProvider));
+			}
+		}
+
+		final List<Classifier> loaded = loadClassifiers(loaders);
+		List<Classifier> classifierList = new ArrayList<>();
+		for(int i = 0; i < loaded.size(); i++) {
+			Classifier member = new TimedClassifier(
+					loaded.get(i),
+					Latencies.histogram("inference.member" + i));
+			if(reuseThreshold > 0) {
+				member = new ChangeDetectionClassifier(member, inputProviders.get(i), reuseThreshold, maxNrofReuses, reuseNrofBins);
+			}
+			classifierList.add(member);
 		}
 
 		Classifier ret;
-		if(classifierList.size() > 0) {
-			ret = new EnsembleWeightedSumClassifier(classifierList, EnsembleWeightedSumClassifier.avgNormalizer);
+		if(cascade) {
+			ret = new CascadeClassifier(classifierList, confidenceThresholds);
+		} else if(classifierList.size() > 0) {
+			ret = ensembleThreads > 0 ?
+					new EnsembleWeightedSumClassifier(
+							classifierList,
+							EnsembleWeightedSumClassifier.avgNormalizer,
+							createEnsembleExecutor(),
+							(long) (ensembleDeadlineMs * 1e6)) :
+					new EnsembleWeightedSumClassifier(classifierList, EnsembleWeightedSumClassifier.avgNormalizer);
 		} else {
 			ret = classifierList.get(0);
 		}
@@ -77,6 +172,48 @@ public class ClassifierFromParameters {
 		return ret;
 	}
 
+	private List<Classifier> loadClassifiers(List<ClassifierLoader> loaders) throws IOException {
+		final List<Classifier> loaded = new ArrayList<>();
+		if(loadThreads <= 1 || loaders.size() <= 1) {
+			for(ClassifierLoader loader: loaders) {
+				loaded.add(loader.load());
+			}
+			return loaded;
+		}
+
+		final ExecutorService loadExecutor = Executors.newFixedThreadPool(Math.min(loadThreads, loaders.size()));
+		try {
+			final List<Future<Classifier>> pending = new ArrayList<>();
+			for(ClassifierLoader loader: loaders) {
+				pending.add(loadExecutor.submit(loader::load));
+			}
+			for(Future<Classifier> classifier: pending) {
+				loaded.add(classifier.get());
+			}
+			return loaded;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading classifiers!", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to load classifier!", e.getCause());
+		} finally {
+			loadExecutor.shutdownNow();
+		}
+	}
+
+	private ExecutorService createEnsembleExecutor() {
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		return Executors.newFixedThreadPool(ensembleThreads, runnable -> {
+			final Thread thread = new Thread(runnable, "ensemble-member-" + threadCount.getAndIncrement());
+			// Classifiers have no lifecycle so threads must not keep the application alive
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
 	/**
 	 * Sets the factory for creating classifiers from classifier name. Intended use is testing.
 	 *
@@ -3,27 +3,43 @@ package ampcontrol.model.inference;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.impl.transforms.OldSoftMax;
 import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.function.BiFunction;
 
 /**
  * Ensemble classifier which sums the accuracy weighted probabilities from a list of {@link Classifier Classifiers}
  * and normalizes the result through the provided {@link BiFunction} which gets the weighted sum and the sum of the
  * individual classifiers as input.
+ * <br><br>
+ * Members may optionally classify in parallel on a given {@link ExecutorService} with a deadline for each
+ * classification. Members which miss the deadline are left out of the weighted sum for that classification (so that
+ * the sum of accuracies only includes members which made it) and are counted. A member which has not finished its
+ * previous classification is not asked to classify again until it has and its late result is used in the first
+ * classification after it is done. If no member makes the deadline, the first one to finish is waited for.
  *
  * @author Christian Skärby
  */
 class EnsembleWeightedSumClassifier implements Classifier {
 
+    private static final Logger log = LoggerFactory.getLogger(EnsembleWeightedSumClassifier.class);
 
-    final static BiFunction<Double, INDArray, INDArray>  avgNormalizer = (sumAcc, aggClass) -> aggClass.div(sumAcc);
+    final static BiFunction<Double, INDArray, INDArray>  avgNormalizer = (sumAcc, aggClass) -> aggClass.divi(sumAcc);
     final static BiFunction<Double, INDArray, INDArray> softMaxNormalizer =  (sumAcc, aggClass) -> Nd4j.getExecutioner().execAndReturn(new OldSoftMax(aggClass));
 
     private final List<Classifier> ensemble;
     private final BiFunction<Double, INDArray, INDArray> normalizer;
     private final double accuracy;
+    private final ExecutorService executor;
+    private final long deadlineNanos;
+    private final Future<INDArray>[] pending;
+    private final BlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+    private long nrofMisses = 0;
+    private INDArray weightedSum;
 
     /**
      * Constructor
@@ -33,8 +49,28 @@ class EnsembleWeightedSumClassifier implements Classifier {
      */
     EnsembleWeightedSumClassifier(List<? extends Classifier> ensemble,
                                          BiFunction<Double, INDArray, INDArray> normalizer) {
+        this(ensemble, normalizer, null, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ensemble the ensemble for which classifications are combined
+     * @param normalizer defines how to renormalize the weighted sum into a probability vector
+     * @param executor runs the classifications of the members in parallel. Members classify in sequence in the
+     *                 calling thread if null
+     * @param deadlineNanos time from start of classification after which members which are not done are left out.
+     *                      No deadline if <= 0
+     */
+    EnsembleWeightedSumClassifier(List<? extends Classifier> ensemble,
+                                  BiFunction<Double, INDArray, INDArray> normalizer,
+                                  ExecutorService executor,
+                                  long deadlineNanos) {
         this.ensemble = new ArrayList<>(ensemble);
         this.normalizer = normalizer;
+        this.executor = executor;
+        this.deadlineNanos = deadlineNanos;
+        this.pending = createPending(ensemble.size());
         accuracy = ensemble.stream()
         		.mapToDouble(Classifier::getAccuracy)
         		.max()
@@ -43,17 +79,107 @@ class EnsembleWeightedSumClassifier implements Classifier {
 
     @Override
     public INDArray classify() {
-        INDArray ret = null;
+        if (executor != null) {
+            return classifyParallel();
+        }
         double sumAcc = 0;
+        boolean first = true;
         for(Classifier classifier: ensemble) {
+            if(first) {
+                weightedSum = InPlace.scale(weightedSum, classifier.classify(), classifier.getAccuracy());
+                first = false;
+            } else {
+                InPlace.addScaled(weightedSum, classifier.classify(), classifier.getAccuracy());
+            }
         	sumAcc += classifier.getAccuracy();
-            if(ret == null) {
-                ret = classifier.classify().mul(classifier.getAccuracy());
+        }
+        return normalizer.apply(sumAcc, weightedSum);
+    }
+
+    private INDArray classifyParallel() {
+        final long deadline = System.nanoTime() + deadlineNanos;
+        for (int i = 0; i < ensemble.size(); i++) {
+            // Members which missed a previous deadline are not asked again until done
+            if (pending[i] == null) {
+                final Classifier classifier = ensemble.get(i);
+                final int index = i;
+                pending[i] = executor.submit(() -> {
+                    try {
+                        return classifier.classify();
+                    } finally {
+                        completed.offer(index);
+                    }
+                });
+            }
+        }
+
+        final INDArray[] results = new INDArray[ensemble.size()];
+        int nrofDone = 0;
+        try {
+            while (nrofDone < results.length) {
+                Integer index = deadlineNanos > 0 ?
+                        completed.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) :
+                        completed.take();
+                if (index == null && nrofDone == 0) {
+                    // Better late than never
+                    index = completed.take();
+                }
+                if (index == null) {
+                    break;
+                }
+                final Future<INDArray> future = pending[index];
+                pending[index] = null;
+                results[index] = getResult(future);
+                nrofDone++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for classification!", e);
+        }
+
+        double sumAcc = 0;
+        boolean first = true;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                nrofMisses++;
+                log.debug("Member " + i + " missed deadline. Total misses: " + nrofMisses);
+                continue;
+            }
+            final double memberAcc = ensemble.get(i).getAccuracy();
+            sumAcc += memberAcc;
+            if (first) {
+                weightedSum = InPlace.scale(weightedSum, results[i], memberAcc);
+                first = false;
             } else {
-            	ret.addi(classifier.classify().mul(classifier.getAccuracy()));
+                InPlace.addScaled(weightedSum, results[i], memberAcc);
             }
         }
-        return normalizer.apply(sumAcc, ret);//ret.div(sumAcc);
+        return normalizer.apply(sumAcc, weightedSum);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Future<INDArray>[] createPending(int size) {
+        return (Future<INDArray>[]) new Future<?>[size];
+    }
+
+    private static INDArray getResult(Future<INDArray> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for classification!", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Classification failed!", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the total number of times a member has missed the deadline
+     *
+     * @return the total number of misses
+     */
+    long getNrofMisses() {
+        return nrofMisses;
     }
 
 	@Override
@@ -29,9 +29,11 @@ class EwmaClassifier implements Classifier {
     @Override
     public INDArray classify() {
         if(state == null) {
-            state = sourceClassifier.classify();
+            // Source might reuse its output
+            state = sourceClassifier.classify().dup();
         } else {
-            state.muli(ff_1).addi(sourceClassifier.classify().mul(ff));
+            state.muli(ff_1);
+            InPlace.addScaled(state, sourceClassifier.classify(), ff);
         }
         return state;
     }
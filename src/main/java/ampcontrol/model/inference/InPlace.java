@@ -0,0 +1,47 @@
+package ampcontrol.model.inference;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Element wise arithmetic on classifications which reuses the destination array so that steady state classification
+ * does not allocate. Classifications are small (one element per label) so elements are simply iterated over.
+ *
+ * @author Christian Skärby
+ */
+final class InPlace {
+
+    private InPlace() {
+        // No instances
+    }
+
+    /**
+     * Sets dest to scale * src. A new array is created if dest is null or does not have the same length as src.
+     *
+     * @param dest  array to reuse. May be null
+     * @param src   array to scale
+     * @param scale scale factor
+     * @return dest or a new array if dest could not be reused
+     */
+    static INDArray scale(INDArray dest, INDArray src, double scale) {
+        if (dest == null || dest.length() != src.length()) {
+            return src.mul(scale);
+        }
+        for (int i = 0; i < src.length(); i++) {
+            dest.putScalar(i, scale * src.getDouble(i));
+        }
+        return dest;
+    }
+
+    /**
+     * Sets dest to dest + scale * src
+     *
+     * @param dest  array to add to
+     * @param src   array to scale and add
+     * @param scale scale factor
+     */
+    static void addScaled(INDArray dest, INDArray src, double scale) {
+        for (int i = 0; i < src.length(); i++) {
+            dest.putScalar(i, dest.getDouble(i) + scale * src.getDouble(i));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ampcontrol.model.inference;
+
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Inference only model format which is quick to load. A bundle is a single file which contains everything needed to
+ * create a {@link Classifier}: The configuration of the {@link ComputationGraph}, the description of the input (i.e.
+ * what is given to {@link ampcontrol.audio.ClassifierInputProviderFactory}), the accuracy and the flattened parameters.
+ * <br><br>
+ * Unlike models stored with {@link org.deeplearning4j.util.ModelSerializer} there is no zip and no updater state.
+ * All numbers are little endian. Parameters are stored as float or half precision float starting at an aligned
+ * offset so that the file can be memory mapped and the parameters bulk copied into the parameters of the model.
+ * <pre>
+ * int    magic number
+ * int    format version
+ * byte   parameter type, 0 = float, 1 = half
+ * double accuracy
+ * int    length of input description followed by input description (UTF-8)
+ * int    length of configuration followed by configuration json (UTF-8)
+ * long   number of parameters
+ *        padding up to next multiple of {@value #paramAlignment} bytes
+ *        parameters
+ * </pre>
+ *
+ * @author Christian Skärby
+ */
+final class InferenceBundle {
+
+    static final String fileSuffix = ".bundle";
+
+    private static final int magic = 0x41434942; // "ACIB"
+    private static final int version = 1;
+    private static final byte floatType = 0;
+    private static final byte halfType = 1;
+    private static final int paramAlignment = 64;
+
+    private final String inputDescription;
+    private final double accuracy;
+    private final String configJson;
+    private final ByteBuffer paramBuffer;
+    private final byte paramType;
+    private final long nrofParams;
+
+    private InferenceBundle(String inputDescription, double accuracy, String configJson, ByteBuffer paramBuffer, byte paramType, long nrofParams) {
+        this.inputDescription = inputDescription;
+        this.accuracy = accuracy;
+        this.configJson = configJson;
+        this.paramBuffer = paramBuffer;
+        this.paramType = paramType;
+        this.nrofParams = nrofParams;
+    }
+
+    /**
+     * Maps the bundle in the given file. Parameters are not read until {@link #createGraph()} is called.
+     *
+     * @param file file to map
+     * @return an {@link InferenceBundle}
+     * @throws IOException if the file could not be read or is not a bundle
+     */
+    static InferenceBundle map(Path file) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mapped.getInt() != magic) {
+            throw new IOException(file + " is not an inference bundle!");
+        }
+        final int fileVersion = mapped.getInt();
+        if (fileVersion != version) {
+            throw new IOException("Unsupported version of " + file + ": " + fileVersion + "!");
+        }
+        final byte paramType = mapped.get();
+        if (paramType != floatType && paramType != halfType) {
+            throw new IOException("Unsupported parameter type of " + file + ": " + paramType + "!");
+        }
+        final double accuracy = mapped.getDouble();
+        final String inputDescription = readString(mapped);
+        final String configJson = readString(mapped);
+        final long nrofParams = mapped.getLong();
+
+        mapped.position(align(mapped.position()));
+        final ByteBuffer paramBuffer = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (paramBuffer.remaining() < nrofParams * bytesPerParam(paramType)) {
+            throw new IOException(file + " is truncated!");
+        }
+        return new InferenceBundle(inputDescription, accuracy, configJson, paramBuffer, paramType, nrofParams);
+    }
+
+    /**
+     * Writes the given model as a bundle to the given file
+     *
+     * @param file             file to write to
+     * @param graph            model to write
+     * @param inputDescription description of the input to the model
+     * @param accuracy         estimated accuracy of the model
+     * @param half             true if parameters shall be stored in half precision
+     * @throws IOException if the file could not be written
+     */
+    static void write(Path file, ComputationGraph graph, String inputDescription, double accuracy, boolean half) throws IOException {
+        final byte[] descriptionBytes = inputDescription.getBytes(StandardCharsets.UTF_8);
+        final byte[] configBytes = graph.getConfiguration().toJson().getBytes(StandardCharsets.UTF_8);
+        final float[] params = graph.params().data().asFloat();
+        final byte paramType = half ? halfType : floatType;
+
+        final int headerSize = align(4 + 4 + 1 + 8 + 4 + descriptionBytes.length + 4 + configBytes.length + 8);
+        final ByteBuffer buffer = ByteBuffer.allocate(headerSize + params.length * bytesPerParam(paramType))
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(magic)
+                .putInt(version)
+                .put(paramType)
+                .putDouble(accuracy)
+                .putInt(descriptionBytes.length)
+                .put(descriptionBytes)
+                .putInt(configBytes.length)
+                .put(configBytes)
+                .putLong(params.length);
+        buffer.position(headerSize);
+        if (half) {
+            for (float param : params) {
+                buffer.putShort((short) HalfIndexer.fromFloat(param));
+            }
+        } else {
+            buffer.asFloatBuffer().put(params);
+        }
+        buffer.rewind();
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Creates the {@link ComputationGraph} of the bundle. Parameters are copied from the mapped file in bulk, converted
+     * in bulk first if they are not stored with the same data type as is used by ND4J.
+     *
+     * @return a new {@link ComputationGraph}
+     */
+    ComputationGraph createGraph() {
+        final INDArray params = Nd4j.create(1, nrofParams);
+        final DataBuffer data = params.data();
+        final ByteBuffer src = paramBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        src.limit((int) nrofParams * bytesPerParam(paramType));
+
+        if (paramType == floatType && data.dataType() == DataBuffer.Type.FLOAT) {
+            data.asNio().order(ByteOrder.nativeOrder()).asFloatBuffer().put(src.asFloatBuffer());
+        } else if (paramType == halfType && data.dataType() == DataBuffer.Type.HALF) {
+            data.asNio().order(ByteOrder.nativeOrder()).asShortBuffer().put(src.asShortBuffer());
+        } else if (paramType == floatType && data.dataType() == DataBuffer.Type.HALF) {
+            final FloatBuffer srcParams = src.asFloatBuffer();
+            final short[] halfParams = new short[(int) nrofParams];
+            for (int i = 0; i < halfParams.length; i++) {
+                halfParams[i] = (short) HalfIndexer.fromFloat(srcParams.get(i));
+            }
+            data.asNio().order(ByteOrder.nativeOrder()).asShortBuffer().put(halfParams);
+        } else {
+            final float[] floatParams = new float[(int) nrofParams];
+            if (paramType == halfType) {
+                final ShortBuffer srcParams = src.asShortBuffer();
+                for (int i = 0; i < floatParams.length; i++) {
+                    floatParams[i] = HalfIndexer.toFloat(srcParams.get(i) & 0xFFFF);
+                }
+            } else {
+                src.asFloatBuffer().get(floatParams);
+            }
+            data.setData(floatParams);
+        }
+        // Writes through the nio buffers above are not tracked by backends which keep a copy on a device
+        Nd4j.getAffinityManager().tagLocation(params, AffinityManager.Location.HOST);
+
+        final ComputationGraph graph = new ComputationGraph(ComputationGraphConfiguration.fromJson(configJson));
+        graph.init(params, false);
+        return graph;
+    }
+
+    /**
+     * Returns the description of the input to the model
+     *
+     * @return the description of the input to the model
+     */
+    String getInputDescription() {
+        return inputDescription;
+    }
+
+    /**
+     * Returns the estimated accuracy of the model
+     *
+     * @return the estimated accuracy of the model
+     */
+    double getAccuracy() {
+        return accuracy;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int align(int position) {
+        return (position + paramAlignment - 1) / paramAlignment * paramAlignment;
+    }
+
+    private static int bytesPerParam(byte paramType) {
+        return paramType == halfType ? 2 : 4;
+    }
+}
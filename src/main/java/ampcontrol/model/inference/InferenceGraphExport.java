@@ -0,0 +1,266 @@
+package ampcontrol.model.inference;
+
+import ampcontrol.model.training.model.evolve.mutate.util.ForwardOf;
+import ampcontrol.model.training.model.validation.listen.BestEvalScore;
+import ampcontrol.model.training.model.vertex.ChannelMultVertex;
+import ampcontrol.model.training.model.vertex.ElementWiseVertexLatest;
+import ampcontrol.model.training.model.vertex.EpsilonSpyVertex;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration.GraphBuilder;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Rewrites a trained {@link ComputationGraph} for inference so that it is cheaper to evaluate:
+ * <ul>
+ * <li>{@link EpsilonSpyVertex EpsilonSpyVertices} and {@link DropoutLayer DropoutLayers} are removed as they are
+ * identity at inference.</li>
+ * <li>{@link BatchNormalization} is folded into the weights and bias of the preceding {@link ConvolutionLayer} or
+ * {@link DenseLayer} if the latter has identity activation and is only input to the batch normalization. Batch
+ * normalization which can not be folded, e.g. when an activation is applied before it, is kept.</li>
+ * </ul>
+ * Output of the rewritten graph is the same as for the original graph within numerical precision. Can be run as an
+ * application which exports a stored model to a new model or to an {@link InferenceBundle} which can be loaded by
+ * {@link StoredGraphClassifier}.
+ *
+ * @author Christian Skärby
+ */
+public class InferenceGraphExport {
+
+    private static final Logger log = LoggerFactory.getLogger(InferenceGraphExport.class);
+
+    @Parameter(names = "-model", description = "Path to model to export, same as for -classifiers", required = true)
+    private String modelName;
+
+    @Parameter(names = "-exportSuffix", description = "Suffix to add to model path for the exported model")
+    private String exportSuffix = "_inference";
+
+    @Parameter(names = "-verifyInputShape", description = "Comma separated shape of random input to verify that " +
+            "output of the exported model matches the original, e.g. 1,2,128,64. No verification if not set")
+    private List<Long> verifyInputShape = new ArrayList<>();
+
+    @Parameter(names = "-bundle", description = "Export as an InferenceBundle which is loaded with -inferenceBundles " +
+            "instead of as a stored model")
+    private boolean bundle = false;
+
+    @Parameter(names = "-bundleHalf", description = "Store parameters of the InferenceBundle in half precision")
+    private boolean bundleHalf = false;
+
+    @Parameter(names = "-tolerance", description = "Largest allowed relative difference in output when verifying")
+    private double tolerance = 1e-3;
+
+    public static void main(String[] args) throws IOException {
+        final InferenceGraphExport export = new InferenceGraphExport();
+        JCommander.newBuilder().addObject(export).build().parse(args);
+        export.export();
+    }
+
+    /**
+     * Loads the model, rewrites it for inference and stores it together with its score, either as a model or as an
+     * {@link InferenceBundle}
+     *
+     * @throws IOException if model could not be loaded or stored
+     */
+    void export() throws IOException {
+        NeuralNetConfiguration.registerLegacyCustomClassesForJSON(
+                ChannelMultVertex.class, ElementWiseVertexLatest.class, EpsilonSpyVertex.class);
+
+        final String fileName = StoredGraphClassifier.getHashedFileNameFromModelName(modelName);
+        final ComputationGraph graph = ModelSerializer.restoreComputationGraph(fileName, false);
+        final ComputationGraph inferenceGraph = rewrite(graph);
+        log.info("Rewrote graph with " + graph.getNumLayers() + " layers and " + graph.numParams() + " parameters " +
+                "to " + inferenceGraph.getNumLayers() + " layers and " + inferenceGraph.numParams() + " parameters");
+
+        if (!verifyInputShape.isEmpty()) {
+            final INDArray input = Nd4j.randn(verifyInputShape.stream().mapToLong(Long::longValue).toArray());
+            final INDArray expected = graph.outputSingle(input);
+            final double diff = Transforms.abs(expected.sub(inferenceGraph.outputSingle(input))).maxNumber().doubleValue()
+                    / Math.max(Transforms.abs(expected).maxNumber().doubleValue(), Double.MIN_NORMAL);
+            log.info("Relative difference in output: " + diff);
+            if (diff > tolerance) {
+                throw new IllegalStateException("Output of exported model differs from original by " + diff + "!");
+            }
+        }
+
+        if (bundle) {
+            InferenceBundle.write(
+                    Paths.get(StoredGraphClassifier.getBundleFileName(modelName + exportSuffix)),
+                    inferenceGraph,
+                    Paths.get(modelName).getFileName().toString(),
+                    new BestEvalScore(fileName + ".score").get(),
+                    bundleHalf);
+        } else {
+            final String exportFileName = StoredGraphClassifier.getHashedFileNameFromModelName(modelName + exportSuffix);
+            ModelSerializer.writeModel(inferenceGraph, exportFileName, false);
+            if (new File(fileName + ".score").exists()) {
+                Files.copy(Paths.get(fileName + ".score"), Paths.get(exportFileName + ".score"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        log.info("Exported " + modelName + " to " + modelName + exportSuffix);
+    }
+
+    /**
+     * Returns a new {@link ComputationGraph} which gives the same output as the given graph at inference but without
+     * vertices which are identity at inference and with batch normalization folded into preceding layers when
+     * possible. The given graph is not modified.
+     *
+     * @param graph graph to rewrite
+     * @return a rewritten graph
+     */
+    public static ComputationGraph rewrite(ComputationGraph graph) {
+        final GraphBuilder builder = new GraphBuilder(
+                graph.getConfiguration().clone(),
+                new NeuralNetConfiguration.Builder(graph.conf().clone()));
+
+        final Map<String, Map<String, INDArray>> params = new HashMap<>();
+        for (org.deeplearning4j.nn.graph.vertex.GraphVertex vertex : graph.getVertices()) {
+            if (vertex.numParams() > 0) {
+                params.put(vertex.getVertexName(), vertex.paramTable(false).entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().dup())));
+            }
+        }
+
+        for (String name : graph.getConfiguration().getTopologicalOrderStr()) {
+            final GraphVertex vertex = builder.getVertices().get(name);
+            if (vertex instanceof EpsilonSpyVertex || isLayer(vertex, DropoutLayer.class)) {
+                bypass(builder, name);
+            } else if (isLayer(vertex, BatchNormalization.class)) {
+                foldBatchNorm(builder, name, params);
+            }
+        }
+
+        final ComputationGraph inferenceGraph = new ComputationGraph(builder.build());
+        inferenceGraph.init();
+        for (org.deeplearning4j.nn.graph.vertex.GraphVertex vertex : inferenceGraph.getVertices()) {
+            if (vertex.numParams() > 0) {
+                vertex.paramTable(false).forEach((key, view) ->
+                        view.assign(params.get(vertex.getVertexName()).get(key)));
+            }
+        }
+        return inferenceGraph;
+    }
+
+    private static void foldBatchNorm(GraphBuilder builder, String bnName, Map<String, Map<String, INDArray>> params) {
+        final List<String> inputs = builder.getVertexInputs().get(bnName);
+        if (inputs.size() != 1 || !canBypass(builder, bnName)) {
+            return;
+        }
+        final String prevName = inputs.get(0);
+        final GraphVertex prevVertex = builder.getVertices().get(prevName);
+        if (!(isLayer(prevVertex, ConvolutionLayer.class) || isLayer(prevVertex, DenseLayer.class))
+                || builder.getNetworkOutputs().contains(prevName)
+                || new ForwardOf(builder).children(prevName).count() != 1) {
+            log.info("Can not fold " + bnName + " into " + prevName);
+            return;
+        }
+
+        final BaseLayer prevLayer = (BaseLayer) ((LayerVertex) prevVertex).getLayerConf().getLayer();
+        final boolean convolution = prevLayer instanceof ConvolutionLayer;
+        // Subclasses such as Deconvolution2D have other weight layouts
+        final boolean plainConvolution = prevLayer.getClass() == ConvolutionLayer.class
+                || prevLayer.getClass() == Convolution2D.class;
+        final boolean hasBias = convolution ? ((ConvolutionLayer) prevLayer).hasBias() : ((DenseLayer) prevLayer).hasBias();
+        if (!(prevLayer.getActivationFn() instanceof ActivationIdentity)
+                || (convolution && !plainConvolution)
+                || !hasBias) {
+            log.info("Can not fold " + bnName + " into " + prevName);
+            return;
+        }
+
+        final BatchNormalization bn = (BatchNormalization) ((LayerVertex) builder.getVertices().get(bnName)).getLayerConf().getLayer();
+        final Map<String, INDArray> bnParams = params.get(bnName);
+        final INDArray mean = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        final INDArray var = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_VAR);
+        final INDArray gamma = bn.isLockGammaBeta() ?
+                Nd4j.valueArrayOf(mean.shape(), bn.getGamma()) :
+                bnParams.get(BatchNormalizationParamInitializer.GAMMA);
+        final INDArray beta = bn.isLockGammaBeta() ?
+                Nd4j.valueArrayOf(mean.shape(), bn.getBeta()) :
+                bnParams.get(BatchNormalizationParamInitializer.BETA);
+
+        // y = gamma * (x - mean) / sqrt(var + eps) + beta = scale * x + beta - scale * mean
+        final INDArray scale = gamma.div(Transforms.sqrt(var.add(bn.getEps()), false)).reshape(1, mean.length());
+        final Map<String, INDArray> prevParams = params.get(prevName);
+        final INDArray weights = prevParams.get(DefaultParamInitializer.WEIGHT_KEY);
+        final INDArray bias = prevParams.get(DefaultParamInitializer.BIAS_KEY);
+        if (convolution) {
+            // Weights are [nOut, nIn, kH, kW]
+            final long nOut = weights.size(0);
+            prevParams.put(DefaultParamInitializer.WEIGHT_KEY, weights.dup('c')
+                    .reshape('c', nOut, weights.length() / nOut)
+                    .muliColumnVector(scale.reshape(nOut, 1))
+                    .reshape('c', weights.shape()));
+        } else {
+            // Weights are [nIn, nOut]
+            prevParams.put(DefaultParamInitializer.WEIGHT_KEY, weights.mulRowVector(scale));
+        }
+        prevParams.put(DefaultParamInitializer.BIAS_KEY, bias.reshape(scale.shape())
+                .sub(mean.reshape(scale.shape()))
+                .muli(scale)
+                .addi(beta.reshape(scale.shape()))
+                .reshape(bias.shape()));
+
+        // Activation of prevLayer is kept as identity since the batch normalization layer implementation does not
+        // apply its activation function
+        log.info("Fold " + bnName + " into " + prevName);
+        bypass(builder, bnName);
+    }
+
+    private static void bypass(GraphBuilder builder, String name) {
+        if (!canBypass(builder, name)) {
+            log.info("Can not remove " + name);
+            return;
+        }
+        final String input = builder.getVertexInputs().get(name).get(0);
+        final List<String> outputs = new ForwardOf(builder).children(name).collect(Collectors.toList());
+
+        log.info("Remove " + name);
+        builder.removeVertex(name, false);
+        for (String output : outputs) {
+            final GraphVertex vertex = builder.getVertices().get(output);
+            final String[] newInputs = builder.getVertexInputs().get(output).stream()
+                    .map(outputInput -> outputInput.equals(name) ? input : outputInput)
+                    .toArray(String[]::new);
+            builder.removeVertex(output, false);
+            builder.addVertex(output, vertex, newInputs);
+        }
+        if (builder.getNetworkOutputs().contains(name)) {
+            builder.setOutputs(builder.getNetworkOutputs().stream()
+                    .map(output -> output.equals(name) ? input : output)
+                    .toArray(String[]::new));
+        }
+    }
+
+    private static boolean canBypass(GraphBuilder builder, String name) {
+        final GraphVertex vertex = builder.getVertices().get(name);
+        // Preprocessors would need to be moved to the outputs
+        return builder.getVertexInputs().get(name).size() == 1
+                && !(vertex instanceof LayerVertex && ((LayerVertex) vertex).getPreProcessor() != null);
+    }
+
+    private static boolean isLayer(GraphVertex vertex, Class<? extends Layer> layerClass) {
+        return vertex instanceof LayerVertex && layerClass.isInstance(((LayerVertex) vertex).getLayerConf().getLayer());
+    }
+}
@@ -0,0 +1,60 @@
+package ampcontrol.model.inference;
+
+import ampcontrol.audio.ClassifierInputProvider;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * {@link ClassifierInputProvider} which can pin the input of another {@link ClassifierInputProvider} so that all reads
+ * return the same array until it is unpinned, even if the source provider is updated in between. Used when something
+ * needs to look at the exact input a wrapped {@link Classifier} classifies. Input is pinned and read from the same
+ * thread.
+ *
+ * @author Christian Skärby
+ */
+class PinnedInputProvider implements ClassifierInputProvider {
+
+    private final ClassifierInputProvider sourceProvider;
+    private INDArray pinned;
+
+    PinnedInputProvider(ClassifierInputProvider sourceProvider) {
+        this.sourceProvider = sourceProvider;
+    }
+
+    /**
+     * Pins the current input of the source provider
+     *
+     * @return the pinned input
+     */
+    INDArray pin() {
+        if (pinned != null) {
+            throw new IllegalStateException("Input already pinned!");
+        }
+        pinned = sourceProvider.acquireModelInput();
+        return pinned;
+    }
+
+    /**
+     * Unpins input pinned by {@link #pin()}
+     */
+    void unpin() {
+        sourceProvider.releaseModelInput(pinned);
+        pinned = null;
+    }
+
+    @Override
+    public INDArray getModelInput() {
+        return pinned != null ? pinned : sourceProvider.getModelInput();
+    }
+
+    @Override
+    public INDArray acquireModelInput() {
+        return pinned != null ? pinned : sourceProvider.acquireModelInput();
+    }
+
+    @Override
+    public void releaseModelInput(INDArray input) {
+        if (input != pinned) {
+            sourceProvider.releaseModelInput(input);
+        }
+    }
+}
@@ -172,7 +172,8 @@ class SpyClassifier implements Classifier {
     private INDArray accumulate(boolean shallReset, INDArray toAccum, INDArray input) {
         //int[] shape = input.shape();
         if(shallReset) {
-            toAccum = input.get(NDArrayIndex.point(0), NDArrayIndex.point(0), NDArrayIndex.all(), NDArrayIndex.all());
+            // Input might be reused by the provider
+            toAccum = input.get(NDArrayIndex.point(0), NDArrayIndex.point(0), NDArrayIndex.all(), NDArrayIndex.all()).dup();
         } else {
             toAccum = Nd4j.vstack(toAccum, input.get(NDArrayIndex.point(0), NDArrayIndex.point(0), NDArrayIndex.all(), NDArrayIndex.all()));
         }
@@ -2,37 +2,105 @@ package ampcontrol.model.inference;
 
 import ampcontrol.audio.ClassifierInputProvider;
 import ampcontrol.model.training.model.validation.listen.BestEvalScore;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.util.ModelSerializer;
 import org.jetbrains.annotations.NotNull;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link Classifier} which loads a stored {@link ComputationGraph}.
- * TODO: Add testcase with some minimal model(s)
+ * <br><br>
+ * Can optionally do inference in workspaces so that steady state classification does not allocate: Activations are
+ * placed in the inference workspace of the model and the output is placed in a workspace of this class from which it
+ * is copied into an array which is reused between classifications. Workspaces are per thread so classification may
+ * happen from any thread, although not concurrently.
  *
  * @author Christian Skärby
  */
 public class StoredGraphClassifier implements Classifier {
 
+	private static final String bestSuffix = "_best";
+	private static final AtomicInteger instanceCount = new AtomicInteger(0);
+	private static final WorkspaceConfiguration outputWorkspaceConfig = WorkspaceConfiguration.builder()
+			.policyAllocation(AllocationPolicy.STRICT)
+			.policyLearning(LearningPolicy.FIRST_LOOP)
+			.policyReset(ResetPolicy.BLOCK_LEFT)
+			.policySpill(SpillPolicy.REALLOCATE)
+			.initialSize(0)
+			.build();
+
 	private final ComputationGraph model;
 	private final ClassifierInputProvider inputProvider;
 	private final double accuracy;
-	private static final String bestSuffix = "_best";
+	private final boolean useWorkspaces;
+	private final String outputWorkspaceName = "StoredGraphClassifierOutputWs" + instanceCount.getAndIncrement();
+	private INDArray output;
 
 	StoredGraphClassifier(String path, final ClassifierInputProvider inputProvider) throws IOException {
-		final String realFileName = getHashedFileNameFromModelName(path);
-		this.model = ModelSerializer.restoreComputationGraph(realFileName, false);
+		this(path, inputProvider, false);
+	}
+
+	StoredGraphClassifier(String path, final ClassifierInputProvider inputProvider, boolean useWorkspaces) throws IOException {
+		this(restore(path), inputProvider, new BestEvalScore(getHashedFileNameFromModelName(path) + ".score").get(), useWorkspaces);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param bundle        {@link InferenceBundle} to create model from
+	 * @param inputProvider provides input to the model
+	 * @param useWorkspaces true if inference shall be done in workspaces
+	 */
+	StoredGraphClassifier(InferenceBundle bundle, ClassifierInputProvider inputProvider, boolean useWorkspaces) {
+		this(bundle.createGraph(), inputProvider, bundle.getAccuracy(), useWorkspaces);
+	}
 
+	/**
+	 * Constructor
+	 *
+	 * @param model         model to classify with
+	 * @param inputProvider provides input to the model
+	 * @param accuracy      estimated accuracy of the model
+	 * @param useWorkspaces true if inference shall be done in workspaces
+	 */
+	StoredGraphClassifier(ComputationGraph model, ClassifierInputProvider inputProvider, double accuracy, boolean useWorkspaces) {
+		this.model = model;
 		this.inputProvider = inputProvider;
-		this.accuracy = new BestEvalScore(realFileName + ".score").get();
+		this.accuracy = accuracy;
+		this.useWorkspaces = useWorkspaces;
+		if (useWorkspaces) {
+			model.getConfiguration().setInferenceWorkspaceMode(WorkspaceMode.ENABLED);
+		}
+	}
+
+	private static ComputationGraph restore(String path) throws IOException {
+		return ModelSerializer.restoreComputationGraph(getHashedFileNameFromModelName(path), false);
+	}
+
+	/**
+	 * Returns the name of the {@link InferenceBundle} file for the given model
+	 *
+	 * @param path path to model
+	 * @return the name of the bundle file
+	 */
+	static String getBundleFileName(String path) {
+		return getHashedFileNameFromModelName(path) + InferenceBundle.fileSuffix;
 	}
 
 	@NotNull
-	private static String getHashedFileNameFromModelName(String path) {
+	static String getHashedFileNameFromModelName(String path) {
 		final String modelName = Paths.get(path).getFileName().toString();
 		String pathHashCode = modelName;
 		String suffix = "";
@@ -45,7 +113,25 @@ public class StoredGraphClassifier implements Classifier {
 
 	@Override
 	public INDArray classify() {
-		return model.outputSingle(inputProvider.getModelInput());
+		// Other classifiers may read from the same input provider concurrently
+		final INDArray input = inputProvider.acquireModelInput();
+		try {
+			if (!useWorkspaces) {
+				return model.outputSingle(input);
+			}
+
+			try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(outputWorkspaceConfig, outputWorkspaceName)) {
+				final INDArray wsOutput = model.output(false, ws, input)[0];
+				if (output == null) {
+					output = wsOutput.detach();
+				} else {
+					output.assign(wsOutput);
+				}
+			}
+			return output;
+		} finally {
+			inputProvider.releaseModelInput(input);
+		}
 	}
 	
 	@Override
@@ -0,0 +1,39 @@
+package ampcontrol.model.inference;
+
+import ampcontrol.admin.service.latency.LatencyHistogram;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Records the time it takes for a source {@link Classifier} to classify in a {@link LatencyHistogram}.
+ *
+ * @author Christian Skärby
+ */
+class TimedClassifier implements Classifier {
+
+    private final Classifier sourceClassifier;
+    private final LatencyHistogram histogram;
+
+    /**
+     * Constructor
+     *
+     * @param sourceClassifier {@link Classifier} to time
+     * @param histogram        Histogram to record times in
+     */
+    TimedClassifier(Classifier sourceClassifier, LatencyHistogram histogram) {
+        this.sourceClassifier = sourceClassifier;
+        this.histogram = histogram;
+    }
+
+    @Override
+    public INDArray classify() {
+        final long startTime = System.nanoTime();
+        final INDArray classification = sourceClassifier.classify();
+        histogram.recordSince(startTime);
+        return classification;
+    }
+
+    @Override
+    public double getAccuracy() {
+        return sourceClassifier.getAccuracy();
+    }
+}
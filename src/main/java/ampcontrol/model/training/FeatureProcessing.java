@@ -0,0 +1,53 @@
+package ampcontrol.model.training;
+
+import ampcontrol.audio.processing.NoProcessing;
+import ampcontrol.audio.processing.ProcessingResult;
+import ampcontrol.model.training.data.iterators.factory.Cnn2D;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Decides where features for training are computed. Either each example is processed when it is provided by a
+ * {@link ampcontrol.model.training.data.DataProvider} or examples are provided unprocessed and a whole minibatch is
+ * processed at once by the {@link ampcontrol.model.training.data.iterators.Cnn2DDataSetIterator} using vectorized
+ * ND4J operations.
+ *
+ * @author Christian Skärby
+ */
+class FeatureProcessing {
+
+    private final ProcessingResult.Factory processing;
+    private final boolean perBatch;
+
+    /**
+     * Constructor
+     *
+     * @param processing Processing which computes features
+     * @param perBatch   Process a whole minibatch at once if true, else process each example
+     */
+    FeatureProcessing(ProcessingResult.Factory processing, boolean perBatch) {
+        this.processing = processing;
+        this.perBatch = perBatch;
+    }
+
+    /**
+     * Returns processing to apply to each example when it is provided
+     *
+     * @return processing to apply to each example
+     */
+    Supplier<ProcessingResult.Factory> exampleProcessing() {
+        return perBatch ? NoProcessing::new : () -> processing;
+    }
+
+    /**
+     * Returns a factory for iterators which create minibatches of examples from {@link #exampleProcessing()}
+     *
+     * @param batchSize Batch size to use
+     * @param labels    Ordered list of label names
+     * @return a {@link Cnn2D}
+     */
+    Cnn2D iteratorFactory(int batchSize, List<String> labels) {
+        return perBatch ? new Cnn2D(batchSize, labels, processing) : new Cnn2D(batchSize, labels);
+    }
+}
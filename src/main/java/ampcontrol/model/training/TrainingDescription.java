@@ -5,7 +5,6 @@ import ampcontrol.model.training.data.AudioDataProvider.AudioProcessorBuilder;
 import ampcontrol.model.training.data.*;
 import ampcontrol.model.training.data.iterators.MiniEpochDataSetIterator;
 import ampcontrol.model.training.data.iterators.factory.AutoFromSize;
-import ampcontrol.model.training.data.iterators.factory.Cnn2D;
 import ampcontrol.model.training.data.processing.SilenceProcessor;
 import ampcontrol.model.training.data.state.ResetableStateFactory;
 import ampcontrol.model.training.model.ModelHandle;
@@ -48,6 +47,8 @@ public class TrainingDescription {
     private final static int trainBatchSize = 32;
     private final static int evalBatchSize = 32;
     private final static double evalSetPercentage = 2;
+    // Process features for a whole minibatch at once with ND4J instead of for each example in Java
+    private final static boolean batchProcessing = false;
 
     /**
      * Maps a double valued identifier to a training or evaluation set respectively.
@@ -79,7 +80,9 @@ public class TrainingDescription {
         ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
         root.setLevel(Level.INFO);
 
-        DataTypeUtil.setDTypeForContext(DataBuffer.Type.HALF);
+        // Batch processing computes features (e.g. log, mean and mel filter bank) in the data type of ND4J for which
+        // half precision is too coarse. Processing of single examples is always done in double precision.
+        DataTypeUtil.setDTypeForContext(batchProcessing ? DataBuffer.Type.FLOAT : DataBuffer.Type.HALF);
 
         List<ModelHandle> modelData = new ArrayList<>();
 
@@ -120,9 +123,21 @@ public class TrainingDescription {
     }
 
     private static void createModels(final ProcessingResult.Factory audioPostProcessingFactory, final int timeWindowSize, List<ModelHandle> modelData, int trainingSeed) {
-        final SilenceProcessor silence = new SilenceProcessor(clipSamplingRate * clipLengthMs / (1000 / timeWindowSize) / 1000, () -> audioPostProcessingFactory);
+        final ResetableStateFactory trainingStateFactory = new ResetableStateFactory(trainingSeed);
+        final ResetableStateFactory evalStateFactory = new ResetableStateFactory(666);
+
+        final ProcessingResult.Factory trainFactory = new Pipe(
+                new RandScale(1000, 10, trainingStateFactory.createNewRandom()),
+                audioPostProcessingFactory
+        );
+        final FeatureProcessing trainProcessing = new FeatureProcessing(trainFactory, batchProcessing);
+        final FeatureProcessing evalProcessing = new FeatureProcessing(audioPostProcessingFactory, batchProcessing);
+
+        final int silenceWindowSize = clipSamplingRate * clipLengthMs / (1000 / timeWindowSize) / 1000;
+        final SilenceProcessor silence = new SilenceProcessor(silenceWindowSize, () -> audioPostProcessingFactory);
+        final SilenceProcessor exampleSilence = new SilenceProcessor(silenceWindowSize, evalProcessing.exampleProcessing());
         Map<String, AudioProcessorBuilder> labelToBuilder = new LinkedHashMap<>();
-        labelToBuilder.put("silence", () -> silence);
+        labelToBuilder.put("silence", () -> exampleSilence);
         labelToBuilder = Collections.unmodifiableMap(labelToBuilder);
         MultiplyLabelExpander labelExpander = new MultiplyLabelExpander()
                 .addExpansion("noise", 20)
@@ -133,16 +148,8 @@ public class TrainingDescription {
                 .addExpansion("rythm", 100)
                 .addExpansion("lead", 100);
 
-        final ResetableStateFactory trainingStateFactory = new ResetableStateFactory(trainingSeed);
-        final ResetableStateFactory evalStateFactory = new ResetableStateFactory(666);
-
-        final ProcessingResult.Factory trainFactory = new Pipe(
-                new RandScale(1000, 10, trainingStateFactory.createNewRandom()),
-                audioPostProcessingFactory
-        );
-
-        final DataProviderBuilder train = new TrainingDataProviderBuilder(labelToBuilder, labelExpander, clipLengthMs, timeWindowSize, () -> trainFactory, trainingStateFactory);
-        final DataProviderBuilder eval = new EvalDataProviderBuilder(labelToBuilder, labelExpanderEval, clipLengthMs, timeWindowSize, () -> audioPostProcessingFactory, evalStateFactory);
+        final DataProviderBuilder train = new TrainingDataProviderBuilder(labelToBuilder, labelExpander, clipLengthMs, timeWindowSize, trainProcessing.exampleProcessing(), trainingStateFactory);
+        final DataProviderBuilder eval = new EvalDataProviderBuilder(labelToBuilder, labelExpanderEval, clipLengthMs, timeWindowSize, evalProcessing.exampleProcessing(), evalStateFactory);
         mapFilesToDataSets(train, eval);
 
         // This knowledge needs to move somewhere else when multiple inputs are implemented
@@ -155,7 +162,7 @@ public class TrainingDescription {
         final AutoFromSize<DataProvider> dataSetIteratorFactory = new AutoFromSize<>(5L * 1024L * 1024L * 1024L);
         final MiniEpochDataSetIterator trainIter = dataSetIteratorFactory.create(AutoFromSize.Input.<DataProvider>builder()
                 .sourceInput(train.createProvider())
-                .sourceFactory(new Cnn2D(trainBatchSize, labels))
+                .sourceFactory(trainProcessing.iteratorFactory(trainBatchSize, labels))
                 .batchSize(trainBatchSize)
                 .dataSetShape(inputShape)
                 .dataSetSize(trainingIterations)
@@ -166,7 +173,7 @@ public class TrainingDescription {
         log.info("Nrof eval files: " + eval.getNrofFiles() + " nrof eval examples: " + evalSize);
         final MiniEpochDataSetIterator evalIter = dataSetIteratorFactory.create(AutoFromSize.Input.<DataProvider>builder()
                 .sourceInput(eval.createProvider())
-                .sourceFactory(new Cnn2D(evalBatchSize, labels))
+                .sourceFactory(evalProcessing.iteratorFactory(evalBatchSize, labels))
                 .batchSize(evalBatchSize)
                 .dataSetShape(inputShape)
                 .dataSetSize(evalSize)
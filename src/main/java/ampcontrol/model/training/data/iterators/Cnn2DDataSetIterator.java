@@ -1,5 +1,8 @@
 package ampcontrol.model.training.data.iterators;
 
+import ampcontrol.audio.processing.BatchProcessing;
+import ampcontrol.audio.processing.FlatProcessing;
+import ampcontrol.audio.processing.ProcessingResult;
 import ampcontrol.model.training.data.DataProvider;
 import ampcontrol.model.training.data.DataProvider.TrainingData;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -10,8 +13,11 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -30,15 +36,19 @@ public class Cnn2DDataSetIterator implements DataSetIterator {
     private final int batchSize;
     private final List<String> labels;
 
+    private final ProcessingResult.Factory batchProcessing;
+    // Compiled per thread as BatchProcessing is not thread safe while next may be called from several threads
+    private final ThreadLocal<Map<FlatProcessing.Shape, BatchProcessing>> compiledBatchProcessing =
+            ThreadLocal.withInitial(HashMap::new);
+
     private DataSetPreProcessor preProcessor;
 
-    private final static class DataAccumulator implements Consumer<TrainingData> {
-        private final int batchSize;
+    private abstract static class DataAccumulator implements Consumer<TrainingData> {
         private final List<String> labels;
+        private final INDArray labelsArr;
 
-        private INDArray featureArr;
-        private INDArray labelsArr;
-        private int batchCnt = 0;
+        final int batchSize;
+        int batchCnt = 0;
 
         private DataAccumulator(int batchSize, List<String> labels) {
             this.batchSize = batchSize;
@@ -48,8 +58,45 @@ public class Cnn2DDataSetIterator implements DataSetIterator {
 
         @Override
         public synchronized void accept(TrainingData data) {
-            List<double[][]> features = data.result().stream()
-                    .collect(Collectors.toList());
+            addFeatures(data.result().stream().collect(Collectors.toList()));
+            final int labelInd = labels.indexOf(data.getLabel());
+            labelsArr.putScalar(batchCnt, labelInd, 1.0);
+
+            batchCnt++;
+        }
+
+        /**
+         * Adds the features of example batchCnt
+         *
+         * @param features features to add
+         */
+        abstract void addFeatures(List<double[][]> features);
+
+        /**
+         * Returns features of all accumulated examples
+         *
+         * @return features of shape [batchSize, nrofChannels, nrofRows, nrofCols]
+         */
+        abstract INDArray createFeatures();
+
+        private DataSet create() {
+            return new DataSet(createFeatures(), labelsArr);
+        }
+    }
+
+    /**
+     * Puts already processed features into the feature array.
+     */
+    private final static class ProcessedFeatureAccumulator extends DataAccumulator {
+
+        private INDArray featureArr;
+
+        private ProcessedFeatureAccumulator(int batchSize, List<String> labels) {
+            super(batchSize, labels);
+        }
+
+        @Override
+        void addFeatures(List<double[][]> features) {
             for (int featureInd = 0; featureInd < features.size(); featureInd++) {
                 double[][] feature = features.get(featureInd);
                 if (featureArr == null) {
@@ -64,22 +111,76 @@ public class Cnn2DDataSetIterator implements DataSetIterator {
                                 NDArrayIndex.all()},
                         Nd4j.create(feature, 'f'));
             }
-            final int labelInd = labels.indexOf(data.getLabel());
-            labelsArr.putScalar(batchCnt, labelInd, 1.0);
+        }
 
-            batchCnt++;
+        @Override
+        INDArray createFeatures() {
+            return featureArr;
         }
+    }
 
-        private DataSet create() {
-            return new DataSet(featureArr, labelsArr);
+    /**
+     * Collects unprocessed input from all examples into one matrix which is processed as a batch.
+     */
+    private final static class RawInputAccumulator extends DataAccumulator {
+
+        private final Function<FlatProcessing.Shape, BatchProcessing> batchProcessing;
+        private FlatProcessing.Shape inputShape;
+        private double[] flatInput;
+        private INDArray inputArr;
+
+        private RawInputAccumulator(int batchSize, List<String> labels, Function<FlatProcessing.Shape, BatchProcessing> batchProcessing) {
+            super(batchSize, labels);
+            this.batchProcessing = batchProcessing;
+        }
+
+        @Override
+        void addFeatures(List<double[][]> features) {
+            if (inputArr == null) {
+                inputShape = new FlatProcessing.Shape(features.size(), features.get(0).length, features.get(0)[0].length);
+                flatInput = new double[inputShape.getSize()];
+                inputArr = Nd4j.createUninitialized(new int[]{batchSize, inputShape.getSize()}, 'c');
+            }
+            int ind = 0;
+            for (double[][] feature : features) {
+                for (double[] row : feature) {
+                    System.arraycopy(row, 0, flatInput, ind, row.length);
+                    ind += row.length;
+                }
+            }
+            inputArr.putRow(batchCnt, Nd4j.create(flatInput));
         }
 
+        @Override
+        INDArray createFeatures() {
+            final BatchProcessing batch = batchProcessing.apply(inputShape);
+            final FlatProcessing.Shape shape = batch.getOutputShape();
+            return batch.process(inputArr)
+                    .reshape('c', batchSize, shape.getNrofChannels(), shape.getNrofRows(), shape.getNrofCols());
+        }
     }
 
     public Cnn2DDataSetIterator(DataProvider dataProvider, int batchSize, List<String> labels) {
+        this(dataProvider, batchSize, labels, null);
+    }
+
+    /**
+     * Constructor for batch processing. The given {@link DataProvider} shall provide unprocessed input, e.g. raw
+     * audio windows. The given processing is applied to all examples of a batch at once through
+     * {@link ProcessingResult.Factory#compileBatch(FlatProcessing.Shape)}. Note that batch processing is done in the
+     * data type of ND4J, e.g. in half precision if that is used for training, while processing of single examples is
+     * done in double precision.
+     *
+     * @param dataProvider    provides unprocessed input
+     * @param batchSize       batch size
+     * @param labels          ordered list of label names
+     * @param batchProcessing processing to apply to each batch or null if input is already processed
+     */
+    public Cnn2DDataSetIterator(DataProvider dataProvider, int batchSize, List<String> labels, ProcessingResult.Factory batchProcessing) {
         this.dataProvider = dataProvider;
         this.batchSize = batchSize;
         this.labels = labels;
+        this.batchProcessing = batchProcessing;
     }
 
     @Override
@@ -95,7 +196,9 @@ public class Cnn2DDataSetIterator implements DataSetIterator {
     @Override
     public DataSet next(int num) {
 
-        final DataAccumulator dataAcc = new DataAccumulator(num, labels);
+        final DataAccumulator dataAcc = batchProcessing == null
+                ? new ProcessedFeatureAccumulator(num, labels)
+                : new RawInputAccumulator(num, labels, this::compileBatch);
         dataProvider.generateData().limit(num)
                 .forEach(dataAcc);
         DataSet ds = dataAcc.create();
@@ -105,6 +208,10 @@ public class Cnn2DDataSetIterator implements DataSetIterator {
         return ds;
     }
 
+    private BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+        return compiledBatchProcessing.get().computeIfAbsent(inputShape, batchProcessing::compileBatch);
+    }
+
     @Override
     public int inputColumns() {
         throw new UnsupportedOperationException("Anybody needs this?");
@@ -1,5 +1,6 @@
 package ampcontrol.model.training.data.iterators.factory;
 
+import ampcontrol.audio.processing.ProcessingResult;
 import ampcontrol.model.training.data.DataProvider;
 import ampcontrol.model.training.data.iterators.Cnn2DDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
@@ -15,6 +16,7 @@ public class Cnn2D implements DataSetIteratorFactory<DataSetIterator, DataProvid
 
     private final int batchSize;
     private final List<String> labels;
+    private final ProcessingResult.Factory batchProcessing;
 
     /**
      * Constructor
@@ -22,12 +24,23 @@ public class Cnn2D implements DataSetIteratorFactory<DataSetIterator, DataProvid
      * @param labels Ordered list of label names
      */
     public Cnn2D(int batchSize, List<String> labels) {
+        this(batchSize, labels, null);
+    }
+
+    /**
+     * Constructor
+     * @param batchSize Batch size to use
+     * @param labels Ordered list of label names
+     * @param batchProcessing Processing to apply to each batch of unprocessed input
+     */
+    public Cnn2D(int batchSize, List<String> labels, ProcessingResult.Factory batchProcessing) {
         this.batchSize = batchSize;
         this.labels = labels;
+        this.batchProcessing = batchProcessing;
     }
 
     @Override
     public DataSetIterator create(DataProvider dataProvider) {
-        return new Cnn2DDataSetIterator(dataProvider, batchSize, labels);
+        return new Cnn2DDataSetIterator(dataProvider, batchSize, labels, batchProcessing);
     }
 }
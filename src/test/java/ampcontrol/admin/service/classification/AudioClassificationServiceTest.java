@@ -2,13 +2,40 @@ package ampcontrol.admin.service.classification;
 
 import ampcontrol.admin.service.MockControlRegistry;
 import ampcontrol.admin.service.classifiction.AudioClassificationService;
+import ampcontrol.admin.service.classifiction.StageTiming;
 import ampcontrol.amp.ClassificationListener;
+import ampcontrol.audio.AudioInputBuffer;
+import ampcontrol.audio.AudioInputPar;
+import ampcontrol.audio.ClassifierInputProvider;
+import ampcontrol.audio.ClassifierInputProviderFactory;
+import ampcontrol.audio.NewSamplesListener;
+import ampcontrol.audio.file.FileReplayClassifierInputFactory;
 import ampcontrol.model.inference.Classifier;
 import com.beust.jcommander.JCommander;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
 
@@ -68,6 +95,433 @@ public class AudioClassificationServiceTest {
 
     }
 
+    /**
+     * Test that classification is triggered by new samples when a hop size is given
+     */
+    @Test
+    public void classifyOnNewSamples() {
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        final String params = minTimeBetweenUpdatesPar + 2 + " -hopSize 10 " + actMsgPar + actMsg;
+
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse(params.split(" "));
+
+        final MockControlRegistry registry = new MockControlRegistry();
+        final NewSamplesListener[] newSamplesListener = new NewSamplesListener[1];
+        service.registerTo(new ClassifierInputProviderFactory() {
+            @Override
+            public ClassifierInputProvider createInputProvider(String inputDescriptionString) {
+                throw new UnsupportedOperationException("Not expected!");
+            }
+
+            @Override
+            public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
+                throw new UnsupportedOperationException("Not expected!");
+            }
+
+            @Override
+            public void addNewSamplesListener(NewSamplesListener listener) {
+                newSamplesListener[0] = listener;
+            }
+
+            @Override
+            public Collection<AudioInputBuffer> getAudioInputs() {
+                return Collections.emptyList();
+            }
+        });
+        assertNotNull("No listener added!", newSamplesListener[0]);
+
+        final ProbeClassificationListener listenerProbe = new ProbeClassificationListener();
+        service.initialize(listenerProbe, dummyClassifier, () -> {/* Do nothing*/});
+        service.registerTo(registry);
+        registry.execute(actMsg);
+
+        try {
+            waitForCondition(() -> false, 5);
+            assertEquals("Classification without new samples!", 0, listenerProbe.nrofCalls);
+
+            newSamplesListener[0].newSamples(9);
+            waitForCondition(() -> false, 1);
+            assertEquals("Classification before hop!", 0, listenerProbe.nrofCalls);
+
+            newSamplesListener[0].newSamples(1);
+            waitForCondition(() -> listenerProbe.nrofCalls > 0, 2);
+            assertEquals("Incorrect number of classifications!", 1, listenerProbe.nrofCalls);
+        } finally {
+            service.stop();
+        }
+    }
+
+    /**
+     * Test that input is updated while classification is ongoing in pipelined mode
+     */
+    @Test(timeout = 20000)
+    public void pipelined() throws InterruptedException {
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        final String params = minTimeBetweenUpdatesPar + 1 + " -pipelined " + actMsgPar + actMsg;
+
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse(params.split(" "));
+
+        final MockControlRegistry registry = new MockControlRegistry();
+        final ProbeClassificationListener listenerProbe = new ProbeClassificationListener();
+        final AtomicInteger nrofUpdates = new AtomicInteger(0);
+        // Classification will not finish unless input is updated in parallel. First update and classification is
+        // done from this thread when service is initialized.
+        final Classifier waitForUpdateClassifier = new Classifier() {
+            @Override
+            public INDArray classify() {
+                final int updatesAtStart = nrofUpdates.get();
+                while (updatesAtStart > 1 && nrofUpdates.get() < updatesAtStart + 2) {
+                    Thread.yield();
+                }
+                return Nd4j.create(new double[]{0.5, 0.5});
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0;
+            }
+        };
+        service.initialize(listenerProbe, waitForUpdateClassifier, nrofUpdates::incrementAndGet);
+        service.registerTo(registry);
+        registry.execute(actMsg);
+
+        try {
+            while (listenerProbe.nrofCalls < 3) {
+                Thread.sleep(1);
+            }
+        } finally {
+            service.stop();
+        }
+
+        final Map<String, StageTiming> timings = service.getStageTimings();
+        assertEquals("Incorrect stages!", Arrays.asList("updateInput", "classify", "listener", "total"),
+                new ArrayList<>(timings.keySet()));
+        assertTrue("Incorrect timing!", timings.get("listener").getCount() >= 3);
+        assertTrue("Incorrect timing!", timings.get("classify").getCount() >= 3);
+        assertTrue("Incorrect timing!", timings.get("updateInput").getCount()
+                > timings.get("classify").getCount());
+        assertTrue("Incorrect timing!", timings.get("total").getMaxNanos()
+                >= timings.get("classify").getLastNanos());
+    }
+
+    /**
+     * Test that classifications given to the listener in pipelined mode are copies which are reused between frames
+     */
+    @Test(timeout = 20000)
+    public void pipelinedReuseClassifications() {
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        final String params = minTimeBetweenUpdatesPar + 1 + " -pipelined " + actMsgPar + actMsg;
+
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse(params.split(" "));
+
+        final MockControlRegistry registry = new MockControlRegistry();
+        // Classifier reuses its output array, just like the real ones do
+        final INDArray classifierOutput = Nd4j.create(new double[]{0, 1});
+        final AtomicInteger nrofClassifications = new AtomicInteger(0);
+        final Classifier reusingClassifier = new Classifier() {
+            @Override
+            public INDArray classify() {
+                return classifierOutput.putScalar(0, nrofClassifications.incrementAndGet());
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0;
+            }
+        };
+        final Set<INDArray> received = Collections.newSetFromMap(new IdentityHashMap<>());
+        final AtomicInteger nrofCorrupt = new AtomicInteger(0);
+        final ClassificationListener listener = probabilities -> {
+            received.add(probabilities);
+            final double before = probabilities.getDouble(0);
+            Thread.yield();
+            if (before != probabilities.getDouble(0)) {
+                nrofCorrupt.incrementAndGet();
+            }
+        };
+        service.initialize(listener, reusingClassifier, () -> {/* Ignore */});
+        service.registerTo(registry);
+        registry.execute(actMsg);
+
+        try {
+            waitForCondition(() -> service.getStageTimings().get("listener").getCount() >= 50, 10);
+        } finally {
+            service.stop();
+        }
+
+        assertTrue("Too few classifications!", service.getStageTimings().get("listener").getCount() >= 50);
+        assertFalse("Classifier output given to listener!", received.contains(classifierOutput));
+        assertTrue("Too many arrays: " + received.size() + "!", received.size() <= 3);
+        assertEquals("Classification changed while listener held it!", 0, nrofCorrupt.get());
+    }
+
+    /**
+     * Test that missed deadlines are published when classification is slower than the time between updates
+     */
+    @Test(timeout = 20000)
+    public void publishOverruns() throws InterruptedException {
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        final String overrunTopic = "overrun/topic";
+        final String params = minTimeBetweenUpdatesPar + 1 + " -overrunTopic " + overrunTopic
+                + " -overrunReportInterval 0 " + actMsgPar + actMsg;
+
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse(params.split(" "));
+
+        final MockControlRegistry registry = new MockControlRegistry();
+        final List<String> reports = new CopyOnWriteArrayList<>();
+        final Classifier slowClassifier = new Classifier() {
+            @Override
+            public INDArray classify() {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0;
+            }
+        };
+        service.initialize(new ProbeClassificationListener(), slowClassifier, () -> {/* Do nothing*/},
+                (topic, message) -> {
+                    assertEquals("Incorrect topic!", overrunTopic, topic);
+                    reports.add(message);
+                });
+        service.registerTo(registry);
+        registry.execute(actMsg);
+
+        try {
+            while (reports.size() < 3) {
+                Thread.sleep(1);
+            }
+        } finally {
+            service.stop();
+        }
+        final String lastReport = reports.get(reports.size() - 1);
+        final Matcher matcher = Pattern.compile("\\{\"missedDeadlines\":(\\d+),\"skippedFrames\":0," +
+                "\"updateIntervalMs\":1.0}").matcher(lastReport);
+        assertTrue("Incorrect report: " + lastReport, matcher.matches());
+        assertTrue("Expected missed deadlines: " + lastReport, Integer.parseInt(matcher.group(1)) > 0);
+    }
+
+    /**
+     * Test that input update and classification is skipped and a silence classification is given to listeners when
+     * audio input is silent
+     */
+    @Test(timeout = 20000)
+    public void silenceGate() throws InterruptedException {
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        final String gateTopic = "gate/topic";
+        final String params = minTimeBetweenUpdatesPar + 1 + " -silenceRmsDb -40 -silenceLabel 1 -silenceGateTopic "
+                + gateTopic + " -overrunReportInterval 0 " + actMsgPar + actMsg;
+
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse(params.split(" "));
+
+        final double[] audio = new double[100];
+        service.registerTo(new ClassifierInputProviderFactory() {
+            @Override
+            public ClassifierInputProvider createInputProvider(String inputDescriptionString) {
+                throw new UnsupportedOperationException("Not expected!");
+            }
+
+            @Override
+            public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
+                throw new UnsupportedOperationException("Not expected!");
+            }
+
+            @Override
+            public void addNewSamplesListener(NewSamplesListener listener) {
+                // Ignore
+            }
+
+            @Override
+            public Collection<AudioInputBuffer> getAudioInputs() {
+                return Collections.singletonList(audio::clone);
+            }
+        });
+
+        final MockControlRegistry registry = new MockControlRegistry();
+        final List<INDArray> classifications = new CopyOnWriteArrayList<>();
+        final List<String> reports = new CopyOnWriteArrayList<>();
+        final AtomicInteger nrofUpdates = new AtomicInteger(0);
+        final AtomicInteger nrofClassifications = new AtomicInteger(0);
+        final Classifier classifier = new Classifier() {
+            @Override
+            public INDArray classify() {
+                nrofClassifications.incrementAndGet();
+                return Nd4j.create(new double[]{0.1, 0.2, 0.3, 0.4});
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0;
+            }
+        };
+        service.initialize(classifications::add, classifier, nrofUpdates::incrementAndGet,
+                (topic, message) -> {
+                    if (topic.equals(gateTopic)) {
+                        reports.add(message);
+                    }
+                });
+        service.registerTo(registry);
+
+        // One update and classification when initialized
+        assertEquals("Incorrect number of updates!", 1, nrofUpdates.get());
+        assertEquals("Incorrect number of classifications!", 1, nrofClassifications.get());
+        registry.execute(actMsg);
+
+        try {
+            while (classifications.size() < 3) {
+                Thread.sleep(1);
+            }
+        } finally {
+            service.stop();
+        }
+        assertEquals("Input was updated!", 1, nrofUpdates.get());
+        assertEquals("Classification was done!", 1, nrofClassifications.get());
+        for (INDArray classification : classifications) {
+            assertEquals("Incorrect classification!", Nd4j.create(new double[]{0, 1, 0, 0}), classification);
+        }
+        assertFalse("No report published!", reports.isEmpty());
+        final String lastReport = reports.get(reports.size() - 1);
+        final Matcher matcher = Pattern.compile("\\{\"silentFrames\":(\\d+),\"frames\":(\\d+)," +
+                "\"hitRate\":1.000}").matcher(lastReport);
+        assertTrue("Incorrect report: " + lastReport, matcher.matches());
+        assertEquals("Incorrect report: " + lastReport, matcher.group(1), matcher.group(2));
+    }
+
+    /**
+     * Test that replay of a file in lockstep mode does not stall when audio is silent so that audio after the silence
+     * is classified
+     */
+    @Test(timeout = 20000)
+    public void silenceGateLockStepReplay() throws IOException, InterruptedException {
+        final int sampleRate = 1000;
+        // Half a second of silence followed by half a second of loud audio
+        final byte[] pcm = new byte[2 * sampleRate];
+        for (int i = pcm.length / 2; i < pcm.length; i += 2) {
+            final short sample = (short) (i % 4 == 0 ? 10000 : -10000);
+            pcm[i] = (byte) sample;
+            pcm[i + 1] = (byte) (sample >> 8);
+        }
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        final FileReplayClassifierInputFactory inputFactory = createLockStepReplay(service, pcm, sampleRate,
+                minTimeBetweenUpdatesPar + 1 + " -silenceRmsDb -40 " + actMsgPar + actMsg);
+
+        inputFactory.createInputProvider("ws_20_sgpp_nopp");
+        service.registerTo(inputFactory);
+
+        final AtomicInteger nrofClassifications = new AtomicInteger(0);
+        final MockControlRegistry registry = new MockControlRegistry();
+        service.initialize(new ProbeClassificationListener(), countingClassifier(nrofClassifications),
+                inputFactory.finalizeAndReturnUpdateHandle());
+        service.registerTo(registry);
+        // One classification when initialized
+        assertEquals("Incorrect number of classifications!", 1, nrofClassifications.get());
+        registry.execute(actMsg);
+
+        try {
+            while (nrofClassifications.get() < 2) {
+                Thread.sleep(1);
+            }
+        } finally {
+            service.stop();
+        }
+    }
+
+    /**
+     * Test that classification is triggered by new samples when a file is replayed in lockstep mode with a hop size
+     * larger than the chunks written by the replay
+     */
+    @Test(timeout = 20000)
+    public void classifyOnNewSamplesLockStepReplay() throws IOException, InterruptedException {
+        final int sampleRate = 1000;
+        final byte[] pcm = new byte[2 * sampleRate];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = (byte) i;
+        }
+
+        final AudioClassificationService service = new AudioClassificationService();
+        final String actMsg = "gjkflghjghht";
+        // Hop is five chunks
+        final FileReplayClassifierInputFactory inputFactory = createLockStepReplay(service, pcm, sampleRate,
+                minTimeBetweenUpdatesPar + 1 + " -hopSize 50 " + actMsgPar + actMsg);
+        inputFactory.createInputProvider("ws_20_sgpp_nopp");
+        service.registerTo(inputFactory);
+
+        final AtomicInteger nrofClassifications = new AtomicInteger(0);
+        final MockControlRegistry registry = new MockControlRegistry();
+        service.initialize(new ProbeClassificationListener(), countingClassifier(nrofClassifications),
+                inputFactory.finalizeAndReturnUpdateHandle());
+        service.registerTo(registry);
+        registry.execute(actMsg);
+
+        try {
+            while (nrofClassifications.get() < 4) {
+                Thread.sleep(1);
+            }
+        } finally {
+            service.stop();
+        }
+    }
+
+    private static FileReplayClassifierInputFactory createLockStepReplay(
+            AudioClassificationService service,
+            byte[] pcm,
+            int sampleRate,
+            String serviceParams) throws IOException {
+        final File file = File.createTempFile("AudioClassificationServiceTest", ".wav");
+        file.deleteOnExit();
+        AudioSystem.write(
+                new AudioInputStream(new ByteArrayInputStream(pcm),
+                        new AudioFormat(sampleRate, 16, 1, true, false), pcm.length / 2),
+                AudioFileFormat.Type.WAVE,
+                file);
+
+        final AudioInputPar audioInputPar = new AudioInputPar();
+        final FileReplayClassifierInputFactory inputFactory = new FileReplayClassifierInputFactory(audioInputPar);
+        final String params = serviceParams + " -samplingRate " + sampleRate + " -replayFiles "
+                + file.getAbsolutePath() + " -replaySpeed 0 -replayChunkMs 10";
+        JCommander.newBuilder().addObject(new Object[]{service, audioInputPar, inputFactory})
+                .build()
+                .parse(params.split(" "));
+        return inputFactory;
+    }
+
+    private static Classifier countingClassifier(AtomicInteger nrofClassifications) {
+        return new Classifier() {
+            @Override
+            public INDArray classify() {
+                nrofClassifications.incrementAndGet();
+                return Nd4j.create(new double[]{0.5, 0.5});
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0;
+            }
+        };
+    }
+
     private static void waitForCondition(Supplier<Boolean> condition, long sleepTimeMs) {
         try {
             int retryCnt = 0;
@@ -82,7 +536,7 @@ public class AudioClassificationServiceTest {
 
     private static class ProbeClassificationListener implements ClassificationListener {
 
-        private int nrofCalls = 0;
+        private volatile int nrofCalls = 0;
 
         @Override
         public void indicateAudioClassification(INDArray probabilities) {
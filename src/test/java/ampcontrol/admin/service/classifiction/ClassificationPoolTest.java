@@ -0,0 +1,50 @@
+package ampcontrol.admin.service.classifiction;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link ClassificationPool}
+ *
+ * @author Christian Skärby
+ */
+public class ClassificationPoolTest {
+
+    /**
+     * Test that released arrays are reused
+     */
+    @Test
+    public void reuseReleased() {
+        final ClassificationPool pool = new ClassificationPool(2);
+        final INDArray classification = Nd4j.create(new double[]{0.1, 0.9});
+        final INDArray first = pool.copyOf(classification);
+        assertNotSame("Expected copy!", classification, first);
+        assertEquals("Incorrect output!", classification, first);
+
+        pool.release(first);
+        classification.assign(Nd4j.create(new double[]{0.7, 0.3}));
+        final INDArray second = pool.copyOf(classification);
+        assertSame("Expected reuse!", first, second);
+        assertEquals("Incorrect output!", classification, second);
+
+        assertNotSame("Expected new array!", second, pool.copyOf(classification));
+    }
+
+    /**
+     * Test that released arrays of another shape are not reused
+     */
+    @Test
+    public void otherShape() {
+        final ClassificationPool pool = new ClassificationPool(2);
+        final INDArray released = pool.copyOf(Nd4j.create(new double[]{0.1, 0.9}));
+        pool.release(released);
+
+        final INDArray classification = Nd4j.create(new double[]{0.2, 0.3, 0.5});
+        final INDArray copy = pool.copyOf(classification);
+        assertNotSame("Expected new array!", released, copy);
+        assertEquals("Incorrect output!", classification, copy);
+    }
+}
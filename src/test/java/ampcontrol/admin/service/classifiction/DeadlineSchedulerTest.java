@@ -0,0 +1,110 @@
+package ampcontrol.admin.service.classifiction;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link DeadlineScheduler}
+ *
+ * @author Christian Skärby
+ */
+public class DeadlineSchedulerTest {
+
+    /**
+     * Test that next deadline is one interval after current deadline when on time
+     */
+    @Test
+    public void nextDeadlineOnTime() {
+        final DeadlineScheduler scheduler = new DeadlineScheduler(10, 10, 5);
+        assertEquals("Incorrect deadline!", 110, scheduler.nextDeadline(100, 100));
+        assertEquals("Incorrect deadline!", 110, scheduler.nextDeadline(100, 109));
+        assertEquals("Incorrect number of missed deadlines!", 0, scheduler.getNrofMissedDeadlines());
+    }
+
+    /**
+     * Test that missed deadlines are skipped and counted
+     */
+    @Test
+    public void nextDeadlineLate() {
+        final DeadlineScheduler scheduler = new DeadlineScheduler(10, 10, 5);
+        assertEquals("Incorrect deadline!", 130, scheduler.nextDeadline(100, 125));
+        assertEquals("Incorrect number of missed deadlines!", 2, scheduler.getNrofMissedDeadlines());
+    }
+
+    /**
+     * Test that frames older than one interval are skipped
+     */
+    @Test
+    public void isTooOld() {
+        final DeadlineScheduler scheduler = new DeadlineScheduler(10, 10, 5);
+        assertFalse("Frame shall not be too old!", scheduler.isTooOld(100, 110));
+        assertTrue("Frame shall be too old!", scheduler.isTooOld(100, 111));
+        assertEquals("Incorrect number of skipped frames!", 1, scheduler.getNrofSkippedFrames());
+    }
+
+    /**
+     * Test that the interval is adapted to the 95th percentile of busy times within the given bounds
+     */
+    @Test
+    public void adaptInterval() {
+        final DeadlineScheduler scheduler = new DeadlineScheduler(100, 1000, 20);
+        assertEquals("Incorrect interval!", 100, scheduler.getIntervalNanos());
+
+        for (int i = 0; i < 19; i++) {
+            scheduler.recordBusyTime(500);
+        }
+        scheduler.recordBusyTime(100000);
+        // 95th percentile of 20 busy times is the 19th largest
+        assertEquals("Incorrect interval!", 600, scheduler.getIntervalNanos());
+
+        scheduler.recordBusyTime(100000);
+        assertEquals("Incorrect interval!", 1000, scheduler.getIntervalNanos());
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.recordBusyTime(10);
+        }
+        assertEquals("Incorrect interval!", 100, scheduler.getIntervalNanos());
+    }
+
+    /**
+     * Test that interval is not adapted if bounds are equal
+     */
+    @Test
+    public void fixedInterval() {
+        final DeadlineScheduler scheduler = new DeadlineScheduler(100, 100, 20);
+        scheduler.recordBusyTime(100000);
+        assertEquals("Incorrect interval!", 100, scheduler.getIntervalNanos());
+    }
+
+    /**
+     * Test that task is executed repeatedly and that slow executions result in missed deadlines
+     */
+    @Test(timeout = 20000)
+    public void start() throws InterruptedException {
+        final DeadlineScheduler scheduler = new DeadlineScheduler(1_000_000, 1_000_000, 20);
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final AtomicInteger nrofExecutions = new AtomicInteger(0);
+        try {
+            scheduler.start(executor, () -> {
+                if (nrofExecutions.incrementAndGet() == 2) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            while (nrofExecutions.get() < 5) {
+                Thread.sleep(1);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("Expected missed deadlines!", scheduler.getNrofMissedDeadlines() >= 5);
+    }
+}
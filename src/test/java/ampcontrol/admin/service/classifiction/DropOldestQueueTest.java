@@ -0,0 +1,50 @@
+package ampcontrol.admin.service.classifiction;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link DropOldestQueue}
+ *
+ * @author Christian Skärby
+ */
+public class DropOldestQueueTest {
+
+    /**
+     * Test that the oldest elements are dropped when queue is full
+     */
+    @Test
+    public void dropOldest() throws InterruptedException {
+        final DropOldestQueue<Integer> queue = new DropOldestQueue<>(2);
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals("Incorrect number dropped!", 0, queue.getNrofDropped());
+        queue.offer(3);
+        queue.offer(4);
+        assertEquals("Incorrect number dropped!", 2, queue.getNrofDropped());
+
+        assertEquals("Incorrect element!", Integer.valueOf(3), queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals("Incorrect element!", Integer.valueOf(4), queue.poll(0, TimeUnit.MILLISECONDS));
+        assertNull("Expected empty queue!", queue.poll(1, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test that dropped elements are given to the drop listener
+     */
+    @Test
+    public void onDrop() throws InterruptedException {
+        final List<Integer> dropped = new ArrayList<>();
+        final DropOldestQueue<Integer> queue = new DropOldestQueue<>(1, dropped::add);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        assertEquals("Incorrect dropped elements!", Arrays.asList(1, 2), dropped);
+        assertEquals("Incorrect element!", Integer.valueOf(3), queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,80 @@
+package ampcontrol.admin.service.classifiction;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link HopSignal}
+ *
+ * @author Christian Skärby
+ */
+public class HopSignalTest {
+
+    private final static long shortTimeout = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Test that a signal is given after every hop size new samples
+     */
+    @Test
+    public void signalAfterHop() {
+        final HopSignal signal = new HopSignal(10);
+        signal.newSamples(4);
+        assertFalse("Expected no signal!", signal.await(shortTimeout));
+        signal.newSamples(4);
+        assertFalse("Expected no signal!", signal.await(shortTimeout));
+        signal.newSamples(4);
+        assertTrue("Expected signal!", signal.await(shortTimeout));
+        // 2 samples left from last hop
+        signal.newSamples(7);
+        assertFalse("Expected no signal!", signal.await(shortTimeout));
+        signal.newSamples(1);
+        assertTrue("Expected signal!", signal.await(shortTimeout));
+    }
+
+    /**
+     * Test that several hops while consumer is busy result in one signal
+     */
+    @Test
+    public void coalesce() {
+        final HopSignal signal = new HopSignal(3);
+        signal.newSamples(3);
+        signal.newSamples(3);
+        signal.newSamples(3);
+        assertTrue("Expected signal!", signal.await(shortTimeout));
+        assertFalse("Expected no signal!", signal.await(shortTimeout));
+        assertEquals("Incorrect number of coalesced hops!", 2, signal.getNrofCoalesced());
+    }
+
+    /**
+     * Test that pending signals are cleared
+     */
+    @Test
+    public void clear() {
+        final HopSignal signal = new HopSignal(3);
+        signal.newSamples(3);
+        signal.clear();
+        assertFalse("Expected no signal!", signal.await(shortTimeout));
+    }
+
+    /**
+     * Test that a waiting consumer is woken up by a hop from another thread
+     */
+    @Test(timeout = 20000)
+    public void wakeUp() throws InterruptedException {
+        final HopSignal signal = new HopSignal(5);
+        final Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            signal.newSamples(5);
+        });
+        producer.start();
+        assertTrue("Expected signal!", signal.await(TimeUnit.SECONDS.toNanos(10)));
+        producer.join();
+    }
+}
@@ -0,0 +1,52 @@
+package ampcontrol.admin.service.latency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link Latencies}
+ *
+ * @author Christian Skärby
+ */
+public class LatenciesTest {
+
+    /**
+     * Test that the same histogram is returned for the same name
+     */
+    @Test
+    public void histogram() {
+        assertSame("Expected same histogram!", Latencies.histogram("LatenciesTest.same"),
+                Latencies.histogram("LatenciesTest.same"));
+        assertNotSame("Expected different histogram!", Latencies.histogram("LatenciesTest.same"),
+                Latencies.histogram("LatenciesTest.other"));
+    }
+
+    /**
+     * Test that histograms are formatted as JSON in microseconds
+     */
+    @Test
+    public void toJson() {
+        final LatencyHistogram histogram = Latencies.histogram("LatenciesTest.json");
+        histogram.record(20_000);
+        histogram.record(20_000);
+        histogram.record(3_000_000);
+        Latencies.histogram("LatenciesTest.emptyJson");
+
+        final String json = Latencies.toJson();
+        assertTrue("Incorrect json: " + json,
+                json.contains("\"LatenciesTest.json\":{\"n\":3,\"p50\":20,\"p99\":3000,\"max\":3000}"));
+        assertFalse("Empty histogram in json: " + json, json.contains("LatenciesTest.emptyJson"));
+        assertTrue("Incorrect json: " + json, json.startsWith("{") && json.endsWith("}"));
+    }
+
+    /**
+     * Test that all histograms are in the table
+     */
+    @Test
+    public void toTable() {
+        Latencies.histogram("LatenciesTest.table").record(1_500_000);
+        final String table = Latencies.toTable();
+        assertTrue("Histogram not in table: " + table, table.matches("(?s).*LatenciesTest.table\\s+1\\s+1.500.*"));
+    }
+}
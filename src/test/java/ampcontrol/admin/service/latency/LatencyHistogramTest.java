@@ -0,0 +1,69 @@
+package ampcontrol.admin.service.latency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link LatencyHistogram}
+ *
+ * @author Christian Skärby
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test that each value maps to a bucket whose upper bound is within the relative error from the value
+     */
+    @Test
+    public void bucketBounds() {
+        int lastIndex = -1;
+        for (long value = 0; value < 1 << 20; value++) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            final long highest = LatencyHistogram.highestValueInBucket(index);
+            assertTrue("Value " + value + " larger than bucket upper bound " + highest + "!", value <= highest);
+            assertTrue("Too large error for value " + value + ": " + highest + "!", highest - value <= value / 32);
+            assertTrue("Buckets not monotonic at " + value + "!", index == lastIndex || index == lastIndex + 1);
+            lastIndex = index;
+        }
+        assertEquals("Incorrect upper bound!", Long.MAX_VALUE,
+                LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Test that percentiles are computed correctly
+     */
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals("Incorrect count!", 1000, snapshot.getCount());
+        assertEquals("Incorrect max!", 1000_000, snapshot.getMax());
+        assertEquals("Incorrect p50!", 500_000, snapshot.getValueAtPercentile(50), 500_000 / 32);
+        assertEquals("Incorrect p99!", 990_000, snapshot.getValueAtPercentile(99), 990_000 / 32);
+        assertEquals("Incorrect p100!", 1000_000, snapshot.getValueAtPercentile(100));
+        assertEquals("Incorrect p0!", 1000, snapshot.getValueAtPercentile(0), 1000 / 32);
+    }
+
+    /**
+     * Test that an empty histogram gives 0 for all percentiles
+     */
+    @Test
+    public void empty() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals("Incorrect count!", 0, snapshot.getCount());
+        assertEquals("Incorrect p99!", 0, snapshot.getValueAtPercentile(99));
+    }
+
+    /**
+     * Test that negative values are recorded as 0
+     */
+    @Test
+    public void negative() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-17);
+        assertEquals("Incorrect p50!", 0, histogram.snapshot().getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,60 @@
+package ampcontrol.admin.service.latency;
+
+import ampcontrol.admin.service.MockControlRegistry;
+import com.beust.jcommander.JCommander;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link LatencyService}
+ *
+ * @author Christian Skärby
+ */
+public class LatencyServiceTest {
+
+    /**
+     * Test that latencies are published periodically until stopped
+     */
+    @Test(timeout = 20000)
+    public void publish() throws InterruptedException {
+        final String topic = "latency/topic";
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        final LatencyService service = new LatencyService((actualTopic, message) -> {
+            assertEquals("Incorrect topic!", topic, actualTopic);
+            messages.add(message);
+        });
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse("-latencyTopic", topic, "-latencyPublishInterval", "1");
+
+        Latencies.histogram("LatencyServiceTest.publish").record(1000);
+        service.registerTo(new MockControlRegistry());
+        try {
+            while (messages.size() < 2) {
+                Thread.sleep(1);
+            }
+        } finally {
+            service.stop();
+        }
+        assertTrue("Incorrect message: " + messages.get(0), messages.get(0).contains("LatencyServiceTest.publish"));
+    }
+
+    /**
+     * Test that nothing is published if interval is 0 and that the dump message is registered
+     */
+    @Test
+    public void noPublish() {
+        final LatencyService service = new LatencyService((topic, message) -> fail("Nothing shall be published!"));
+        JCommander.newBuilder().addObject(service)
+                .build()
+                .parse("-latencyPublishInterval", "0", "-latencyDumpMsg", "dumpIt");
+        final MockControlRegistry registry = new MockControlRegistry();
+        service.registerTo(registry);
+        registry.execute("dumpIt");
+        service.stop();
+    }
+}
@@ -0,0 +1,47 @@
+package ampcontrol.audio;
+
+import ampcontrol.audio.file.FileReplayClassifierInputFactory;
+import ampcontrol.audio.line.LineClassifierInputFactory;
+import com.beust.jcommander.JCommander;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link AudioInputFromParameters}
+ *
+ * @author Christian Skärby
+ */
+public class AudioInputFromParametersTest {
+
+    /**
+     * Test that the selected factory is created
+     */
+    @Test
+    public void createLine() {
+        final AudioInputFromParameters audioInput = new AudioInputFromParameters();
+        JCommander.newBuilder().addObject(audioInput).build().parse("-audioInput", "line", "-channel", "1");
+        assertEquals("Incorrect factory!", LineClassifierInputFactory.class, audioInput.createFactory().getClass());
+    }
+
+    /**
+     * Test that the file replay factory is created
+     */
+    @Test
+    public void createFile() {
+        final AudioInputFromParameters audioInput = new AudioInputFromParameters();
+        JCommander.newBuilder().addObject(audioInput).build().parse("-audioInput", "file", "-replayFiles", "a.wav,b.wav");
+        assertEquals("Incorrect factory!", FileReplayClassifierInputFactory.class,
+                audioInput.createFactory().getClass());
+    }
+
+    /**
+     * Test that an exception is thrown for unknown audio input
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void createUnknown() {
+        final AudioInputFromParameters audioInput = new AudioInputFromParameters();
+        JCommander.newBuilder().addObject(audioInput).build().parse("-audioInput", "notAnInput");
+        audioInput.createFactory();
+    }
+}
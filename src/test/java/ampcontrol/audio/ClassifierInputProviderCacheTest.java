@@ -0,0 +1,52 @@
+package ampcontrol.audio;
+
+import ampcontrol.audio.processing.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test cases for {@link ClassifierInputProviderCache}
+ *
+ * @author Christian Skärby
+ */
+public class ClassifierInputProviderCacheTest {
+
+    /**
+     * Test that processing is shared between inputs and that input is the same as for non-shared inputs
+     */
+    @Test
+    public void sharedProcessing() {
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(300, 1);
+        final ProcessingResult.Factory first = new Pipe(new Spectrogram(64, 16), new Fork(new Log10(), new Ycoord()));
+        final ProcessingResult.Factory second = new Pipe(new Spectrogram(64, 16), new Fork(new Log10(), new ZeroMean()));
+
+        final ClassifierInputProviderCache cache = new ClassifierInputProviderCache();
+        final ClassifierInputProvider firstInput = cache.get(buffer, first);
+        final ClassifierInputProvider secondInput = cache.get(buffer, second);
+        assertSame("Expected same input!", firstInput, cache.get(buffer, first));
+        // spgr, spgr->lg10, spgr->ycoord, spgr->fork(lg10, ycoord), spgr->zm, spgr->fork(lg10, zm)
+        assertEquals("Incorrect number of stages!", 6, cache.getNrofStages(buffer));
+
+        final ClassifierInputProvider.Updatable firstExpected = new Cnn2DInputProvider(buffer, () -> first);
+        final ClassifierInputProvider.Updatable secondExpected = new Cnn2DInputProvider(buffer, () -> second);
+        final ClassifierInputProvider.UpdateHandle updateHandle = cache.getUpdateHandle();
+        final Random rng = new Random(666);
+        for (int i = 0; i < 3; i++) {
+            final float[] samples = new float[100];
+            for (int j = 0; j < samples.length; j++) {
+                samples[j] = (float) rng.nextGaussian();
+            }
+            buffer.write(samples);
+
+            updateHandle.updateInput();
+            firstExpected.updateInput();
+            secondExpected.updateInput();
+            assertEquals("Incorrect input!", firstExpected.getModelInput(), firstInput.getModelInput());
+            assertEquals("Incorrect input!", secondExpected.getModelInput(), secondInput.getModelInput());
+        }
+    }
+}
@@ -2,16 +2,23 @@ package ampcontrol.audio;
 
 import ampcontrol.audio.processing.ProcessingResult;
 import ampcontrol.audio.processing.SingletonDoubleInput;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
 import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * Test cases for {@link Cnn2DInputProvider}.
@@ -50,6 +57,177 @@ public class Cnn2DInputProviderTest {
         }
     }
 
+    /**
+     * Test that model input is not copied
+     */
+    @Test
+    public void noCopy() {
+        final MockAudioInputBuffer mockBuffer = new MockAudioInputBuffer(new double[][] {{1,2,3,4},{5,6,7,8}});
+        final ClassifierInputProvider.Updatable inputProvider = new Cnn2DInputProvider(mockBuffer, () -> new SplitInputProcessing(2, 2));
+
+        inputProvider.updateInput();
+        assertSame("Model input was copied!", inputProvider.getModelInput(), inputProvider.getModelInput());
+
+        mockBuffer.advance();
+        final INDArray before = inputProvider.getModelInput();
+        inputProvider.updateInput();
+        assertNotSame("Model input was not updated!", before, inputProvider.getModelInput());
+    }
+
+    /**
+     * Test that the model input last handed out is not changed by updates
+     */
+    @Test
+    public void lastReadNotOverwritten() {
+        final double[][] audioFrames = new double[][] {{1,2,3,4},{5,6,7,8},{9,10,11,12},{13,14,15,16}};
+        final MockAudioInputBuffer mockBuffer = new MockAudioInputBuffer(audioFrames);
+        final ClassifierInputProvider.Updatable inputProvider = new Cnn2DInputProvider(mockBuffer, () -> new SplitInputProcessing(2, 1));
+
+        inputProvider.updateInput();
+        final INDArray read = inputProvider.getModelInput();
+        final INDArray expected = read.dup();
+        for (int i = 1; i < audioFrames.length; i++) {
+            mockBuffer.advance();
+            inputProvider.updateInput();
+            assertEquals("Model input was overwritten!", expected, read);
+        }
+        assertNotEquals("Model input was not updated!", expected, inputProvider.getModelInput());
+    }
+
+    /**
+     * Test that model input acquired by concurrent readers is not changed by interleaved updates until it is released
+     */
+    @Test
+    public void acquiredNotOverwritten() {
+        final double[][] audioFrames = new double[][] {{1,2,3,4},{5,6,7,8},{9,10,11,12},{13,14,15,16},{17,18,19,20},{21,22,23,24}};
+        final MockAudioInputBuffer mockBuffer = new MockAudioInputBuffer(audioFrames);
+        final ClassifierInputProvider.Updatable inputProvider = new Cnn2DInputProvider(mockBuffer, () -> new SplitInputProcessing(2, 1));
+
+        inputProvider.updateInput();
+        final INDArray readerA = inputProvider.acquireModelInput();
+        final INDArray expectedA = readerA.dup();
+
+        mockBuffer.advance();
+        inputProvider.updateInput();
+        final INDArray readerB = inputProvider.acquireModelInput();
+        final INDArray expectedB = readerB.dup();
+        assertNotEquals("Model input was not updated!", expectedA, expectedB);
+
+        // A plain read which would make the provider consider only the last read array as in use
+        final INDArray plainRead = inputProvider.getModelInput();
+        for (int i = 2; i < audioFrames.length; i++) {
+            mockBuffer.advance();
+            inputProvider.updateInput();
+            assertEquals("Acquired model input was overwritten!", expectedA, readerA);
+            assertEquals("Acquired model input was overwritten!", expectedB, readerB);
+            assertNotSame("Acquired model input handed out as current!", readerA, inputProvider.getModelInput());
+        }
+        assertNotSame("Plain read was not replaced!", plainRead, inputProvider.getModelInput());
+        inputProvider.releaseModelInput(readerA);
+        inputProvider.releaseModelInput(readerB);
+    }
+
+    /**
+     * Test that concurrent readers which acquire model input never see it change while it is updated
+     */
+    @Test
+    public void concurrentReaders() throws InterruptedException {
+        final int nrofUpdates = 2000;
+        final AudioInputBuffer counter = new AudioInputBuffer() {
+            private double cnt = 0;
+
+            @Override
+            public double[] getAudio() {
+                cnt++;
+                return new double[]{cnt, cnt, cnt, cnt};
+            }
+        };
+        final ClassifierInputProvider.Updatable inputProvider = new Cnn2DInputProvider(counter, () -> new SplitInputProcessing(2, 1));
+        inputProvider.updateInput();
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicInteger nrofCorrupt = new AtomicInteger(0);
+        final List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    final INDArray input = inputProvider.acquireModelInput();
+                    final double first = input.getDouble(0);
+                    for (int j = 0; j < 100; j++) {
+                        if (input.minNumber().doubleValue() != first || input.maxNumber().doubleValue() != first) {
+                            nrofCorrupt.incrementAndGet();
+                        }
+                    }
+                    inputProvider.releaseModelInput(input);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < nrofUpdates; i++) {
+            inputProvider.updateInput();
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals("Acquired model input changed while held!", 0, nrofCorrupt.get());
+    }
+
+    /**
+     * Test that input is created correctly when ND4J uses half precision. Only runs with backends which support it.
+     */
+    @Test
+    public void getModelInputHalf() {
+        final DataBuffer.Type dataType = Nd4j.dataType();
+        try {
+            Nd4j.setDataType(DataBuffer.Type.HALF);
+            assumeTrue("Half precision not supported by backend!", isHalfSupported());
+
+            final double[][] audioFrames = new double[][] {{1,2,3,4},{5,6,7,8}};
+            final MockAudioInputBuffer mockBuffer = new MockAudioInputBuffer(audioFrames);
+            final ClassifierInputProvider.Updatable inputProvider = new Cnn2DInputProvider(mockBuffer, () -> new SplitInputProcessing(2, 2));
+            for (double[] audioFrame : audioFrames) {
+                inputProvider.updateInput();
+                final INDArray expected = Nd4j.create(new SplitInputProcessing(2, 1)
+                        .create(new SingletonDoubleInput(audioFrame)).stream().findFirst().get());
+                final INDArray actual = inputProvider.getModelInput();
+                assertEquals("Incorrect data type!", DataBuffer.Type.HALF, actual.data().dataType());
+                for (int channel = 0; channel < 2; channel++) {
+                    // Op is executed where the backend keeps the data, e.g. on a GPU
+                    assertTrue("Incorrect model input!", expected.equalsWithEps(
+                            actual.get(NDArrayIndex.point(0), NDArrayIndex.point(channel)).mul(1), 1e-2));
+                }
+                mockBuffer.advance();
+            }
+        } finally {
+            Nd4j.setDataType(dataType);
+        }
+    }
+
+    /**
+     * Test conversion to half precision
+     */
+    @Test
+    public void toHalf() {
+        final double[] values = {0, 1, -2.5, 0.125, 1234};
+        final short[] half = new short[values.length];
+        Cnn2DInputProvider.toHalf(values, half);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("Incorrect half precision value!", values[i], HalfIndexer.toFloat(half[i] & 0xFFFF), 1e-10);
+        }
+    }
+
+    private static boolean isHalfSupported() {
+        try {
+            Nd4j.create(1, 1).addi(1);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
     private static class MockAudioInputBuffer implements AudioInputBuffer {
         private final double[][] audioFrames;
         private int cnt;
@@ -0,0 +1,202 @@
+package ampcontrol.audio;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link RingAudioInputBuffer}.
+ *
+ * @author Christian Skärby
+ */
+public class RingAudioInputBufferTest {
+
+    /**
+     * Test that the buffer holds the last nrofSamples written to it, scaled with the given scale factor
+     */
+    @Test
+    public void getAudio() {
+        final int nrofSamples = 7;
+        final double scale = 3;
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(nrofSamples, scale);
+
+        buffer.write(new float[]{1, 2, 3, 4, 5});
+        buffer.write(new float[]{6, 7, 8, 9, 10});
+
+        assertArrayEquals("Incorrect output!",
+                new double[]{4 * scale, 5 * scale, 6 * scale, 7 * scale, 8 * scale, 9 * scale, 10 * scale},
+                buffer.getAudio(), 1e-10);
+    }
+
+    /**
+     * Test that views provide the last samples of the buffer
+     */
+    @Test
+    public void view() {
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(5, 1);
+        final AudioInputBuffer view3 = buffer.view(3);
+
+        buffer.write(new float[]{1, 2, 3, 4});
+        buffer.write(new float[]{5, 6, 7});
+
+        assertArrayEquals("Incorrect output!", new double[]{5, 6, 7}, view3.getAudio(), 1e-10);
+        final double[] dest = new double[3];
+        view3.getAudio(dest);
+        assertArrayEquals("Incorrect output!", new double[]{5, 6, 7}, dest, 1e-10);
+        assertArrayEquals("Incorrect output!", new double[]{3, 4, 5, 6, 7}, buffer.getAudio(), 1e-10);
+    }
+
+    /**
+     * Test that a view larger than the buffer enlarges the buffer without losing any samples
+     */
+    @Test
+    public void viewEnlarge() {
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(4, 1);
+        buffer.write(new float[]{1, 2, 3, 4, 5, 6});
+
+        final AudioInputBuffer view6 = buffer.view(6);
+        assertArrayEquals("Incorrect output!", new double[]{0, 0, 3, 4, 5, 6}, view6.getAudio(), 1e-10);
+
+        buffer.write(new float[]{7, 8, 9});
+        assertArrayEquals("Incorrect output!", new double[]{4, 5, 6, 7, 8, 9}, view6.getAudio(), 1e-10);
+        assertArrayEquals("Incorrect output!", new double[]{4, 5, 6, 7, 8, 9}, buffer.getAudio(), 1e-10);
+    }
+
+    /**
+     * Test that filling a given array gives the same result as {@link RingAudioInputBuffer#getAudio()} and that it
+     * does not allocate any memory
+     */
+    @Test
+    public void getAudioToDest() {
+        final int nrofSamples = 11;
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(nrofSamples, Short.MAX_VALUE);
+        final float[] writeBuffer = new float[]{0.1f, -0.2f, 0.3f, 0.4f};
+        final double[] dest = new double[nrofSamples];
+
+        final ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int nrofCalls = 1000;
+        long allocatedBytes = 0;
+        for (int i = 0; i < 3; i++) {
+            // Run a couple of times so that measurement is not affected by class loading and such
+            final long allocStart = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int j = 0; j < nrofCalls; j++) {
+                buffer.write(writeBuffer);
+                buffer.getAudio(dest);
+            }
+            allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocStart;
+        }
+
+        assertArrayEquals("Incorrect output!", buffer.getAudio(), dest, 1e-10);
+        assertEquals("Incorrect output!", (double) writeBuffer[3] * Short.MAX_VALUE, dest[nrofSamples - 1], 1e-10);
+        assertTrue("Memory was allocated: " + allocatedBytes + " bytes!", allocatedBytes < nrofCalls);
+    }
+
+    /**
+     * Test that the position of the read samples is the total number of samples written
+     */
+    @Test
+    public void getPositionedAudio() {
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(3, 1);
+        final AudioInputBuffer view2 = buffer.view(2);
+        final double[] dest = new double[3];
+        final double[] dest2 = new double[2];
+        assertEquals("Incorrect position!", 0, buffer.getPositionedAudio(dest));
+
+        buffer.write(new float[]{1, 2, 3, 4});
+        buffer.write(new float[]{5, 6}, 1);
+        assertEquals("Incorrect position!", 5, buffer.getPositionedAudio(dest));
+        assertArrayEquals("Incorrect output!", new double[]{3, 4, 5}, dest, 1e-10);
+        assertEquals("Incorrect position!", 5, view2.getPositionedAudio(dest2));
+        assertArrayEquals("Incorrect output!", new double[]{4, 5}, dest2, 1e-10);
+    }
+
+    /**
+     * Test that listeners are notified of the number of new samples after each write
+     */
+    @Test
+    public void newSamplesListener() {
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(5, 1);
+        final List<Integer> newSamples = new ArrayList<>();
+        buffer.addListener(newSamples::add);
+        buffer.addListener(nrofSamples -> assertArrayEquals("Samples not written before notification!",
+                new double[]{0, 0, 1, 2, 3}, buffer.getAudio(), 1e-10));
+
+        buffer.write(new float[]{1, 2, 3, 4}, 3);
+        assertEquals("Incorrect notifications!", Collections.singletonList(3), newSamples);
+    }
+
+    /**
+     * Test that an exception is thrown if destination array is of the wrong size
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void getAudioWrongSize() {
+        new RingAudioInputBuffer(3, 1).getAudio(new double[4]);
+    }
+
+    /**
+     * Test that the reader never sees a partially overwritten snapshot when producer and consumer run concurrently.
+     * The producer writes a strictly increasing sequence so any torn read shows up as a discontinuity.
+     */
+    @Test(timeout = 20000)
+    public void noTornReads() throws InterruptedException {
+        final int nrofSamples = 503;
+        final int writeSize = 37;
+        final int nrofReads = 20000;
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(nrofSamples, 1);
+
+        final float[] writeBuffer = new float[writeSize];
+        final int[] counter = {0};
+        final Runnable writeNext = () -> {
+            for (int i = 0; i < writeBuffer.length; i++) {
+                writeBuffer[i] = counter[0]++;
+            }
+            buffer.write(writeBuffer);
+        };
+
+        // Fill the buffer so that all reads shall be continuous
+        for (int i = 0; i < nrofSamples / writeSize + 1; i++) {
+            writeNext.run();
+        }
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final Thread producer = new Thread(() -> {
+            while (!stop.get()) {
+                writeNext.run();
+                // Keep the counter well within the range of exactly representable floats
+                if (counter[0] > (1 << 22)) {
+                    counter[0] = 0;
+                }
+            }
+        });
+        producer.start();
+
+        try {
+            double lastFirst = -1;
+            int nrofUpdates = 0;
+            for (int readInd = 0; readInd < nrofReads; readInd++) {
+                final double[] audio = buffer.getAudio();
+                assertEquals("Incorrect size!", nrofSamples, audio.length);
+                for (int i = 1; i < audio.length; i++) {
+                    if (audio[i] != 0) {
+                        assertEquals("Torn read detected at index " + i + " in read " + readInd + "!",
+                                audio[i - 1] + 1, audio[i], 1e-10);
+                    }
+                }
+                nrofUpdates += audio[0] != lastFirst ? 1 : 0;
+                lastFirst = audio[0];
+            }
+            assertTrue("Producer did not make any progress!", nrofUpdates > 1);
+        } finally {
+            stop.set(true);
+            producer.join();
+        }
+    }
+}
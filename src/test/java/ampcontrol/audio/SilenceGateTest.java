@@ -0,0 +1,140 @@
+package ampcontrol.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link SilenceGate}
+ *
+ * @author Christian Skärby
+ */
+public class SilenceGateTest {
+
+    private static final int nrofSamples = 1000;
+    private static final double rmsThresholdDb = -40; // ~328
+    private static final double peakThresholdDb = -20; // ~3277
+    private static final double hysteresisDb = 6; // Factor ~2
+
+    /**
+     * Test that input below both thresholds is silent
+     */
+    @Test
+    public void silentBelowThresholds() {
+        final MockAudioInputBuffer input = new MockAudioInputBuffer();
+        final SilenceGate gate = createGate(input);
+
+        input.setConstant(100);
+        assertTrue("Expected silence!", gate.update());
+        assertTrue("Expected silence!", gate.isSilent());
+
+        input.setConstant(-100);
+        input.audio[nrofSamples / 2] = 3000;
+        assertTrue("Expected silence!", gate.update());
+    }
+
+    /**
+     * Test that input above the RMS threshold is not silent
+     */
+    @Test
+    public void notSilentAboveRms() {
+        final MockAudioInputBuffer input = new MockAudioInputBuffer();
+        final SilenceGate gate = createGate(input);
+
+        input.setConstant(500);
+        assertFalse("Did not expect silence!", gate.update());
+        assertFalse("Did not expect silence!", gate.isSilent());
+    }
+
+    /**
+     * Test that input above the peak threshold is not silent
+     */
+    @Test
+    public void notSilentAbovePeak() {
+        final MockAudioInputBuffer input = new MockAudioInputBuffer();
+        final SilenceGate gate = createGate(input);
+
+        input.setConstant(0);
+        input.audio[nrofSamples / 2] = -5000;
+        assertFalse("Did not expect silence!", gate.update());
+    }
+
+    /**
+     * Test that silent input only stops being silent when a level exceeds its threshold by the hysteresis
+     */
+    @Test
+    public void hysteresis() {
+        final MockAudioInputBuffer input = new MockAudioInputBuffer();
+        final SilenceGate gate = createGate(input);
+
+        input.setConstant(500);
+        assertFalse("Did not expect silence!", gate.update());
+
+        input.setConstant(100);
+        assertTrue("Expected silence!", gate.update());
+
+        input.setConstant(500);
+        assertTrue("Expected silence due to hysteresis!", gate.update());
+
+        input.setConstant(700);
+        assertFalse("Did not expect silence!", gate.update());
+
+        input.setConstant(500);
+        assertFalse("Did not expect silence!", gate.update());
+    }
+
+    /**
+     * Test that input is only silent if all inputs are silent
+     */
+    @Test
+    public void allInputsSilent() {
+        final MockAudioInputBuffer first = new MockAudioInputBuffer();
+        final MockAudioInputBuffer second = new MockAudioInputBuffer();
+        final SilenceGate gate = new SilenceGate(Arrays.asList(first, second), rmsThresholdDb, peakThresholdDb, hysteresisDb);
+
+        first.setConstant(10);
+        second.setConstant(1000);
+        assertFalse("Did not expect silence!", gate.update());
+
+        second.setConstant(10);
+        assertTrue("Expected silence!", gate.update());
+    }
+
+    /**
+     * Test that the number of updates and silent updates are counted
+     */
+    @Test
+    public void counts() {
+        final MockAudioInputBuffer input = new MockAudioInputBuffer();
+        final SilenceGate gate = createGate(input);
+
+        final double[] levels = {1000, 10, 20, 1000, 30};
+        for (double level : levels) {
+            input.setConstant(level);
+            gate.update();
+        }
+        assertEquals("Incorrect number of updates!", levels.length, gate.getNrofUpdates());
+        assertEquals("Incorrect number of silent updates!", 3, gate.getNrofSilent());
+    }
+
+    private static SilenceGate createGate(AudioInputBuffer input) {
+        return new SilenceGate(Collections.singletonList(input), rmsThresholdDb, peakThresholdDb, hysteresisDb);
+    }
+
+    private static final class MockAudioInputBuffer implements AudioInputBuffer {
+
+        private final double[] audio = new double[nrofSamples];
+
+        private void setConstant(double value) {
+            Arrays.fill(audio, value);
+        }
+
+        @Override
+        public double[] getAudio() {
+            return audio.clone();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package ampcontrol.audio.file;
+
+import ampcontrol.audio.AudioInputPar;
+import ampcontrol.audio.ClassifierInputProvider;
+import com.beust.jcommander.JCommander;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link FileReplayClassifierInputFactory}
+ *
+ * @author Christian Skärby
+ */
+public class FileReplayClassifierInputFactoryTest {
+
+    private final static int sampleRate = 1000;
+
+    /**
+     * Test that files are replayed one chunk per update in lockstep mode
+     */
+    @Test(timeout = 20000)
+    public void lockStep() {
+        final Map<String, short[]> files = new HashMap<>();
+        files.put("file1", createSamples(0, 25));
+        files.put("file2", createSamples(25, 12));
+        final FileReplayClassifierInputFactory factory = createFactory(files,
+                "-replayFiles file1,file2 -replaySpeed 0 -replayChunkMs 10");
+
+        final ClassifierInputProvider input = factory.createInputProvider("ws_20_sgpp_nopp");
+        final ClassifierInputProvider.UpdateHandle updateHandle = factory.finalizeAndReturnUpdateHandle();
+
+        // Chunks: 0-9, 10-19, 20-24, 25-34, 35-36
+        updateHandle.updateInput();
+        assertEquals("Incorrect input!", expected(-10, 10), input.getModelInput());
+        updateHandle.updateInput();
+        assertEquals("Incorrect input!", expected(0, 20), input.getModelInput());
+        updateHandle.updateInput();
+        assertEquals("Incorrect input!", expected(5, 25), input.getModelInput());
+        updateHandle.updateInput();
+        assertEquals("Incorrect input!", expected(15, 35), input.getModelInput());
+        updateHandle.updateInput();
+        assertEquals("Incorrect input!", expected(17, 37), input.getModelInput());
+
+        // All files replayed. Shall not block
+        updateHandle.updateInput();
+        assertEquals("Incorrect input!", expected(17, 37), input.getModelInput());
+    }
+
+    /**
+     * Test that files are only read once when replayed in a loop
+     */
+    @Test(timeout = 20000)
+    public void loopReadsFilesOnce() {
+        final Map<String, short[]> files = new HashMap<>();
+        files.put("file1", createSamples(0, 25));
+        files.put("file2", createSamples(25, 12));
+        final Map<String, Integer> nrofReads = new ConcurrentHashMap<>();
+        final FileReplayClassifierInputFactory factory = createFactory(file -> {
+                    nrofReads.merge(file, 1, Integer::sum);
+                    return files.get(file);
+                },
+                "-replayFiles file1,file2 -replaySpeed 0 -replayChunkMs 10 -replayLoop");
+
+        final ClassifierInputProvider input = factory.createInputProvider("ws_20_sgpp_nopp");
+        final ClassifierInputProvider.UpdateHandle updateHandle = factory.finalizeAndReturnUpdateHandle();
+
+        // Five chunks per pass, see lockStep
+        for (int pass = 0; pass < 3; pass++) {
+            for (int i = 0; i < 5; i++) {
+                updateHandle.updateInput();
+            }
+            assertEquals("Incorrect input after pass " + pass + "!", expected(17, 37), input.getModelInput());
+        }
+        assertEquals("Incorrect number of reads of file1!", Integer.valueOf(1), nrofReads.get("file1"));
+        assertEquals("Incorrect number of reads of file2!", Integer.valueOf(1), nrofReads.get("file2"));
+    }
+
+    /**
+     * Test that files are replayed faster than real time
+     */
+    @Test(timeout = 20000)
+    public void fixedRate() throws InterruptedException {
+        final Map<String, short[]> files = new HashMap<>();
+        files.put("file", createSamples(0, 10000));
+        final FileReplayClassifierInputFactory factory = createFactory(files,
+                "-replayFiles file -replaySpeed 100 -replayChunkMs 100");
+
+        final ClassifierInputProvider input = factory.createInputProvider("ws_20_sgpp_nopp");
+        final long startTime = System.nanoTime();
+        final ClassifierInputProvider.UpdateHandle updateHandle = factory.finalizeAndReturnUpdateHandle();
+
+        final INDArray expected = expected(9980, 10000);
+        do {
+            Thread.sleep(1);
+            updateHandle.updateInput();
+        } while (!expected.equals(input.getModelInput()));
+        final double replayTime = (System.nanoTime() - startTime) / 1e9;
+        assertTrue("Replay too fast: " + replayTime + " s!", replayTime > 0.09);
+    }
+
+    /**
+     * Test that the given channel is read from a wav file
+     */
+    @Test
+    public void readWav() throws IOException {
+        final int nrofFrames = 13;
+        final int nrofChannels = 2;
+        final byte[] pcm = new byte[nrofFrames * nrofChannels * 2];
+        for (int frame = 0; frame < nrofFrames; frame++) {
+            for (int ch = 0; ch < nrofChannels; ch++) {
+                final short value = sampleValue(frame, ch);
+                final int offset = 2 * (frame * nrofChannels + ch);
+                pcm[offset] = (byte) (value & 0xFF);
+                pcm[offset + 1] = (byte) ((value >> 8) & 0xFF);
+            }
+        }
+        final AudioFormat format = new AudioFormat(sampleRate, 16, nrofChannels, true, false);
+        final File file = File.createTempFile("FileReplayTest", ".wav");
+        file.deleteOnExit();
+        AudioSystem.write(
+                new AudioInputStream(new ByteArrayInputStream(pcm), format, nrofFrames),
+                AudioFileFormat.Type.WAVE,
+                file);
+
+        for (int ch = 0; ch < nrofChannels; ch++) {
+            final int channel = ch;
+            final short[] expected = new short[nrofFrames];
+            IntStream.range(0, nrofFrames).forEach(frame -> expected[frame] = sampleValue(frame, channel));
+            assertArrayEquals("Incorrect samples!", expected,
+                    FileReplayClassifierInputFactory.readWav(file.getAbsolutePath(), channel, sampleRate));
+        }
+    }
+
+    /**
+     * Test that an exception is thrown if sample rate of the file is not the expected one
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void readWavWrongSampleRate() throws IOException {
+        final File file = File.createTempFile("FileReplayTest", ".wav");
+        file.deleteOnExit();
+        AudioSystem.write(
+                new AudioInputStream(new ByteArrayInputStream(new byte[20]),
+                        new AudioFormat(sampleRate, 16, 1, true, false), 10),
+                AudioFileFormat.Type.WAVE,
+                file);
+        FileReplayClassifierInputFactory.readWav(file.getAbsolutePath(), 0, 2 * sampleRate);
+    }
+
+    private static FileReplayClassifierInputFactory createFactory(Map<String, short[]> files, String params) {
+        return createFactory(files::get, params);
+    }
+
+    private static FileReplayClassifierInputFactory createFactory(Function<String, short[]> fileReader, String params) {
+        final AudioInputPar audioInputPar = new AudioInputPar();
+        final FileReplayClassifierInputFactory factory = new FileReplayClassifierInputFactory(audioInputPar, fileReader);
+        final String allParams = "-samplingRate " + sampleRate + " " + params;
+        JCommander.newBuilder().addObject(new Object[]{audioInputPar, factory})
+                .build()
+                .parse(allParams.split(" "));
+        return factory;
+    }
+
+    private static short[] createSamples(int start, int nrofSamples) {
+        final short[] samples = new short[nrofSamples];
+        for (int i = 0; i < nrofSamples; i++) {
+            samples[i] = (short) (start + i + 1);
+        }
+        return samples;
+    }
+
+    /**
+     * Expected input when samples start (inclusive) to end (exclusive) are in the buffer. Samples before the first one
+     * are expected to be zero.
+     */
+    private static INDArray expected(int start, int end) {
+        final double[] expected = IntStream.range(start, end)
+                .mapToDouble(sampleInd -> sampleInd < 0 ? 0 : sampleInd + 1)
+                .toArray();
+        return Nd4j.create(expected).reshape(1, 1, 1, end - start);
+    }
+
+    private static short sampleValue(int frame, int channel) {
+        return (short) ((channel == 0 ? -1 : 1) * frame * 300);
+    }
+}
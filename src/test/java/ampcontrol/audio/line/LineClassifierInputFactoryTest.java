@@ -0,0 +1,110 @@
+package ampcontrol.audio.line;
+
+import ampcontrol.audio.AudioInputPar;
+import ampcontrol.audio.ClassifierInputProvider;
+import com.beust.jcommander.JCommander;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link LineClassifierInputFactory}
+ *
+ * @author Christian Skärby
+ */
+public class LineClassifierInputFactoryTest {
+
+    private final static int sampleRate = 1000;
+    private final static int nrofChannels = 2;
+    private final static int channel = 1;
+    private final static int nrofFrames = 100;
+
+    /**
+     * Test that samples from the selected channel of the line ends up in created input
+     */
+    @Test(timeout = 20000)
+    public void createInputProvider() throws InterruptedException {
+        final MockTargetDataLine line = new MockTargetDataLine(null, createPcm(nrofFrames, nrofChannels));
+        final LineClassifierInputFactory factory = createFactory(line, "-lineBufferMs 20");
+
+        final ClassifierInputProvider input10 = factory.createInputProvider("ws_10_sgpp_nopp");
+        final ClassifierInputProvider input20 = factory.createInputProvider("ws_20_sgpp_nopp");
+        assertSame("Expected same input!", input10, factory.createInputProvider("ws_10_sgpp_nopp"));
+        assertNotSame("Expected different input!", input10, input20);
+
+        final ClassifierInputProvider.UpdateHandle updateHandle = factory.finalizeAndReturnUpdateHandle();
+
+        assertTrue("Line not started!", line.isRunning());
+        assertEquals("Incorrect format!",
+                new AudioFormat(sampleRate, 16, nrofChannels, true, false).toString(),
+                line.getFormat().toString());
+        assertEquals("Incorrect buffer size!", 20 * 2 * nrofChannels, line.getBufferSize());
+
+        while (!line.isAllDataRead()) {
+            Thread.sleep(1);
+        }
+        // Reader might not have written the last samples to the buffer yet
+        Thread.sleep(20);
+        line.close();
+        updateHandle.updateInput();
+
+        assertEquals("Incorrect input!", expected(10), input10.getModelInput());
+        assertEquals("Incorrect input!", expected(20), input20.getModelInput());
+    }
+
+    /**
+     * Test that mixer is selected by name
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void noSuchMixer() {
+        final MockTargetDataLine line = new MockTargetDataLine(null, new byte[0]);
+        final LineClassifierInputFactory factory = createFactory(line, "-mixer notThisOne");
+        factory.createInputProvider("ws_10_sgpp_nopp");
+        factory.finalizeAndReturnUpdateHandle();
+    }
+
+    private static LineClassifierInputFactory createFactory(MockTargetDataLine line, String params) {
+        final AudioInputPar audioInputPar = new AudioInputPar();
+        final LineClassifierInputFactory factory = new LineClassifierInputFactory(audioInputPar,
+                () -> Collections.singletonList(new MockMixer("mockMixer", line)));
+        final String allParams = "-channel " + channel + " -samplingRate " + sampleRate + " " + params;
+        JCommander.newBuilder().addObject(new Object[]{audioInputPar, factory})
+                .build()
+                .parse(allParams.split(" "));
+        return factory;
+    }
+
+    private static INDArray expected(int windowSizeMs) {
+        final int nrofSamples = sampleRate * windowSizeMs / 1000;
+        final double[] expected = IntStream.range(nrofFrames - nrofSamples, nrofFrames)
+                .mapToDouble(frame -> sampleValue(frame, channel))
+                .toArray();
+        return Nd4j.create(expected).reshape(1, 1, 1, nrofSamples);
+    }
+
+    /**
+     * Creates 16 bit signed little endian PCM data
+     */
+    static byte[] createPcm(int nrofFrames, int nrofChannels) {
+        final byte[] pcm = new byte[nrofFrames * nrofChannels * 2];
+        for (int frame = 0; frame < nrofFrames; frame++) {
+            for (int ch = 0; ch < nrofChannels; ch++) {
+                final short value = sampleValue(frame, ch);
+                final int offset = 2 * (frame * nrofChannels + ch);
+                pcm[offset] = (byte) (value & 0xFF);
+                pcm[offset + 1] = (byte) ((value >> 8) & 0xFF);
+            }
+        }
+        return pcm;
+    }
+
+    static short sampleValue(int frame, int channel) {
+        return (short) ((channel == 0 ? -1 : 1) * frame * 300);
+    }
+}
@@ -0,0 +1,138 @@
+package ampcontrol.audio.line;
+
+import javax.sound.sampled.*;
+
+/**
+ * Mock implementation of {@link Mixer} for testing. Has a single {@link TargetDataLine}.
+ *
+ * @author Christian Skärby
+ */
+class MockMixer implements Mixer {
+
+    private final Mixer.Info info;
+    private final TargetDataLine line;
+
+    private static class MockInfo extends Mixer.Info {
+        private MockInfo(String name) {
+            super(name, "mock", "mock mixer", "0");
+        }
+    }
+
+    MockMixer(String name, TargetDataLine line) {
+        this.info = new MockInfo(name);
+        this.line = line;
+    }
+
+    @Override
+    public Mixer.Info getMixerInfo() {
+        return info;
+    }
+
+    @Override
+    public Line.Info[] getSourceLineInfo() {
+        return new Line.Info[0];
+    }
+
+    @Override
+    public Line.Info[] getTargetLineInfo() {
+        return new Line.Info[]{new Line.Info(TargetDataLine.class)};
+    }
+
+    @Override
+    public Line.Info[] getSourceLineInfo(Line.Info info) {
+        return new Line.Info[0];
+    }
+
+    @Override
+    public Line.Info[] getTargetLineInfo(Line.Info info) {
+        return isLineSupported(info) ? getTargetLineInfo() : new Line.Info[0];
+    }
+
+    @Override
+    public boolean isLineSupported(Line.Info info) {
+        return info.getLineClass().equals(TargetDataLine.class);
+    }
+
+    @Override
+    public Line getLine(Line.Info info) throws LineUnavailableException {
+        if (!isLineSupported(info)) {
+            throw new LineUnavailableException("Not supported: " + info);
+        }
+        return line;
+    }
+
+    @Override
+    public int getMaxLines(Line.Info info) {
+        return 1;
+    }
+
+    @Override
+    public Line[] getSourceLines() {
+        return new Line[0];
+    }
+
+    @Override
+    public Line[] getTargetLines() {
+        return new Line[]{line};
+    }
+
+    @Override
+    public void synchronize(Line[] lines, boolean maintainSync) {
+        throw new IllegalArgumentException("Not supported!");
+    }
+
+    @Override
+    public void unsynchronize(Line[] lines) {
+        throw new IllegalArgumentException("Not supported!");
+    }
+
+    @Override
+    public boolean isSynchronizationSupported(Line[] lines, boolean maintainSync) {
+        return false;
+    }
+
+    @Override
+    public Line.Info getLineInfo() {
+        return new Line.Info(Mixer.class);
+    }
+
+    @Override
+    public void open() {
+        // Ignore
+    }
+
+    @Override
+    public void close() {
+        // Ignore
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("Not supported!");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+        // Ignore
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+        // Ignore
+    }
+}
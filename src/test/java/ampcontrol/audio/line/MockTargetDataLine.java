@@ -0,0 +1,167 @@
+package ampcontrol.audio.line;
+
+import javax.sound.sampled.*;
+
+/**
+ * Mock implementation of {@link TargetDataLine} for testing. Delivers the given data and then nothing.
+ *
+ * @author Christian Skärby
+ */
+class MockTargetDataLine implements TargetDataLine {
+
+    private final byte[] data;
+    private int dataInd = 0;
+    private AudioFormat format;
+    private int bufferSize;
+    private volatile boolean open = false;
+    private volatile boolean running = false;
+
+    MockTargetDataLine(AudioFormat format, byte[] data) {
+        this.format = format;
+        this.data = data;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        this.format = format;
+        this.bufferSize = bufferSize;
+        open = true;
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open(format, 0);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+        final int nrofBytes = Math.min(len, data.length - dataInd);
+        if (nrofBytes == 0) {
+            try {
+                // Let the test progress
+                wait(1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted!", e);
+            }
+            return 0;
+        }
+        System.arraycopy(data, dataInd, b, off, nrofBytes);
+        dataInd += nrofBytes;
+        return nrofBytes;
+    }
+
+    synchronized boolean isAllDataRead() {
+        return dataInd == data.length;
+    }
+
+    @Override
+    public void drain() {
+        // Ignore
+    }
+
+    @Override
+    public void flush() {
+        // Ignore
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public int available() {
+        return data.length - dataInd;
+    }
+
+    @Override
+    public int getFramePosition() {
+        return 0;
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return 0;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return 0;
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public Line.Info getLineInfo() {
+        return new DataLine.Info(TargetDataLine.class, format);
+    }
+
+    @Override
+    public void open() {
+        open(format);
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        running = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("Not supported!");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+        // Ignore
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+        // Ignore
+    }
+}
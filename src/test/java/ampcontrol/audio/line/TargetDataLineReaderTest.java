@@ -0,0 +1,51 @@
+package ampcontrol.audio.line;
+
+import ampcontrol.audio.RingAudioInputBuffer;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Test cases for {@link TargetDataLineReader}
+ *
+ * @author Christian Skärby
+ */
+public class TargetDataLineReaderTest {
+
+    /**
+     * Test that samples from the given channel are written to the buffer
+     */
+    @Test
+    public void readNext() {
+        final int nrofChannels = 3;
+        final int nrofFrames = 7;
+        final int channel = 0;
+        final MockTargetDataLine line = new MockTargetDataLine(
+                new AudioFormat(44100, 16, nrofChannels, true, false),
+                LineClassifierInputFactoryTest.createPcm(nrofFrames, nrofChannels));
+        final RingAudioInputBuffer buffer = new RingAudioInputBuffer(nrofFrames, 1);
+        final TargetDataLineReader reader = new TargetDataLineReader(line, channel, 4, buffer);
+
+        reader.readNext();
+        reader.readNext();
+
+        final double[] expected = IntStream.range(0, nrofFrames)
+                .mapToDouble(frame -> LineClassifierInputFactoryTest.sampleValue(frame, channel))
+                .toArray();
+        assertArrayEquals("Incorrect samples!", expected, buffer.getAudio(), 1e-10);
+    }
+
+    /**
+     * Test that an exception is thrown if the line format is not supported
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedFormat() {
+        final MockTargetDataLine line = new MockTargetDataLine(
+                new AudioFormat(44100, 16, 1, true, true),
+                new byte[0]);
+        new TargetDataLineReader(line, 0, 4, new RingAudioInputBuffer(4, 1));
+    }
+}
@@ -0,0 +1,114 @@
+package ampcontrol.audio.processing;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link BatchProcessing} compiled from {@link ProcessingResult.Factory ProcessingResult.Factories}.
+ *
+ * @author Christian Skärby
+ */
+public class BatchProcessingTest {
+
+    /**
+     * Test that batch processing gives the same output as processing each example
+     */
+    @Test
+    public void sameAsFlat() {
+        final List<Supplier<ProcessingResult.Factory>> factories = Arrays.asList(
+                () -> new Spectrogram(32, 8),
+                () -> new Pipe(new Spectrogram(32, 8), new Log10()),
+                () -> new Pipe(new Spectrogram(32, 4), new LogScale()),
+                () -> new Pipe(new Spectrogram(32, 8), new Mfsc(44100)),
+                () -> new Pipe(new Spectrogram(32, 8), new Dct()),
+                () -> new Pipe(new Spectrogram(32, 8), new MaskBins(new int[]{0, 3, 7})),
+                () -> new Pipe(new Spectrogram(32, 8), new Ycoord()),
+                () -> new Pipe(new Spectrogram(32, 8), new ZeroMean()),
+                () -> new Pipe(new Spectrogram(32, 8), new UnitMaxZeroMean()),
+                () -> new Pipe(new Spectrogram(32, 8), new UnitMaxZeroMin()),
+                () -> new Pipe(new Spectrogram(32, 8), new UnitStdZeroMean()),
+                () -> new Pipe(new RandScale(200, 50, new Random(666)), new Buffer()),
+                () -> new Pipe(new NoProcessing(), new TestProcessing(d -> 2 * d + 1, "test")),
+                () -> new Pipe(
+                        new Spectrogram(64, 16),
+                        new Fork(
+                                new Fork(
+                                        new Pipe(
+                                                new Log10(),
+                                                new ZeroMean()),
+                                        new Pipe(
+                                                new Mfsc(44100),
+                                                new ZeroMean())
+                                ),
+                                new Pipe(
+                                        new Ycoord(),
+                                        new UnitMaxZeroMean()
+                                )
+                        )
+                ),
+                () -> new Pipe(
+                        new Fork(new Spectrogram(32, 8), new Pipe(new Spectrogram(32, 8), new Log10())),
+                        new Fork(new UnitStdZeroMean(), new Dct()))
+        );
+
+        final int batchSize = 5;
+        final double[][] audio = new double[batchSize][];
+        final Random rng = new Random(666);
+        for (int i = 0; i < batchSize; i++) {
+            audio[i] = rng.doubles(200).map(d -> 2 * d - 1).toArray();
+        }
+        final INDArray input = Nd4j.create(audio);
+
+        for (Supplier<ProcessingResult.Factory> factorySupplier : factories) {
+            final FlatProcessing.Shape inputShape = new FlatProcessing.Shape(1, 1, audio[0].length);
+            final BatchProcessing batch = factorySupplier.get().compileBatch(inputShape);
+            final FlatProcessing flat = factorySupplier.get().compile(inputShape);
+            assertEquals("Incorrect output shape!", flat.getOutputShape().getSize(), batch.getOutputShape().getSize());
+
+            final INDArray output = batch.process(input);
+            assertArrayEquals("Incorrect output shape!", new long[]{batchSize, flat.getOutputShape().getSize()}, output.shape());
+
+            final double[] expected = new double[flat.getOutputShape().getSize()];
+            for (int i = 0; i < batchSize; i++) {
+                flat.process(audio[i], expected);
+                final double[] actual = output.getRow(i).toDoubleVector();
+                for (int j = 0; j < expected.length; j++) {
+                    // Tolerance relative to magnitude as ND4J might use single precision
+                    assertEquals("Incorrect output for " + flat + " at " + i + ", " + j + "!",
+                            expected[j], actual[j], 1e-4 * Math.max(1, Math.abs(expected[j])));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that input is not modified
+     */
+    @Test
+    public void inputNotModified() {
+        final ProcessingResult.Factory factory = new Fork(
+                new Pipe(new UnitStdZeroMean(), new MaskBins(new int[]{1})),
+                new Pipe(new Log10(), new UnitMaxZeroMin()));
+        final INDArray input = Nd4j.rand(4, 16);
+        final INDArray expected = input.dup();
+        factory.compileBatch(new FlatProcessing.Shape(2, 2, 4)).process(input);
+        assertEquals("Input was modified!", expected, input);
+    }
+
+    /**
+     * Test that an exception is thrown if forked paths have different output shapes
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void forkDifferentShapes() {
+        new Fork(new Pipe(new Spectrogram(32, 8), new Log10()), new Spectrogram(16, 8))
+                .compileBatch(new FlatProcessing.Shape(1, 1, 100));
+    }
+}
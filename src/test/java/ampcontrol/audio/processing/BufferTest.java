@@ -3,6 +3,7 @@ package ampcontrol.audio.processing;
 import org.junit.Test;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -21,26 +22,24 @@ public class BufferTest {
         assertEquals("Incorrect name!", Buffer.nameStatic(), new Buffer().name());
     }
 
+    /**
+     * Test that input is only computed once and that buffered output is shared instead of copied
+     */
     @Test
     public void create() {
-        final double[][] inputArr = {{0, 1, 2}, {3, 4, 5}}; // Will be changed later to verify that input really was buffered
-        final double[][] expected = {{0, 1, 2}, {3, 4, 5}}; // This is always the expected result
-        final ProcessingResult input = new SingletonDoubleInput(inputArr);
-        final ProcessingResult.Factory buffer = new Buffer();
-        ProcessingResult output = buffer.create(input);
-
-        assertOutputExistsAndEqualTo(expected, output);
-
-        // Tamper with input just to verify that it was buffered. Not expected to be normal operation
-        inputArr[0][0] = 666;
-        // Testcase would be meaningless if input would not change as a result of the above
-        assertOutputExistsAndEqualTo(inputArr, input);
-
-        double[][] out = assertOutputExistsAndEqualTo(expected, output);
-
-        // Tamper with output to verify that this does not corrupt buffer
-        out[0][0] = out[0][0] + 111;
-        assertOutputExistsAndEqualTo(expected, output);
+        final double[][] expected = {{0, 1, 2}, {3, 4, 5}};
+        final int[] nrofStreams = {0};
+        final ProcessingResult input = () -> {
+            nrofStreams[0]++;
+            return Stream.<double[][]>of(ProcessingResult.writableCopy(expected));
+        };
+        final ProcessingResult output = new Buffer().create(input);
+        assertEquals("Input shall not be computed before output is requested!", 0, nrofStreams[0]);
+
+        final double[][] first = assertOutputExistsAndEqualTo(expected, output);
+        final double[][] second = assertOutputExistsAndEqualTo(expected, output);
+        assertEquals("Input shall only be computed once!", 1, nrofStreams[0]);
+        assertSame("Buffered output shall not be copied!", first, second);
     }
 
     private double[][] assertOutputExistsAndEqualTo(double[][] expected, ProcessingResult result) {
@@ -0,0 +1,175 @@
+package ampcontrol.audio.processing;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link FlatProcessing} compiled from {@link ProcessingResult.Factory ProcessingResult.Factories}.
+ *
+ * @author Christian Skärby
+ */
+public class FlatProcessingTest {
+
+    /**
+     * Test that compiled processing gives the same output as non-compiled processing
+     */
+    @Test
+    public void sameAsStream() {
+        final List<Supplier<ProcessingResult.Factory>> factories = Arrays.asList(
+                () -> new Spectrogram(32, 8),
+                () -> new Pipe(new Spectrogram(32, 8), new Log10()),
+                () -> new Pipe(new Spectrogram(32, 4), new LogScale()),
+                () -> new Pipe(new Spectrogram(32, 8), new Mfsc(44100)),
+                () -> new Pipe(new Spectrogram(32, 8), new Dct()),
+                () -> new Pipe(new Spectrogram(32, 8), new MaskBins(new int[]{0, 3, 7})),
+                () -> new Pipe(new Spectrogram(32, 8), new Ycoord()),
+                () -> new Pipe(new Spectrogram(32, 8), new ZeroMean()),
+                () -> new Pipe(new Spectrogram(32, 8), new UnitMaxZeroMean()),
+                () -> new Pipe(new Spectrogram(32, 8), new UnitMaxZeroMin()),
+                () -> new Pipe(new Spectrogram(32, 8), new UnitStdZeroMean()),
+                () -> new Pipe(new RandScale(200, 50, new Random(666)), new Buffer()),
+                () -> new Pipe(new NoProcessing(), new TestProcessing(d -> 2 * d + 1, "test")),
+                () -> new Pipe(
+                        new Spectrogram(64, 16),
+                        new Fork(
+                                new Fork(
+                                        new Pipe(
+                                                new Log10(),
+                                                new ZeroMean()),
+                                        new Pipe(
+                                                new Mfsc(44100),
+                                                new ZeroMean())
+                                ),
+                                new Pipe(
+                                        new Ycoord(),
+                                        new UnitMaxZeroMean()
+                                )
+                        )
+                ),
+                () -> new Pipe(
+                        new Fork(new Spectrogram(32, 8), new Pipe(new Spectrogram(32, 8), new Log10())),
+                        new Fork(new UnitStdZeroMean(), new Dct()))
+        );
+
+        final Random rng = new Random(666);
+        final double[] audio = new double[200];
+        for (Supplier<ProcessingResult.Factory> factorySupplier : factories) {
+            final FlatProcessing flat = factorySupplier.get().compile(new FlatProcessing.Shape(1, 1, audio.length));
+            final ProcessingResult.Factory factory = factorySupplier.get();
+            final double[] output = new double[flat.getOutputShape().getSize()];
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < audio.length; j++) {
+                    audio[j] = rng.nextGaussian();
+                }
+
+                flat.process(audio, output);
+                final double[] expected = flatten(factory.create(new SingletonDoubleInput(audio.clone())));
+                assertArrayEquals("Incorrect output for " + factory.name() + "!", expected, output, 1e-10);
+            }
+        }
+    }
+
+    /**
+     * Test that output shape is consistent with output from non-compiled processing
+     */
+    @Test
+    public void outputShape() {
+        final ProcessingResult.Factory factory = new Pipe(
+                new Spectrogram(32, 8),
+                new Fork(new Log10(), new Fork(new ZeroMean(), new Mfsc(1000))));
+        final FlatProcessing.Shape shape = factory.compile(new FlatProcessing.Shape(1, 1, 100)).getOutputShape();
+        final List<double[][]> expected = factory.create(new SingletonDoubleInput(new double[100])).stream()
+                .collect(Collectors.toList());
+
+        assertEquals("Incorrect number of channels!", expected.size(), shape.getNrofChannels());
+        assertEquals("Incorrect number of rows!", expected.get(0).length, shape.getNrofRows());
+        assertEquals("Incorrect number of cols!", expected.get(0)[0].length, shape.getNrofCols());
+    }
+
+    /**
+     * Test that compiled processing does not allocate any memory
+     */
+    @Test
+    public void noAllocation() {
+        final ProcessingResult.Factory factory = new Pipe(
+                new Spectrogram(256, 16),
+                new Fork(
+                        new Fork(
+                                new Pipe(
+                                        new Log10(),
+                                        new ZeroMean()),
+                                new Pipe(
+                                        new Mfsc(44100),
+                                        new UnitStdZeroMean())
+                        ),
+                        new Pipe(
+                                new Ycoord(),
+                                new UnitMaxZeroMean()
+                        )
+                )
+        );
+        final double[] audio = new Random(666).doubles(2048).toArray();
+        final FlatProcessing flat = factory.compile(new FlatProcessing.Shape(1, 1, audio.length));
+        final double[] output = new double[flat.getOutputShape().getSize()];
+
+        final ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int nrofCalls = 100;
+        long allocatedBytes = 0;
+        for (int i = 0; i < 3; i++) {
+            // Run a couple of times so that measurement is not affected by class loading and such
+            final long allocStart = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int j = 0; j < nrofCalls; j++) {
+                flat.process(audio, -1, output, 0);
+                flat.process(audio, j * 16, output, 0);
+            }
+            allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocStart;
+        }
+        assertTrue("Memory was allocated: " + allocatedBytes + " bytes!", allocatedBytes < nrofCalls);
+    }
+
+    /**
+     * Test that positioned input gives the same output as non-positioned input
+     */
+    @Test
+    public void positioned() {
+        final int stride = 8;
+        final double[] stream = new Random(666).doubles(1000).toArray();
+        final FlatProcessing flat = new Pipe(new Spectrogram(32, stride), new Log10())
+                .compile(new FlatProcessing.Shape(1, 1, 100));
+        final FlatProcessing reference = new Pipe(new Spectrogram(32, stride), new Log10())
+                .compile(new FlatProcessing.Shape(1, 1, 100));
+        final double[] output = new double[flat.getOutputShape().getSize()];
+        final double[] expected = new double[reference.getOutputShape().getSize()];
+        for (int position = 100; position < stream.length; position += 3 * stride) {
+            final double[] audio = Arrays.copyOfRange(stream, position - 100, position);
+            flat.process(audio, position, output, 0);
+            reference.process(audio, expected);
+            assertArrayEquals("Incorrect output!", expected, output, 0);
+        }
+    }
+
+    /**
+     * Test that an exception is thrown if forked paths have different output shapes
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void forkDifferentShapes() {
+        new Fork(new Spectrogram(32, 8), new Spectrogram(16, 8)).compile(new FlatProcessing.Shape(1, 1, 100));
+    }
+
+    private static double[] flatten(ProcessingResult result) {
+        return result.stream()
+                .flatMap(Arrays::stream)
+                .flatMapToDouble(Arrays::stream)
+                .toArray();
+    }
+}
@@ -25,6 +25,18 @@ public class MaskBinsTest {
         assertArrayEquals("Masking was not applied correctly", expected, res.stream().findFirst().get());
     }
 
+    /**
+     * Test that input is not modified as it may be shared with other results
+     */
+    @Test
+    public void inputNotModified() {
+        final double[][] test =     {{1,2,3}, {4,5,6}};
+        final double[][] expected = {{1,2,3}, {4,5,6}};
+        final ProcessingResult res = new MaskBins(new int[] {1}).create(new SingletonDoubleInput(test));
+        res.stream().forEach(arr -> {/* Consume */});
+        assertArrayEquals("Input was modified!", expected, test);
+    }
+
     /**
      * Test that name is consistent and can be used to create a new instance
      */
@@ -2,6 +2,8 @@ package ampcontrol.audio.processing;
 
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
@@ -30,8 +32,58 @@ public class MfscTest {
         }
     }
 
+    /**
+     * Test that output is identical to applying the triangular filters one by one for different frame sizes
+     */
+    @Test
+    public void sameAsDenseFilters() {
+        final double sampleRate = 44100;
+        final Mfsc mfsc = new Mfsc(sampleRate);
+        final Random rng = new Random(666);
+        for (int frameSize : new int[]{7, 64, 64, 129, 64, 256}) {
+            final double[][] input = new double[3][frameSize];
+            for (double[] frame : input) {
+                for (int i = 0; i < frame.length; i++) {
+                    frame[i] = rng.nextDouble() * 10;
+                }
+            }
+            final double[][] result = mfsc.create(new SingletonDoubleInput(input)).stream().findFirst().get();
+            assertEquals("Incorrect size!", input.length, result.length);
+            for (int i = 0; i < input.length; i++) {
+                assertArrayEquals("Incorrect output!", denseMfsc(input[i], sampleRate), result[i], 0);
+            }
+        }
+    }
+
     @Test
     public void name() {
         assertEquals("Inconsistent name!", Mfsc.nameStatic(), new Mfsc(100).name());
     }
-}
\ No newline at end of file
+
+    private static double[] denseMfsc(double[] bin, double sampleRate) {
+        final int numMelFilters = bin.length;
+        final double melFLow = 2595 * (Math.log(1 + 80d / 700) / Math.log(10));
+        final double melFHigh = 2595 * (Math.log(1 + sampleRate / 2 / 700) / Math.log(10));
+        final int[] cBin = new int[numMelFilters + 2];
+        cBin[0] = (int) Math.round(80d / sampleRate * bin.length);
+        cBin[cBin.length - 1] = bin.length / 2;
+        for (int i = 1; i <= numMelFilters; i++) {
+            final double fc = 700 * (Math.pow(10, (melFLow + ((melFHigh - melFLow) / (numMelFilters + 1)) * i) / 2595) - 1);
+            cBin[i] = (int) Math.round(fc / sampleRate * bin.length);
+        }
+
+        final double[] f = new double[numMelFilters];
+        for (int k = 1; k <= numMelFilters; k++) {
+            double num1 = 0.0;
+            double num2 = 0.0;
+            for (int i = cBin[k - 1]; i <= cBin[k]; i++) {
+                num1 += ((i - cBin[k - 1] + 1) / (cBin[k] - cBin[k - 1] + 1)) * bin[i];
+            }
+            for (int i = cBin[k] + 1; i <= cBin[k + 1]; i++) {
+                num2 += (1 - ((i - cBin[k]) / (cBin[k + 1] - cBin[k] + 1))) * bin[i];
+            }
+            f[k - 1] = Math.max(-50, Math.log(num1 + num2));
+        }
+        return f;
+    }
+}
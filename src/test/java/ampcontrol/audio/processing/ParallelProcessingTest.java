@@ -0,0 +1,153 @@
+package ampcontrol.audio.processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for concurrent use of {@link ProcessingResult.Factory ProcessingResult.Factories}.
+ *
+ * @author Christian Skärby
+ */
+public class ParallelProcessingTest {
+
+    private static final int nrofInputs = 64;
+
+    /**
+     * Test that results which are created in the same order give the same output when streamed in parallel as when
+     * streamed serially for the same seed.
+     */
+    @Test
+    public void parallelSameAsSerial() {
+        final Supplier<ProcessingResult.Factory> factorySupplier = () -> new Pipe(
+                new RandScale(300, 10, new Random(666)),
+                new Pipe(
+                        new Spectrogram(64, 16),
+                        new Fork(
+                                new Pipe(new Log10(), new ZeroMean()),
+                                new Pipe(new Buffer(), new Fork(
+                                        new Pipe(new Mfsc(44100), new Dct()),
+                                        new MaskBins(new int[]{1, 3, 5}))))));
+        final List<double[]> inputs = createInputs();
+
+        final ProcessingResult.Factory serialFactory = factorySupplier.get();
+        final List<double[]> expected = inputs.stream()
+                .map(input -> flatten(serialFactory.create(new SingletonDoubleInput(input))))
+                .collect(Collectors.toList());
+
+        final ProcessingResult.Factory parallelFactory = factorySupplier.get();
+        final List<ProcessingResult> results = inputs.stream()
+                .map(input -> parallelFactory.create(new SingletonDoubleInput(input)))
+                .collect(Collectors.toList());
+        final List<double[]> actual = results.parallelStream()
+                .map(ParallelProcessingTest::flatten)
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < nrofInputs; i++) {
+            assertArrayEquals("Incorrect output for input " + i + "!", expected.get(i), actual.get(i), 0);
+        }
+    }
+
+    /**
+     * Test that results can be created and streamed concurrently from the same factory
+     */
+    @Test
+    public void concurrentCreate() {
+        final ProcessingResult.Factory factory = new Pipe(
+                new Spectrogram(128, 32),
+                new Fork(
+                        new Pipe(new Mfsc(44100), new UnitStdZeroMean()),
+                        new Pipe(new Log10(), new Dct())));
+        final List<double[]> inputs = createInputs();
+
+        final List<double[]> expected = inputs.stream()
+                .map(input -> flatten(factory.create(new SingletonDoubleInput(input))))
+                .collect(Collectors.toList());
+        final List<double[]> actual = inputs.parallelStream()
+                .map(input -> flatten(factory.create(new SingletonDoubleInput(input))))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < nrofInputs; i++) {
+            assertArrayEquals("Incorrect output for input " + i + "!", expected.get(i), actual.get(i), 0);
+        }
+    }
+
+    /**
+     * Test that results with random augmentation can be created concurrently from the same factory. Which result gets
+     * which random draw depends on the order in which they are created so the same input is used for all results and
+     * the set of outputs is compared with the set of outputs from serial creation.
+     */
+    @Test
+    public void concurrentCreateRandom() {
+        final Supplier<ProcessingResult.Factory> factorySupplier = () -> new Pipe(
+                new RandScale(300, 10, new Random(666)),
+                new Fork(new Spectrogram(64, 16), new Pipe(new Spectrogram(32, 8), new Log10())));
+        final double[] input = createInputs().get(0);
+
+        final ProcessingResult.Factory serialFactory = factorySupplier.get();
+        final List<double[]> expected = IntStream.range(0, nrofInputs)
+                .mapToObj(i -> flatten(serialFactory.create(new SingletonDoubleInput(input))))
+                .sorted(ParallelProcessingTest::compare)
+                .collect(Collectors.toList());
+
+        final ProcessingResult.Factory parallelFactory = factorySupplier.get();
+        final List<double[]> actual = IntStream.range(0, nrofInputs).parallel()
+                .mapToObj(i -> flatten(parallelFactory.create(new SingletonDoubleInput(input))))
+                .sorted(ParallelProcessingTest::compare)
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < nrofInputs; i++) {
+            assertArrayEquals("Incorrect output " + i + "!", expected.get(i), actual.get(i), 0);
+        }
+    }
+
+    /**
+     * Test that streaming the same result several times gives the same output
+     */
+    @Test
+    public void streamTwice() {
+        final ProcessingResult result = new Pipe(
+                new RandScale(200, 50, new Random(666)),
+                new Fork(new Pipe(new Spectrogram(32, 8), new MaskBins(new int[]{0, 2})), new Spectrogram(32, 8)))
+                .create(new SingletonDoubleInput(createInputs().get(0)));
+
+        final double[] expected = flatten(result);
+        final List<double[]> actual = IntStream.range(0, 8).parallel()
+                .mapToObj(i -> flatten(result))
+                .collect(Collectors.toList());
+        for (double[] output : actual) {
+            assertArrayEquals("Incorrect output!", expected, output, 0);
+        }
+    }
+
+    private static List<double[]> createInputs() {
+        final Random rng = new Random(666);
+        return IntStream.range(0, nrofInputs)
+                .mapToObj(i -> rng.doubles(1024).map(d -> 2 * d - 1).toArray())
+                .collect(Collectors.toList());
+    }
+
+    private static double[] flatten(ProcessingResult result) {
+        return result.stream()
+                .flatMap(Arrays::stream)
+                .flatMapToDouble(Arrays::stream)
+                .toArray();
+    }
+
+    private static int compare(double[] first, double[] second) {
+        for (int i = 0; i < Math.min(first.length, second.length); i++) {
+            final int comp = Double.compare(first[i], second[i]);
+            if (comp != 0) {
+                return comp;
+            }
+        }
+        return Integer.compare(first.length, second.length);
+    }
+}
@@ -2,7 +2,11 @@ package ampcontrol.audio.processing;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -47,6 +51,74 @@ public class PipeTest {
         assertArrayEquals("Incorrect output!", expected1, resList.get(1));
     }
 
+    /**
+     * Test that compiled nested pipes give the same output as compiling and applying the stages one by one
+     */
+    @Test
+    public void compileNested() {
+        final ProcessingResult.Factory[][] chains = {
+                {new Log10(), new ZeroMean()},
+                {new Mfsc(44100), new ZeroMean(), new UnitMaxZeroMean()},
+                {new Fork(new Log10(), new Mfsc(44100)), new LogScale(), new ZeroMean(), new Dct(), new UnitMaxZeroMean()}
+        };
+        final double[] audio = new Random(666).doubles(300).map(d -> 1 + d).toArray();
+        final FlatProcessing.Shape inputShape = new FlatProcessing.Shape(1, 1, audio.length);
+        for (ProcessingResult.Factory[] chain : chains) {
+            ProcessingResult.Factory pipe = new Spectrogram(64, 16);
+            for (ProcessingResult.Factory stage : chain) {
+                pipe = new Pipe(pipe, stage);
+            }
+            final FlatProcessing compiled = pipe.compile(inputShape);
+
+            double[] expected = audio;
+            FlatProcessing.Shape shape = inputShape;
+            final List<ProcessingResult.Factory> stages = new ArrayList<>();
+            stages.add(new Spectrogram(64, 16));
+            stages.addAll(Arrays.asList(chain));
+            for (ProcessingResult.Factory stage : stages) {
+                final FlatProcessing flat = stage.compile(shape);
+                final double[] output = new double[flat.getOutputShape().getSize()];
+                flat.process(expected, output);
+                expected = output;
+                shape = flat.getOutputShape();
+            }
+
+            final double[] actual = new double[compiled.getOutputShape().getSize()];
+            compiled.process(audio, actual);
+            assertEquals("Incorrect output shape!", shape, compiled.getOutputShape());
+            assertArrayEquals("Incorrect output for " + pipe.name() + "!", expected, actual, 0);
+        }
+    }
+
+    /**
+     * Test that each stage is compiled only once when compiled for batches
+     */
+    @Test
+    public void compileBatchOnce() {
+        final AtomicInteger nrofCompiles = new AtomicInteger(0);
+        final ProcessingResult.Factory spectrogram = new Spectrogram(64, 16);
+        final ProcessingResult.Factory countingSpectrogram = new ProcessingResult.Factory() {
+            @Override
+            public String name() {
+                return spectrogram.name();
+            }
+
+            @Override
+            public ProcessingResult create(ProcessingResult input) {
+                return spectrogram.create(input);
+            }
+
+            @Override
+            public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+                nrofCompiles.incrementAndGet();
+                return spectrogram.compile(inputShape);
+            }
+        };
+        new Pipe(new Pipe(countingSpectrogram, new Dct()), new Pipe(new Log10(), new ZeroMean()))
+                .compileBatch(new FlatProcessing.Shape(1, 1, 1024));
+        assertEquals("Incorrect number of compiles!", 1, nrofCompiles.get());
+    }
+
     /**
      * Test that name is consistent
      */
@@ -2,10 +2,13 @@ package ampcontrol.audio.processing;
 
 import org.junit.Test;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -17,25 +20,29 @@ import static org.junit.Assert.*;
 public class RandScaleTest {
 
     /**
-     * Test max scaling
+     * Test that scaling factors are within bounds and drawn per channel
      */
     @Test
-    public void receiveUpperBound() {
+    public void scalingWithinBounds() {
         final int maxScaling = 133;
         final int minScaling = 77;
-        final double [] input = {-2, 0, 3};
-        final double [] expected = DoubleStream.of(input).map(d -> d * maxScaling / 1e2).toArray();
-        final ProcessingResult.Factory proc = new RandScale(maxScaling, minScaling, new Random() {
-            @Override
-            public int nextInt(int bound) {
-                return bound;
-            }
-        });
-        final ProcessingResult res = proc.create(new SingletonDoubleInput(new double[][] {input}));
+        final int nrofChannels = 100;
+        final double[] input = {-2, 0, 3};
+        final ProcessingResult res = new RandScale(maxScaling, minScaling, new Random(666))
+                .create(() -> IntStream.range(0, nrofChannels).mapToObj(i -> new double[][]{input}));
         final List<double[][]> resList = res.stream().collect(Collectors.toList());
-        assertEquals("Incorrect output size!", 1, resList.size());
-        assertEquals("Incorrect output size!", 1, resList.get(0).length);
-        assertArrayEquals("Incorrect ouput!", expected, resList.get(0)[0], 1e-10);
+        assertEquals("Incorrect number of channels!", nrofChannels, resList.size());
+
+        final Set<Double> scalingFactors = new HashSet<>();
+        for (double[][] channel : resList) {
+            assertEquals("Incorrect output size!", 1, channel.length);
+            final double scalingFactor = channel[0][2] / 3;
+            assertTrue("Scaling factor too large: " + scalingFactor + "!", scalingFactor < maxScaling / 1e2);
+            assertTrue("Scaling factor too small: " + scalingFactor + "!", scalingFactor >= minScaling / 1e2 - 1e-10);
+            assertArrayEquals("Incorrect ouput!", new double[]{-2 * scalingFactor, 0, 3 * scalingFactor}, channel[0], 1e-10);
+            scalingFactors.add(Math.round(scalingFactor * 1e2) / 1e2);
+        }
+        assertTrue("Expected different scaling factors per channel!", scalingFactors.size() > 1);
     }
 
     /**
@@ -43,16 +50,11 @@ public class RandScaleTest {
      */
     @Test
     public void receiveLowerBound() {
-        final int maxScaling = 777;
+        final int maxScaling = 14;
         final int minScaling = 13;
         final double [] input = {-2, 0, 3};
         final double [] expected = DoubleStream.of(input).map(d -> d * minScaling / 1e2).toArray();
-        final ProcessingResult.Factory proc = new RandScale(maxScaling, minScaling, new Random() {
-            @Override
-            public int nextInt(int bound) {
-                return 0;
-            }
-        });
+        final ProcessingResult.Factory proc = new RandScale(maxScaling, minScaling, new Random(666));
         final ProcessingResult res = proc.create(new SingletonDoubleInput(new double[][] {input}));
         final List<double[][]> resList = res.stream().collect(Collectors.toList());
         assertEquals("Incorrect output size!", 1, resList.size());
@@ -60,6 +62,23 @@ public class RandScaleTest {
         assertArrayEquals("Incorrect ouput!", expected, resList.get(0)[0], 1e-10);
     }
 
+    /**
+     * Test that results created from the same seed give the same output
+     */
+    @Test
+    public void sameSeedSameOutput() {
+        final double[][] input = {{-2, 0, 3}, {1, 2, 3}};
+        final ProcessingResult.Factory first = new RandScale(300, 10, new Random(666));
+        final ProcessingResult.Factory second = new RandScale(300, 10, new Random(666));
+        for (int i = 0; i < 5; i++) {
+            final double[][] expected = first.create(new SingletonDoubleInput(input)).stream().findFirst().get();
+            final double[][] actual = second.create(new SingletonDoubleInput(input)).stream().findFirst().get();
+            for (int j = 0; j < expected.length; j++) {
+                assertArrayEquals("Incorrect ouput!", expected[j], actual[j], 0);
+            }
+        }
+    }
+
     /**
      * Test that name is correct
      */
@@ -0,0 +1,120 @@
+package ampcontrol.audio.processing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link SharedProcessing}
+ *
+ * @author Christian Skärby
+ */
+public class SharedProcessingTest {
+
+    /**
+     * Test that output is the same as when each {@link ProcessingResult.Factory} is compiled separately
+     */
+    @Test
+    public void sameAsCompiled() {
+        final List<ProcessingResult.Factory> factories = Arrays.asList(
+                new Pipe(new Spectrogram(32, 8), new Fork(new Pipe(new Log10(), new ZeroMean()), new Ycoord())),
+                new Pipe(new Spectrogram(32, 8), new Fork(new Pipe(new Log10(), new ZeroMean()), new Mfsc(44100))),
+                new Pipe(new Pipe(new Spectrogram(32, 8), new Log10()), new UnitMaxZeroMean()),
+                new Pipe(new Spectrogram(32, 8), new Log10()),
+                new Spectrogram(32, 8),
+                new Pipe(new Spectrogram(32, 16), new Dct()),
+                new Fork(new Spectrogram(32, 8), new Pipe(new Spectrogram(32, 8), new UnitStdZeroMean())));
+        final FlatProcessing.Shape inputShape = new FlatProcessing.Shape(1, 1, 200);
+
+        final SharedProcessing shared = new SharedProcessing(inputShape);
+        final List<SharedProcessing.Output> outputs = new ArrayList<>();
+        final List<FlatProcessing> separate = new ArrayList<>();
+        for (ProcessingResult.Factory factory : factories) {
+            outputs.add(shared.add(factory));
+            separate.add(factory.compile(inputShape));
+        }
+
+        final Random rng = new Random(666);
+        for (int i = 0; i < 3; i++) {
+            final double[] input = rng.doubles(inputShape.getSize()).toArray();
+            shared.process(input, -1);
+            for (int j = 0; j < factories.size(); j++) {
+                final double[] expected = new double[separate.get(j).getOutputShape().getSize()];
+                separate.get(j).process(input, expected);
+                assertEquals("Incorrect shape!", separate.get(j).getOutputShape(), outputs.get(j).getShape());
+                assertArrayEquals("Incorrect output for " + factories.get(j).name() + "!",
+                        expected, outputs.get(j).get(), 0);
+            }
+        }
+    }
+
+    /**
+     * Test that stages with the same name and input are only created and processed once
+     */
+    @Test
+    public void sharedStages() {
+        final int[] nrofCalls = {0, 0, 0};
+        final SharedProcessing shared = new SharedProcessing(new FlatProcessing.Shape(1, 1, 100));
+        shared.add(new Pipe(
+                new CountingProcessing("a", nrofCalls, 0),
+                new Fork(new CountingProcessing("b", nrofCalls, 1), new CountingProcessing("c", nrofCalls, 2))));
+        shared.add(new Pipe(
+                new CountingProcessing("a", nrofCalls, 0),
+                new Fork(new CountingProcessing("b", nrofCalls, 1), new Log10())));
+        shared.add(new CountingProcessing("a", nrofCalls, 0));
+        shared.add(new Pipe(
+                new CountingProcessing("a", nrofCalls, 0),
+                new CountingProcessing("b", nrofCalls, 1)));
+
+        // a, a->b, a->c, a->fork(b,c), a->lg10, a->fork(b,lg10)
+        assertEquals("Incorrect number of stages!", 6, shared.getNrofStages());
+
+        shared.process(new double[100], -1);
+        assertArrayEquals("Incorrect number of calls!", new int[]{1, 1, 1}, nrofCalls);
+    }
+
+    private static final class CountingProcessing implements ProcessingResult.Factory {
+
+        private final String name;
+        private final int[] nrofCalls;
+        private final int index;
+
+        private CountingProcessing(String name, int[] nrofCalls, int index) {
+            this.name = name;
+            this.nrofCalls = nrofCalls;
+            this.index = index;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public ProcessingResult create(ProcessingResult input) {
+            throw new UnsupportedOperationException("Not implemented!");
+        }
+
+        @Override
+        public FlatProcessing compile(FlatProcessing.Shape inputShape) {
+            return new FlatChannelProcessing(inputShape) {
+                @Override
+                public void process(double[] input, long position, double[] output, int offset) {
+                    nrofCalls[index]++;
+                    super.process(input, position, output, offset);
+                }
+
+                @Override
+                void processChannel(double[] input, int inputOffset, double[] output, int outputOffset) {
+                    System.arraycopy(input, inputOffset, output, outputOffset, shape.getChannelSize());
+                }
+            };
+        }
+    }
+}
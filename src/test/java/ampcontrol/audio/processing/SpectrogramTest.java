@@ -4,10 +4,10 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.IntStream;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * Test cases for Spectrogram
@@ -68,6 +68,65 @@ public class SpectrogramTest {
         assertEquals("Incorrect number of frames!", expectedNrofFrames, specgramData.length);
     }
 
+    /**
+     * Test that output for {@link PositionedInput} is identical to output for non-positioned input for a sequence of
+     * windows from a stream, both when windows are aligned with the time stride and when they are not
+     */
+    @Test
+    public void positionedInputIdentical() {
+        final int fftSize = 32;
+        final int stride = 8;
+        final int windowSize = 10 * stride + 3;
+        final Random rng = new Random(666);
+        final double[] stream = IntStream.range(0, 2000).mapToDouble(i -> rng.nextGaussian()).toArray();
+
+        final Spectrogram streaming = new Spectrogram(fftSize, stride);
+        final Spectrogram batch = new Spectrogram(fftSize, stride);
+        int position = windowSize;
+        for (int shift : new int[]{0, stride, 3 * stride, 1, 5, stride, 2 * stride, 11 * stride, stride, 100}) {
+            position += shift;
+            final double[] window = Arrays.copyOfRange(stream, position - windowSize, position);
+            final double[][] expected = batch.create(new SingletonDoubleInput(window.clone())).stream().findFirst().get();
+            final double[][] actual = streaming.create(new PositionedInput(window, position)).stream().findFirst().get();
+
+            assertEquals("Incorrect number of frames!", expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals("Incorrect output at shift " + shift + "!", expected[i], actual[i], 0);
+            }
+        }
+    }
+
+    /**
+     * Test that only new frames are computed for {@link PositionedInput}
+     */
+    @Test
+    public void positionedInputNewFramesOnly() {
+        final int fftSize = 32;
+        final int stride = 8;
+        final int nrofFrames = 11;
+        final int windowSize = (nrofFrames - 1) * stride + fftSize;
+        final double[] stream = IntStream.range(0, 1000).mapToDouble(i -> Math.sin(i / 10d)).toArray();
+
+        final Spectrogram spectrogram = new Spectrogram(fftSize, stride);
+        final int position = 123;
+        spectrogram.create(new PositionedInput(Arrays.copyOfRange(stream, position - windowSize, position), position))
+                .stream().findFirst().get();
+        assertEquals("Incorrect number of FFTs!", nrofFrames, spectrogram.getNrofFftsComputed());
+
+        final int nextPosition = position + 2 * stride;
+        final double[][] specgram = spectrogram.create(new PositionedInput(
+                Arrays.copyOfRange(stream, nextPosition - windowSize, nextPosition), nextPosition))
+                .stream().findFirst().get();
+        assertEquals("Incorrect number of FFTs!", nrofFrames + 2, spectrogram.getNrofFftsComputed());
+
+        // Output shall not be affected by changes to previous output
+        specgram[nrofFrames - 1][0] = Double.NaN;
+        spectrogram.create(new PositionedInput(
+                Arrays.copyOfRange(stream, nextPosition - windowSize, nextPosition), nextPosition))
+                .stream().findFirst().ifPresent(next -> assertFalse("Cache was modified!",
+                Double.isNaN(next[nrofFrames - 1][0])));
+    }
+
     /**
      * Test that name can be used to create an identical instance
      */
@@ -0,0 +1,94 @@
+package ampcontrol.model.inference;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link CascadeClassifier}
+ *
+ * @author Christian Skärby
+ */
+public class CascadeClassifierTest {
+
+    private static final Map<Integer, Double> thresholds = new HashMap<>();
+
+    static {
+        thresholds.put(0, 0.8);
+        thresholds.put(1, 0.6);
+    }
+
+    /**
+     * Test that later stages are not evaluated when the first stage is confident
+     */
+    @Test
+    public void confidentFirstStage() {
+        final INDArray probabilities = Nd4j.create(new double[]{0.85, 0.1, 0.05});
+        final MockClassifier first = new MockClassifier("first", 0.6, probabilities);
+        final MockClassifier second = new MockClassifier("second", 0.9, Nd4j.create(new double[]{0.1, 0.1, 0.8}));
+        final CascadeClassifier classifier = new CascadeClassifier(Arrays.asList(first, second), thresholds);
+
+        assertEquals("Incorrect output!", probabilities, classifier.classify());
+        first.assertCalled(true);
+        second.assertCalled(false);
+        assertEquals("Incorrect accuracy!", 0.9, classifier.getAccuracy(), 1e-10);
+        assertEquals("Incorrect number of times reached!", 1, classifier.getNrofReached(0));
+        assertEquals("Incorrect number of times reached!", 0, classifier.getNrofReached(1));
+    }
+
+    /**
+     * Test that the next stage is evaluated when the first stage is not confident and that the result is the
+     * accuracy weighted average of all evaluated stages
+     */
+    @Test
+    public void unsureFirstStage() {
+        final MockClassifier first = new MockClassifier("first", 0.6, Nd4j.create(new double[]{0.7, 0.2, 0.1}));
+        final MockClassifier second = new MockClassifier("second", 0.9, Nd4j.create(new double[]{0.9, 0.1, 0}));
+        final MockClassifier third = new MockClassifier("third", 0.8, Nd4j.create(new double[]{0, 0, 1}));
+        final CascadeClassifier classifier = new CascadeClassifier(Arrays.asList(first, second, third), thresholds);
+
+        assertEquals("Incorrect output!", Nd4j.create(new double[]{
+                        (0.6 * 0.7 + 0.9 * 0.9) / 1.5,
+                        (0.6 * 0.2 + 0.9 * 0.1) / 1.5,
+                        (0.6 * 0.1) / 1.5}),
+                classifier.classify());
+        third.assertCalled(false);
+        assertEquals("Incorrect number of times reached!", 1, classifier.getNrofReached(1));
+        assertEquals("Incorrect number of times reached!", 0, classifier.getNrofReached(2));
+    }
+
+    /**
+     * Test that labels without threshold are always confident
+     */
+    @Test
+    public void noThreshold() {
+        final INDArray probabilities = Nd4j.create(new double[]{0.3, 0.3, 0.4});
+        final MockClassifier first = new MockClassifier("first", 0.6, probabilities);
+        final MockClassifier second = new MockClassifier("second", 0.9, Nd4j.create(new double[]{0.9, 0.1, 0}));
+        final CascadeClassifier classifier = new CascadeClassifier(Arrays.asList(first, second), thresholds);
+
+        assertEquals("Incorrect output!", probabilities, classifier.classify());
+        second.assertCalled(false);
+    }
+
+    /**
+     * Test that the last stage is used when no stage is confident
+     */
+    @Test
+    public void noConfidentStage() {
+        final MockClassifier first = new MockClassifier("first", 0.5, Nd4j.create(new double[]{0.5, 0.4, 0.1}));
+        final MockClassifier second = new MockClassifier("second", 0.5, Nd4j.create(new double[]{0.3, 0.6, 0.1}));
+        final CascadeClassifier classifier = new CascadeClassifier(Arrays.asList(first, second), thresholds);
+
+        assertEquals("Incorrect output!", Nd4j.create(new double[]{0.4, 0.5, 0.1}), classifier.classify());
+        assertEquals("Incorrect output!", Nd4j.create(new double[]{0.4, 0.5, 0.1}), classifier.classify());
+        assertEquals("Incorrect number of times reached!", 2, classifier.getNrofReached(0));
+        assertEquals("Incorrect number of times reached!", 2, classifier.getNrofReached(1));
+    }
+}
@@ -0,0 +1,124 @@
+package ampcontrol.model.inference;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link ChangeDetectionClassifier}
+ *
+ * @author Christian Skärby
+ */
+public class ChangeDetectionClassifierTest {
+
+    private final List<INDArray> probabilities = Arrays.asList(
+            Nd4j.create(new double[]{0.1, 0.9}),
+            Nd4j.create(new double[]{0.2, 0.8}),
+            Nd4j.create(new double[]{0.7, 0.3}));
+
+    /**
+     * Test that the last classification is reused when input is unchanged but not more than the maximum number of
+     * consecutive times.
+     */
+    @Test
+    public void reuseWhenUnchanged() {
+        final INDArray input = Nd4j.linspace(1, 24, 24).reshape(1, 2, 3, 4);
+        final Classifier classifier = new ChangeDetectionClassifier(
+                new MockClassifier("A", 0.3, probabilities), new PinnedInputProvider(() -> input), 0.01, 2, 6);
+
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(1), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(1), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(1), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(2), classifier.classify());
+        assertEquals("Incorrect accuracy!", 0.3, classifier.getAccuracy(), 1e-10);
+
+        final ChangeDetectionClassifier changeDetection = (ChangeDetectionClassifier) classifier;
+        assertEquals("Incorrect reuse ratio!", 4d / 7, changeDetection.getReuseRatio(), 1e-10);
+        assertEquals("Incorrect agreement!", 0.5, changeDetection.getRefreshAgreement(), 1e-10);
+    }
+
+    /**
+     * Test that the last classification is reused when input has only changed slightly
+     */
+    @Test
+    public void reuseWhenSmallChange() {
+        final INDArray input = Nd4j.linspace(1, 24, 24).reshape(1, 2, 3, 4);
+        final Classifier classifier = new ChangeDetectionClassifier(
+                new MockClassifier("A", 0.3, probabilities), new PinnedInputProvider(() -> input), 0.01, 10, 6);
+
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        input.putScalar(new int[]{0, 1, 2, 3}, 25);
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+    }
+
+    /**
+     * Test that a new classification is made each time input changes
+     */
+    @Test
+    public void classifyWhenChanged() {
+        final INDArray input = Nd4j.linspace(1, 24, 24).reshape(1, 2, 3, 4);
+        final Classifier classifier = new ChangeDetectionClassifier(
+                new MockClassifier("A", 0.3, probabilities), new PinnedInputProvider(() -> input), 0.01, 10, 6);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals("Incorrect output!", probabilities.get(i % probabilities.size()), classifier.classify());
+            input.muli(-1);
+        }
+        assertEquals("Incorrect reuse ratio!", 0, ((ChangeDetectionClassifier) classifier).getReuseRatio(), 1e-10);
+    }
+
+    /**
+     * Test that input which is a view is compared correctly
+     */
+    @Test
+    public void viewInput() {
+        final INDArray base = Nd4j.linspace(1, 48, 48).reshape(2, 2, 3, 4);
+        final INDArray[] input = {base.get(NDArrayIndex.point(0))};
+        final Classifier classifier = new ChangeDetectionClassifier(
+                new MockClassifier("A", 0.3, probabilities), new PinnedInputProvider(() -> input[0]), 0.01, 10, 100);
+
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        input[0] = base.get(NDArrayIndex.point(1));
+        assertEquals("Incorrect output!", probabilities.get(1), classifier.classify());
+    }
+
+    /**
+     * Test that input is compared to exactly the input which the source classifier classifies even if the input
+     * provider is updated in between
+     */
+    @Test
+    public void compareClassifiedInput() {
+        final INDArray[] inputs = {
+                Nd4j.linspace(1, 24, 24).reshape(1, 2, 3, 4),
+                Nd4j.linspace(-24, -1, 24).reshape(1, 2, 3, 4)};
+        final int[] nrofReads = {0};
+        // Simulates an update between each read
+        final PinnedInputProvider inputProvider = new PinnedInputProvider(() -> inputs[nrofReads[0]++ % inputs.length]);
+        final List<INDArray> classified = new ArrayList<>();
+        final MockClassifier source = new MockClassifier("A", 0.3, probabilities) {
+            @Override
+            public INDArray classify() {
+                classified.add(inputProvider.getModelInput());
+                return super.classify();
+            }
+        };
+        final Classifier classifier = new ChangeDetectionClassifier(source, inputProvider, 0.01, 10, 6);
+
+        assertEquals("Incorrect output!", probabilities.get(0), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(1), classifier.classify());
+        assertEquals("Incorrect output!", probabilities.get(2), classifier.classify());
+        assertEquals("Incorrect number of reads!", 3, nrofReads[0]);
+        assertEquals("Incorrect input classified!", Arrays.asList(inputs[0], inputs[1], inputs[0]), classified);
+    }
+}
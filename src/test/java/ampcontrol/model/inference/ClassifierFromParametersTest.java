@@ -1,15 +1,26 @@
 package ampcontrol.model.inference;
 
+import ampcontrol.audio.AudioInputBuffer;
 import ampcontrol.audio.ClassifierInputProvider;
 import ampcontrol.audio.ClassifierInputProviderFactory;
+import ampcontrol.audio.NewSamplesListener;
 import com.beust.jcommander.JCommander;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -86,6 +97,62 @@ public class ClassifierFromParametersTest {
         }
     }
 
+    /**
+     * Test that classifiers are created from inference bundles with input from the description in the bundle
+     */
+    @Test
+    public void inferenceBundles() throws IOException {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nIn(4).nOut(3).activation(new ActivationSoftmax()).build(), "input")
+                .build());
+        graph.init();
+        final File dir = Files.createTempDirectory("ClassifierFromParametersTest").toFile();
+        dir.deleteOnExit();
+        final String modelName = new File(dir, "ws_100_model").getAbsolutePath();
+        final File bundleFile = new File(StoredGraphClassifier.getBundleFileName(modelName));
+        bundleFile.deleteOnExit();
+        InferenceBundle.write(bundleFile.toPath(), graph, "ws_100_description", 0.75, false);
+
+        final ClassifierFromParameters classifierFromParameters = new ClassifierFromParameters();
+        JCommander.newBuilder().addObject(classifierFromParameters)
+                .build()
+                .parse("-inferenceBundles", classifierNamesPar.trim(), modelName, ewmaPar.trim(), "1");
+
+        final INDArray input = Nd4j.randn(new long[]{1, 4});
+        final List<String> descriptions = new ArrayList<>();
+        final ClassifierInputProviderFactory inputFactory = new ClassifierInputProviderFactory() {
+            @Override
+            public ClassifierInputProvider createInputProvider(String inputDescriptionString) {
+                descriptions.add(inputDescriptionString);
+                return () -> input;
+            }
+
+            @Override
+            public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
+                return null;
+            }
+
+            @Override
+            public void addNewSamplesListener(NewSamplesListener listener) {
+                // Ignore
+            }
+
+            @Override
+            public Collection<AudioInputBuffer> getAudioInputs() {
+                return Collections.emptyList();
+            }
+        };
+
+        final Classifier classifier = classifierFromParameters.getClassifier(inputFactory);
+        assertEquals("Incorrect input descriptions!", Collections.singletonList("ws_100_description"), descriptions);
+        assertEquals("Incorrect output!", graph.outputSingle(input), classifier.classify());
+        assertEquals("Incorrect accuracy!", 0.75, classifier.getAccuracy(), 1e-10);
+    }
+
     private static ClassifierInputProviderFactory createMockInputFactory() {
         return new ClassifierInputProviderFactory() {
             @Override
@@ -97,13 +164,23 @@ public class ClassifierFromParametersTest {
             public ClassifierInputProvider.UpdateHandle finalizeAndReturnUpdateHandle() {
                 return null;
             }
+
+            @Override
+            public void addNewSamplesListener(NewSamplesListener listener) {
+                // Ignore
+            }
+
+            @Override
+            public Collection<AudioInputBuffer> getAudioInputs() {
+                return Collections.emptyList();
+            }
         };
     }
 
     private static class MockClassifierFactory implements ClassifierFactory {
 
         private final Map<String, ? extends Classifier> classifiers;
-        private final Set<String> actual = new HashSet<>();
+        private final Set<String> actual = Collections.synchronizedSet(new HashSet<>());
 
         public MockClassifierFactory(Map<String, ? extends Classifier> classifiers) {
             this.classifiers = classifiers;
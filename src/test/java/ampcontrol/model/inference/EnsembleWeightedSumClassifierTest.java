@@ -6,6 +6,8 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -66,6 +68,125 @@ public class EnsembleWeightedSumClassifierTest {
         assertEquals("Incorrect result!", 3, result.argMax().getInt(0));
     }
 
+    /**
+     * Test that members classifying in parallel gives the same result as classifying in sequence
+     */
+    @Test
+    public void classifyParallel() {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final Classifier sequential = new EnsembleWeightedSumClassifier(createEnsemble(),
+                    EnsembleWeightedSumClassifier.avgNormalizer);
+            final Classifier parallel = new EnsembleWeightedSumClassifier(createEnsemble(),
+                    EnsembleWeightedSumClassifier.avgNormalizer, executor, 0);
+            final INDArray expected = sequential.classify();
+            assertEquals("Incorrect result!", expected, parallel.classify());
+            assertEquals("Incorrect result!", expected, parallel.classify());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that members classify concurrently
+     */
+    @Test(timeout = 10000)
+    public void classifyConcurrently() {
+        final int nrofMembers = 3;
+        final CyclicBarrier barrier = new CyclicBarrier(nrofMembers);
+        final List<Classifier> ensemble = Stream.generate(() -> new Classifier() {
+            @Override
+            public INDArray classify() {
+                try {
+                    // Will not complete unless all members classify at the same time
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new IllegalStateException(e);
+                }
+                return Nd4j.create(new double[]{0.3, 0.7});
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0.5;
+            }
+        }).limit(nrofMembers).collect(Collectors.toList());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(nrofMembers);
+        try {
+            final Classifier classifier = new EnsembleWeightedSumClassifier(ensemble,
+                    EnsembleWeightedSumClassifier.avgNormalizer, executor, 0);
+            assertEquals("Incorrect result!", Nd4j.create(new double[]{0.3, 0.7}), classifier.classify());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that members which miss the deadline are left out of the weighted sum and counted
+     */
+    @Test(timeout = 10000)
+    public void missDeadline() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch slowDone = new CountDownLatch(1);
+        final AtomicInteger nrofSlowCalls = new AtomicInteger(0);
+        final Classifier slow = new Classifier() {
+            @Override
+            public INDArray classify() {
+                nrofSlowCalls.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                slowDone.countDown();
+                return Nd4j.create(new double[]{1, 0});
+            }
+
+            @Override
+            public double getAccuracy() {
+                return 0.5;
+            }
+        };
+        final List<Classifier> ensemble = Arrays.asList(
+                new MockClassifier("fast1", 0.6, Nd4j.create(new double[]{0.2, 0.8})),
+                slow,
+                new MockClassifier("fast2", 0.2, Nd4j.create(new double[]{0.6, 0.4})));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final EnsembleWeightedSumClassifier classifier = new EnsembleWeightedSumClassifier(ensemble,
+                    EnsembleWeightedSumClassifier.avgNormalizer, executor, TimeUnit.SECONDS.toNanos(1));
+
+            final INDArray expectedWithoutSlow = Nd4j.create(new double[]{
+                    (0.6 * 0.2 + 0.2 * 0.6) / 0.8,
+                    (0.6 * 0.8 + 0.2 * 0.4) / 0.8});
+            assertEquals("Incorrect result!", expectedWithoutSlow, classifier.classify());
+            assertEquals("Incorrect number of misses!", 1, classifier.getNrofMisses());
+
+            assertEquals("Incorrect result!", expectedWithoutSlow, classifier.classify());
+            assertEquals("Incorrect number of misses!", 2, classifier.getNrofMisses());
+            assertEquals("Busy member was asked to classify!", 1, nrofSlowCalls.get());
+
+            release.countDown();
+            slowDone.await();
+            final INDArray expectedAll = Nd4j.create(new double[]{
+                    (0.6 * 0.2 + 0.5 * 1 + 0.2 * 0.6) / 1.3,
+                    (0.6 * 0.8 + 0.5 * 0 + 0.2 * 0.4) / 1.3});
+            assertEquals("Incorrect result!", expectedAll, classifier.classify());
+            assertEquals("Incorrect number of misses!", 2, classifier.getNrofMisses());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Classifier> createEnsemble() {
+        return Arrays.asList(
+                new MockClassifier("c1", 0.7, Nd4j.create(new double[]{0.1, 0.2, 0.4, 0.3})),
+                new MockClassifier("c2", 0.3, Nd4j.create(new double[]{0.2, 0.3, 0.2, 0.3})),
+                new MockClassifier("c3", 0.9, Nd4j.create(new double[]{0.0, 0.1, 0.1, 0.8})));
+    }
+
     /**
      * Fails with CPU backend
      */
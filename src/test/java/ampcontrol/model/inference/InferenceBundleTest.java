@@ -0,0 +1,166 @@
+package ampcontrol.model.inference;
+
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.Convolution2D;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test cases for {@link InferenceBundle}
+ *
+ * @author Christian Skärby
+ */
+public class InferenceBundleTest {
+
+    /**
+     * Test that a model written to a bundle gives the same output after it is mapped
+     */
+    @Test
+    public void writeAndMap() throws IOException {
+        final ComputationGraph graph = createGraph();
+        final File file = createTempFile();
+        InferenceBundle.write(file.toPath(), graph, "ws_100_dummy", 0.87, false);
+
+        final InferenceBundle bundle = InferenceBundle.map(file.toPath());
+        assertEquals("Incorrect input description!", "ws_100_dummy", bundle.getInputDescription());
+        assertEquals("Incorrect accuracy!", 0.87, bundle.getAccuracy(), 1e-10);
+
+        final ComputationGraph mapped = bundle.createGraph();
+        assertEquals("Incorrect parameters!", graph.params(), mapped.params());
+        final INDArray input = Nd4j.randn(new long[]{2, 2, 5, 5});
+        assertEquals("Incorrect output!", graph.outputSingle(input), mapped.outputSingle(input));
+    }
+
+    /**
+     * Test that a model written to a bundle in half precision gives the same output within precision after it is mapped
+     */
+    @Test
+    public void writeAndMapHalf() throws IOException {
+        final ComputationGraph graph = createGraph();
+        final File file = createTempFile();
+        InferenceBundle.write(file.toPath(), graph, "ws_100_dummy", 0.87, true);
+
+        final ComputationGraph mapped = InferenceBundle.map(file.toPath()).createGraph();
+        assertTrue("Incorrect parameters!", graph.params().equalsWithEps(mapped.params(), 1e-2));
+        final INDArray input = Nd4j.randn(new long[]{2, 2, 5, 5});
+        assertTrue("Incorrect output!", graph.outputSingle(input).equalsWithEps(mapped.outputSingle(input), 1e-2));
+    }
+
+    /**
+     * Test that a bundle gives the same output within precision when ND4J uses another data type than the one the
+     * parameters are stored as
+     */
+    @Test
+    public void mapToOtherDataType() throws IOException {
+        final DataBuffer.Type dataType = Nd4j.dataType();
+        try {
+            final ComputationGraph graph = createGraph();
+            final INDArray input = Nd4j.randn(new long[]{2, 2, 5, 5});
+            final double[] expected = graph.outputSingle(input).data().asDouble();
+            final File file = createTempFile();
+            InferenceBundle.write(file.toPath(), graph, "ws_100_dummy", 0.87, false);
+
+            Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+            final ComputationGraph mapped = InferenceBundle.map(file.toPath()).createGraph();
+            assertEquals("Incorrect data type!", DataBuffer.Type.DOUBLE, mapped.params().data().dataType());
+            final INDArray actual = mapped.outputSingle(Nd4j.create(input.data().asDouble(), new int[]{2, 2, 5, 5}));
+            assertArrayEquals("Incorrect output!", expected, actual.data().asDouble(), 1e-5);
+        } finally {
+            Nd4j.setDataType(dataType);
+        }
+    }
+
+    /**
+     * Test that a bundle stored in float precision gives the same output within precision when ND4J uses half
+     * precision. Only runs with backends which support it.
+     */
+    @Test
+    public void mapFloatToHalf() throws IOException {
+        final DataBuffer.Type dataType = Nd4j.dataType();
+        try {
+            final ComputationGraph graph = createGraph();
+            final INDArray input = Nd4j.randn(new long[]{2, 2, 5, 5});
+            final double[] expected = graph.outputSingle(input).data().asDouble();
+            final File file = createTempFile();
+            InferenceBundle.write(file.toPath(), graph, "ws_100_dummy", 0.87, false);
+
+            Nd4j.setDataType(DataBuffer.Type.HALF);
+            assumeTrue("Half precision not supported by backend!", isHalfSupported());
+            final ComputationGraph mapped = InferenceBundle.map(file.toPath()).createGraph();
+            assertEquals("Incorrect data type!", DataBuffer.Type.HALF, mapped.params().data().dataType());
+            // Output is computed where the backend keeps the parameters, e.g. on a GPU
+            final INDArray actual = mapped.outputSingle(Nd4j.create(input.data().asDouble(), new int[]{2, 2, 5, 5}));
+            assertArrayEquals("Incorrect output!", expected, actual.data().asDouble(), 1e-2);
+        } finally {
+            Nd4j.setDataType(dataType);
+        }
+    }
+
+    /**
+     * Test that a file which is not a bundle is rejected
+     */
+    @Test(expected = IOException.class)
+    public void notABundle() throws IOException {
+        final File file = createTempFile();
+        Files.write(file.toPath(), new byte[100]);
+        InferenceBundle.map(file.toPath());
+    }
+
+    /**
+     * Test that a bundle with unknown parameter type is rejected
+     */
+    @Test(expected = IOException.class)
+    public void unknownParamType() throws IOException {
+        final File file = createTempFile();
+        InferenceBundle.write(file.toPath(), createGraph(), "ws_100_dummy", 0.87, false);
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        // Parameter type follows magic number and version
+        bytes[8] = 7;
+        Files.write(file.toPath(), bytes);
+        InferenceBundle.map(file.toPath());
+    }
+
+    private static boolean isHalfSupported() {
+        try {
+            Nd4j.create(1, 1).addi(1);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static File createTempFile() throws IOException {
+        final File file = File.createTempFile("InferenceBundleTest", InferenceBundle.fileSuffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static ComputationGraph createGraph() {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setOutputs("output")
+                .setInputTypes(InputType.convolutional(5, 5, 2))
+                .addLayer("conv", new Convolution2D.Builder(3, 3).nOut(4).build(), "input")
+                .addLayer("gp", new GlobalPoolingLayer.Builder().build(), "conv")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).activation(new ActivationSoftmax()).build(), "gp")
+                .build());
+        graph.init();
+        return graph;
+    }
+}
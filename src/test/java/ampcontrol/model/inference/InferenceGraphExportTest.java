@@ -0,0 +1,103 @@
+package ampcontrol.model.inference;
+
+import ampcontrol.model.training.model.vertex.EpsilonSpyVertex;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationReLU;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link InferenceGraphExport}
+ *
+ * @author Christian Skärby
+ */
+public class InferenceGraphExportTest {
+
+    /**
+     * Test that batch normalization is folded into preceding layers, that spy and dropout vertices are removed and
+     * that output is unchanged
+     */
+    @Test
+    public void rewrite() {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .activation(new ActivationIdentity())
+                .graphBuilder()
+                .addInputs("input")
+                .setOutputs("output")
+                .setInputTypes(InputType.convolutional(6, 6, 2))
+                .addLayer("conv", new Convolution2D.Builder(3, 3).nOut(4).build(), "input")
+                .addVertex("spy", new EpsilonSpyVertex(), "conv")
+                .addLayer("bn", new BatchNormalization.Builder().activation(new ActivationReLU()).build(), "spy")
+                .addLayer("dropout", new DropoutLayer.Builder(0.5).build(), "bn")
+                .addLayer("gp", new GlobalPoolingLayer.Builder().build(), "dropout")
+                .addLayer("dense", new DenseLayer.Builder().nOut(5).build(), "gp")
+                .addLayer("denseBn", new BatchNormalization.Builder().activation(new ActivationTanH()).build(), "dense")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).activation(new ActivationSoftmax()).build(), "denseBn")
+                .build());
+        graph.init();
+        randomizeBatchNorm(graph, "bn");
+        randomizeBatchNorm(graph, "denseBn");
+
+        final ComputationGraph inferenceGraph = InferenceGraphExport.rewrite(graph);
+
+        for (String removed : Arrays.asList("spy", "bn", "dropout", "denseBn")) {
+            assertNull("Expected " + removed + " to be removed!", inferenceGraph.getVertex(removed));
+            assertNotNull("Expected " + removed + " to remain in original graph!", graph.getVertex(removed));
+        }
+        assertEquals("Incorrect number of parameters!",
+                graph.numParams() - graph.getLayer("bn").numParams() - graph.getLayer("denseBn").numParams(),
+                inferenceGraph.numParams());
+
+        final INDArray input = Nd4j.randn(new long[]{3, 2, 6, 6});
+        final INDArray expected = graph.outputSingle(input);
+        final INDArray actual = inferenceGraph.outputSingle(input);
+        assertTrue("Incorrect output! Expected " + expected + " got " + actual, expected.equalsWithEps(actual, 1e-4));
+    }
+
+    /**
+     * Test that batch normalization after a nonlinearity is kept
+     */
+    @Test
+    public void keepBatchNormAfterActivation() {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setOutputs("output")
+                .setInputTypes(InputType.convolutional(5, 5, 2))
+                .addLayer("conv", new Convolution2D.Builder(3, 3).nOut(4).activation(new ActivationReLU()).build(), "input")
+                .addLayer("bn", new BatchNormalization.Builder().build(), "conv")
+                .addLayer("gp", new GlobalPoolingLayer.Builder().build(), "bn")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).activation(new ActivationSoftmax()).build(), "gp")
+                .build());
+        graph.init();
+        randomizeBatchNorm(graph, "bn");
+
+        final ComputationGraph inferenceGraph = InferenceGraphExport.rewrite(graph);
+
+        assertNotNull("Expected batch normalization to be kept!", inferenceGraph.getVertex("bn"));
+        final INDArray input = Nd4j.randn(new long[]{2, 2, 5, 5});
+        assertTrue("Incorrect output!", graph.outputSingle(input).equalsWithEps(inferenceGraph.outputSingle(input), 1e-6));
+    }
+
+    private static void randomizeBatchNorm(ComputationGraph graph, String name) {
+        final org.deeplearning4j.nn.api.Layer bn = graph.getLayer(name);
+        bn.getParam(BatchNormalizationParamInitializer.GAMMA).assign(Nd4j.rand(bn.getParam(BatchNormalizationParamInitializer.GAMMA).shape()).addi(0.5));
+        bn.getParam(BatchNormalizationParamInitializer.BETA).assign(Nd4j.randn(bn.getParam(BatchNormalizationParamInitializer.BETA).shape()));
+        bn.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).assign(Nd4j.randn(bn.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).shape()));
+        bn.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR).assign(Nd4j.rand(bn.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR).shape()).addi(0.5));
+    }
+}
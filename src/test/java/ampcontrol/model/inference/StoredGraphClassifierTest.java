@@ -0,0 +1,61 @@
+package ampcontrol.model.inference;
+
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.Convolution2D;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link StoredGraphClassifier}
+ *
+ * @author Christian Skärby
+ */
+public class StoredGraphClassifierTest {
+
+    /**
+     * Test that classification with workspaces gives the same output as without and that the output array is reused
+     */
+    @Test
+    public void classifyWithWorkspaces() {
+        final ComputationGraph graph = createGraph();
+        final INDArray[] input = {Nd4j.randn(new long[]{1, 2, 5, 5})};
+        final Classifier reference = new StoredGraphClassifier(graph, () -> input[0], 0.7, false);
+        final Classifier classifier = new StoredGraphClassifier(graph.clone(), () -> input[0], 0.7, true);
+
+        final INDArray first = classifier.classify();
+        assertEquals("Incorrect output!", reference.classify(), first);
+        assertFalse("Output shall not be in a workspace!", first.isAttached());
+
+        input[0] = Nd4j.randn(new long[]{1, 2, 5, 5});
+        final INDArray expected = reference.classify();
+        final INDArray second = classifier.classify();
+        assertSame("Expected output array to be reused!", first, second);
+        assertEquals("Incorrect output!", expected, second);
+        assertEquals("Incorrect accuracy!", 0.7, classifier.getAccuracy(), 1e-10);
+    }
+
+    private static ComputationGraph createGraph() {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setOutputs("output")
+                .setInputTypes(InputType.convolutional(5, 5, 2))
+                .addLayer("conv", new Convolution2D.Builder(3, 3).nOut(4).build(), "input")
+                .addLayer("bn", new BatchNormalization.Builder().build(), "conv")
+                .addLayer("gp", new GlobalPoolingLayer.Builder().build(), "bn")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).activation(new ActivationSoftmax()).build(), "gp")
+                .build());
+        graph.init();
+        return graph;
+    }
+}
@@ -0,0 +1,31 @@
+package ampcontrol.model.inference;
+
+import ampcontrol.admin.service.latency.LatencyHistogram;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link TimedClassifier}
+ *
+ * @author Christian Skärby
+ */
+public class TimedClassifierTest {
+
+    /**
+     * Test that classifications are passed through and timed
+     */
+    @Test
+    public void classify() {
+        final INDArray probabilities = Nd4j.create(new double[]{0.3, 0.7});
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Classifier classifier = new TimedClassifier(new MockClassifier("A", 0.45, probabilities), histogram);
+
+        assertEquals("Incorrect output!", probabilities, classifier.classify());
+        assertEquals("Incorrect output!", probabilities, classifier.classify());
+        assertEquals("Incorrect accuracy!", 0.45, classifier.getAccuracy(), 1e-10);
+        assertEquals("Incorrect number of timings!", 2, histogram.snapshot().getCount());
+    }
+}
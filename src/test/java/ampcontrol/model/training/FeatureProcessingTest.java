@@ -0,0 +1,64 @@
+package ampcontrol.model.training;
+
+import ampcontrol.audio.processing.*;
+import ampcontrol.model.training.data.DataProvider;
+import org.junit.Test;
+import org.nd4j.linalg.dataset.api.DataSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link FeatureProcessing}
+ *
+ * @author Christian Skärby
+ */
+public class FeatureProcessingTest {
+
+    private final static List<String> labels = Arrays.asList("A", "B", "C");
+
+    /**
+     * Test that features processed per batch are the same as features processed per example
+     */
+    @Test
+    public void perBatchSameAsPerExample() {
+        final ProcessingResult.Factory processing = new Pipe(
+                new Spectrogram(16, 4),
+                new Fork(
+                        new Pipe(new Log10(), new ZeroMean()),
+                        new UnitMaxZeroMean()));
+
+        final DataSet expected = createDataSet(new FeatureProcessing(processing, false));
+        final DataSet actual = createDataSet(new FeatureProcessing(processing, true));
+
+        assertArrayEquals("Incorrect shape!", expected.getFeatures().shape(), actual.getFeatures().shape());
+        assertTrue("Incorrect features!", expected.getFeatures().equalsWithEps(actual.getFeatures(), 1e-4));
+        assertEquals("Incorrect labels!", expected.getLabels(), actual.getLabels());
+    }
+
+    /**
+     * Test that examples are not processed when processing is done per batch
+     */
+    @Test
+    public void noExampleProcessingPerBatch() {
+        final double[] input = {1, 2, 3};
+        final ProcessingResult result = new FeatureProcessing(new Log10(), true).exampleProcessing().get()
+                .create(new SingletonDoubleInput(input));
+        assertArrayEquals("Incorrect output!", input, result.stream().findFirst().get()[0], 0);
+    }
+
+    private static DataSet createDataSet(FeatureProcessing featureProcessing) {
+        final Supplier<ProcessingResult.Factory> exampleProcessing = featureProcessing.exampleProcessing();
+        final Random rng = new Random(666);
+        final DataProvider dataProvider = () -> Stream.generate(() -> rng.doubles(64).map(d -> 2 * d - 1).toArray())
+                .map(window -> new DataProvider.TrainingData(
+                        labels.get(rng.nextInt(labels.size())),
+                        exampleProcessing.get().create(new SingletonDoubleInput(window))));
+        return featureProcessing.iteratorFactory(8, labels).create(dataProvider).next();
+    }
+}
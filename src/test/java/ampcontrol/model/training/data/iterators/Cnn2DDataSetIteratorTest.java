@@ -1,6 +1,12 @@
 package ampcontrol.model.training.data.iterators;
 
+import ampcontrol.audio.processing.BatchProcessing;
+import ampcontrol.audio.processing.FlatProcessing;
+import ampcontrol.audio.processing.Fork;
+import ampcontrol.audio.processing.Log10;
+import ampcontrol.audio.processing.ProcessingResult;
 import ampcontrol.audio.processing.SingletonDoubleInput;
+import ampcontrol.audio.processing.UnitMaxZeroMean;
 import ampcontrol.model.training.data.DataProvider;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -10,9 +16,11 @@ import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -59,6 +67,61 @@ public class Cnn2DDataSetIteratorTest {
         }
     }
 
+    /**
+     * Test that batch processing gives the same features as processing each example
+     */
+    @Test
+    public void nextBatchProcessing() {
+        final int batchSize = 8;
+        final List<String> labels = Arrays.asList("A", "B", "C");
+        final ProcessingResult.Factory processing = new Fork(new UnitMaxZeroMean(), new Log10());
+        final DataProvider processed = () -> new MockDataProvider(labels).generateData()
+                .map(td -> new DataProvider.TrainingData(td.getLabel(), processing.create(td.result())));
+        final DataSet expected = new Cnn2DDataSetIterator(processed, batchSize, labels).next();
+        final DataSet actual = new Cnn2DDataSetIterator(new MockDataProvider(labels), batchSize, labels, processing).next();
+
+        assertArrayEquals("Incorrect shape!", expected.getFeatures().shape(), actual.getFeatures().shape());
+        assertTrue("Incorrect features!", expected.getFeatures().equalsWithEps(actual.getFeatures(), 1e-5));
+        assertEquals("Incorrect labels!", expected.getLabels(), actual.getLabels());
+    }
+
+    /**
+     * Test that batch processing is only compiled once per thread
+     */
+    @Test
+    public void compileBatchOnce() throws InterruptedException {
+        final List<String> labels = Arrays.asList("A", "B");
+        final AtomicInteger nrofCompiles = new AtomicInteger(0);
+        final ProcessingResult.Factory log10 = new Log10();
+        final ProcessingResult.Factory processing = new ProcessingResult.Factory() {
+            @Override
+            public String name() {
+                return log10.name();
+            }
+
+            @Override
+            public ProcessingResult create(ProcessingResult input) {
+                return log10.create(input);
+            }
+
+            @Override
+            public BatchProcessing compileBatch(FlatProcessing.Shape inputShape) {
+                nrofCompiles.incrementAndGet();
+                return log10.compileBatch(inputShape);
+            }
+        };
+        final DataSetIterator iter = new Cnn2DDataSetIterator(new MockDataProvider(labels), 4, labels, processing);
+        for (int i = 0; i < 3; i++) {
+            iter.next();
+        }
+        assertEquals("Incorrect number of compiles!", 1, nrofCompiles.get());
+
+        final Thread otherThread = new Thread(iter::next);
+        otherThread.start();
+        otherThread.join();
+        assertEquals("Incorrect number of compiles!", 2, nrofCompiles.get());
+    }
+
     private static class MockDataProvider implements DataProvider {
 
         private int cnt = 0;